@@ -0,0 +1,311 @@
+/**
+ * GenerateBinding Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Post-processes the JNAerator output for libgphoto2. Run by the
+ * generate-binding target in build.xml; see README.txt.
+ * </p>
+ * <p>
+ * <b>fixup</b> makes the generated sources build without the JNAerator
+ * runtime, and replaces the generated Camera structure with a PointerType.
+ * This is what jna.patch used to do by hand.
+ * </p>
+ * <p>
+ * <b>trim</b> writes Gphoto2Core, an interface holding only the functions
+ * the high-level API calls, plus the callback types they take. Creating a
+ * JNA proxy builds a Method for every function in the interface, so
+ * loading the full Gphoto2Library is slow on small machines. Pointer,
+ * structure and constant types are left in Gphoto2Library: the JVM loads
+ * each of those only when it is used.
+ * </p>
+ */
+public class GenerateBinding {
+
+    private static final String PACKAGE = "com.angryelectron.libgphoto2";
+    private static final String LIBRARY = "Gphoto2Library";
+    private static final String CORE = "Gphoto2Core";
+
+    /*
+     * Declarations fixup comments out, besides those that need the JNAerator
+     * runtime.
+     */
+    private static final List<String> DROP = Arrays.asList(
+            "int gp_file_set_data_and_size(Gphoto2Library.CameraFile CameraFilePtr1, Pointer data, NativeLong size);");
+
+    private static final Pattern CALL = Pattern.compile("\\.\\s*(gp_\\w+)\\s*\\(");
+    private static final Pattern FUNCTION = Pattern.compile("^\t[\\w.]+ (gp_\\w+)\\(.*\\);\\s*$");
+    private static final Pattern TYPE = Pattern.compile("^\tpublic (?:static )?(?:interface|class) (\\w+)\\b.*");
+    private static final Pattern REFERENCE = Pattern.compile("\\bGphoto2Library\\.(\\w+)\\b");
+    private static final String[] IMPORTS = {
+        "com.sun.jna.Callback",
+        "com.sun.jna.Library",
+        "com.sun.jna.NativeLong",
+        "com.sun.jna.Pointer",
+        "com.sun.jna.ptr.FloatByReference",
+        "com.sun.jna.ptr.IntByReference",
+        "com.sun.jna.ptr.NativeLongByReference",
+        "com.sun.jna.ptr.PointerByReference",
+        "java.nio.ByteBuffer",
+        "java.nio.FloatBuffer",
+        "java.nio.IntBuffer"
+    };
+
+    private static final String HEADER
+            = "/**\n"
+            + " * Copyright 2012 Andrew Bythell, abythell@ieee.org\n"
+            + " *\n"
+            + " * This file is part of libgphoto2-jna.\n"
+            + " *\n"
+            + " * libgphoto2-jna is free software: you can redistribute it and/or modify it under the\n"
+            + " * terms of the GNU General Public License as published by the Free Software\n"
+            + " * Foundation, either version 3 of the License, or (at your option) any later\n"
+            + " * version.\n"
+            + " *\n"
+            + " * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT ANY\n"
+            + " * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR\n"
+            + " * A PARTICULAR PURPOSE. See the GNU General Public License for more details.\n"
+            + " *\n"
+            + " * You should have received a copy of the GNU General Public License along with\n"
+            + " * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.\n"
+            + " */\n";
+
+    private static final String CAMERA
+            = "package " + PACKAGE + ";\n"
+            + "import com.sun.jna.Pointer;\n"
+            + "import com.sun.jna.PointerType;\n"
+            + "\n"
+            + "/*\n"
+            + " * Simple Camera class which extends PointerType.  Original jnaerated class\n"
+            + " * was based on a structure that is only used internally.\n"
+            + " */\n"
+            + "public class Camera extends PointerType {\n"
+            + "    \n"
+            + "    public Camera(Pointer address) {\n"
+            + "        super(address);\n"
+            + "    }\n"
+            + "    \n"
+            + "    public Camera() {\n"
+            + "        super();\n"
+            + "    }\n"
+            + "}\n";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("fixup")) {
+            fixup(new File(args[1], PACKAGE.replace('.', '/')));
+        } else if (args.length == 4 && args[0].equals("trim")) {
+            trim(new File(args[1]), new File(args[2]), new File(args[3]));
+        } else {
+            System.err.println("usage: GenerateBinding fixup <jnaerator output dir>");
+            System.err.println("       GenerateBinding trim <Gphoto2Library.java> <api source dir> <Gphoto2Core.java>");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Make JNAerator's output build against plain JNA.
+     */
+    static void fixup(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException(dir + " is not a directory");
+        }
+        for (File f : files) {
+            if (!f.getName().endsWith(".java")) {
+                continue;
+            }
+            if (f.getName().equals("Camera.java")) {
+                write(f, HEADER + CAMERA);
+                continue;
+            }
+            List<String> lines = read(f);
+            List<String> out = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.startsWith("import com.ochafik.lang.jnaerator.runtime.")) {
+                    continue;
+                }
+                String code = line.trim();
+                if (code.endsWith(";") && !code.startsWith("*") && !code.startsWith("//")
+                        && (code.contains("NativeSize") || DROP.contains(code))) {
+                    int last = out.size() - 1;
+                    if (last >= 0 && out.get(last).trim().equals("@Deprecated")) {
+                        out.set(last, comment(out.get(last)));
+                    }
+                    line = comment(line);
+                }
+                out.add(line);
+            }
+            if (!out.equals(lines)) {
+                write(f, join(out));
+            }
+        }
+    }
+
+    /**
+     * Write an interface with just the functions called from the high-level
+     * API.
+     */
+    static void trim(File library, File api, File out) throws IOException {
+        Set<String> used = new TreeSet<>();
+        File[] sources = api.listFiles();
+        if (sources == null) {
+            throw new IOException(api + " is not a directory");
+        }
+        for (File f : sources) {
+            if (f.getName().endsWith(".java")) {
+                Matcher m = CALL.matcher(join(read(f)));
+                while (m.find()) {
+                    used.add(m.group(1));
+                }
+            }
+        }
+
+        /*
+         * Split the library into its members. Each member keeps the comments
+         * and annotations in front of it.
+         */
+        Map<String, StringBuilder> functions = new LinkedHashMap<>();
+        Map<String, String> types = new LinkedHashMap<>();
+        List<String> lines = read(library);
+        StringBuilder pending = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            Matcher fn = FUNCTION.matcher(line);
+            Matcher type = TYPE.matcher(line);
+            if (fn.matches()) {
+                StringBuilder sb = functions.get(fn.group(1));
+                if (sb == null) {
+                    sb = new StringBuilder();
+                    functions.put(fn.group(1), sb);
+                }
+                sb.append(pending).append(line).append('\n');
+                pending.setLength(0);
+            } else if (type.matches()) {
+                StringBuilder sb = new StringBuilder(pending);
+                while (!lines.get(i).startsWith("\t}")) {
+                    sb.append(lines.get(i++)).append('\n');
+                }
+                sb.append(lines.get(i)).append('\n');
+                types.put(type.group(1), sb.toString());
+                pending.setLength(0);
+            } else if (line.startsWith("\t/") || line.startsWith("\t *") || line.trim().equals("@Deprecated")) {
+                pending.append(line).append('\n');
+            } else {
+                pending.setLength(0);
+            }
+        }
+
+        StringBuilder body = new StringBuilder();
+        for (String name : used) {
+            StringBuilder sb = functions.get(name);
+            if (sb == null) {
+                System.err.println("warning: " + name + " is not in " + library);
+            } else {
+                body.append(sb);
+            }
+        }
+
+        /*
+         * Copy the callback types the functions take. JNA looks up the
+         * library a callback is declared in, and would load all of
+         * Gphoto2Library for one declared there.
+         */
+        Set<String> copied = new TreeSet<>();
+        StringBuilder nested = new StringBuilder();
+        boolean more = true;
+        while (more) {
+            more = false;
+            Matcher m = REFERENCE.matcher(body.toString() + nested);
+            Set<String> found = new TreeSet<>();
+            while (m.find()) {
+                found.add(m.group(1));
+            }
+            for (String name : found) {
+                String text = types.get(name);
+                if (text != null && text.contains(" extends Callback ") && copied.add(name)) {
+                    nested.append(text);
+                    more = true;
+                }
+            }
+        }
+        String members = body.toString() + nested;
+        for (String name : copied) {
+            members = members.replaceAll("\\bGphoto2Library\\." + name + "\\b", CORE + "." + name);
+        }
+
+        StringBuilder src = new StringBuilder(HEADER);
+        src.append("package ").append(PACKAGE).append(";\n");
+        for (String imp : IMPORTS) {
+            String simple = imp.substring(imp.lastIndexOf('.') + 1);
+            if (simple.equals("Library") || Pattern.compile("\\b" + simple + "\\b").matcher(members).find()) {
+                src.append("import ").append(imp).append(";\n");
+            }
+        }
+        src.append("/**\n")
+                .append(" * The part of {@link ").append(LIBRARY).append("} used by com.angryelectron.gphoto2.<br>\n")
+                .append(" * Generated from ").append(LIBRARY).append(".java by jnaerator/GenerateBinding.java; run\n")
+                .append(" * <code>ant generate-binding</code> instead of editing it.\n")
+                .append(" */\n")
+                .append("public interface ").append(CORE).append(" extends Library {\n")
+                .append(members)
+                .append("}\n");
+        write(out, src.toString());
+        System.out.println(out + ": " + used.size() + " functions, " + copied.size() + " callbacks");
+    }
+
+    private static String comment(String line) {
+        int i = 0;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return line.substring(0, i) + "//" + line.substring(i);
+    }
+
+    private static List<String> read(File f) throws IOException {
+        return Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File f, String text) throws IOException {
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+#!/bin/sh
+#
+# Compare cold start and peak memory of StartupBenchmark on the JVM and as a
+# GraalVM native image.  Needs GraalVM's native-image on the PATH, and GNU
+# time.  JNA's libjnidispatch is found through jna.boot.library.path, which
+# defaults to /usr/lib/jni where Debian and Ubuntu install it.
+#
+# Usage: scripts/native-image-compare.sh [runs]
+#
+set -e
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+JNI=${JNA_BOOT_LIBRARY_PATH:-/usr/lib/jni}
+CP=build/classes:build/test/classes:lib/jna.jar
+MAIN=com.angryelectron.gphoto2.StartupBenchmark
+IMAGE=build/startup-benchmark
+
+ant -q compile compile-test
+native-image -cp "$CP" -o "$IMAGE" "$MAIN"
+
+# Run a command RUNS times; print its mean wall time and largest peak RSS.
+measure() {
+    label=$1
+    shift
+    i=0
+    while [ $i -lt "$RUNS" ]; do
+        /usr/bin/time -f "%e %M" -o build/time.out "$@" > /dev/null 2>&1 || true
+        tail -n 1 build/time.out
+        i=$((i + 1))
+    done | awk -v label="$label" '
+        { t += $1; if ($2 > rss) rss = $2 }
+        END { printf "%-8s %8.0f ms %8d KB\n", label, t / NR * 1000, rss }'
+}
+
+echo "         wall time  peak RSS  (mean of $RUNS runs)"
+measure jvm java -Djna.boot.library.path="$JNI" -cp "$CP" "$MAIN"
+measure native "$IMAGE" -Djna.boot.library.path="$JNI"
@@ -0,0 +1,265 @@
+/**
+ * Backend Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Camera;
+import com.angryelectron.libgphoto2.Gphoto2Core;
+import com.angryelectron.libgphoto2.Gphoto2Library;
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFile;
+import com.angryelectron.libgphoto2.Gphoto2Library.GPContext;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * <p>
+ * The libgphoto2 calls made on every capture and download. There are two
+ * implementations: one through the {@link Gphoto2Core} proxy, and one
+ * through JNA direct mapping, which skips the proxy's reflective dispatch
+ * and argument conversion on each call. The proxy is the default; set the
+ * system property <code>gphoto2.backend</code> to <code>direct</code> to use
+ * direct mapping.
+ * </p>
+ * <p>
+ * Everything else, such as configuration and camera detection, always goes
+ * through the proxy.
+ * </p>
+ */
+abstract class Backend {
+
+    /**
+     * System property that selects the backend.
+     */
+    static final String PROPERTY = "gphoto2.backend";
+
+    private static volatile Backend proxy;
+    private static volatile Backend direct;
+
+    /**
+     * @return The backend selected by the <code>gphoto2.backend</code>
+     * system property.
+     */
+    static Backend get() {
+        return "direct".equalsIgnoreCase(System.getProperty(PROPERTY)) ? direct() : proxy();
+    }
+
+    /**
+     * @return The backend that calls through the Gphoto2Core proxy.
+     */
+    static Backend proxy() {
+        if (proxy == null) {
+            proxy = new Proxy(ContextPool.library());
+        }
+        return proxy;
+    }
+
+    /**
+     * @return The backend that uses direct-mapped methods.
+     */
+    static Backend direct() {
+        if (direct == null) {
+            direct = new Direct();
+        }
+        return direct;
+    }
+
+    abstract String getName();
+
+    abstract int gp_camera_capture(Camera camera, int type, Pointer path, GPContext context);
+
+    abstract int gp_camera_trigger_capture(Camera camera, GPContext context);
+
+    abstract int gp_camera_wait_for_event(Camera camera, int timeout, IntByReference type,
+            PointerByReference data, GPContext context);
+
+    abstract int gp_file_new(PointerByReference file);
+
+    abstract int gp_file_free(CameraFile file);
+
+    abstract int gp_camera_file_get(Camera camera, String folder, String name, int type,
+            CameraFile file, GPContext context);
+
+    abstract int gp_file_get_data_and_size(CameraFile file, PointerByReference data,
+            NativeLongByReference size);
+
+    abstract int gp_camera_file_get_info(Camera camera, String folder, String name, Pointer info,
+            GPContext context);
+
+    abstract int gp_camera_file_delete(Camera camera, String folder, String name, GPContext context);
+
+    /**
+     * Calls through the Gphoto2Core proxy.
+     */
+    private static class Proxy extends Backend {
+
+        private final Gphoto2Core gphoto2;
+
+        Proxy(Gphoto2Core gphoto2) {
+            this.gphoto2 = gphoto2;
+        }
+
+        @Override
+        String getName() {
+            return "proxy";
+        }
+
+        @Override
+        int gp_camera_capture(Camera camera, int type, Pointer path, GPContext context) {
+            return gphoto2.gp_camera_capture(camera, type, path, context);
+        }
+
+        @Override
+        int gp_camera_trigger_capture(Camera camera, GPContext context) {
+            return gphoto2.gp_camera_trigger_capture(camera, context);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        int gp_camera_wait_for_event(Camera camera, int timeout, IntByReference type,
+                PointerByReference data, GPContext context) {
+            return gphoto2.gp_camera_wait_for_event(camera, timeout, type, data, context);
+        }
+
+        @Override
+        int gp_file_new(PointerByReference file) {
+            return gphoto2.gp_file_new(file);
+        }
+
+        @Override
+        int gp_file_free(CameraFile file) {
+            return gphoto2.gp_file_free(file);
+        }
+
+        @Override
+        int gp_camera_file_get(Camera camera, String folder, String name, int type,
+                CameraFile file, GPContext context) {
+            return gphoto2.gp_camera_file_get(camera, folder, name, type, file, context);
+        }
+
+        @Override
+        int gp_file_get_data_and_size(CameraFile file, PointerByReference data,
+                NativeLongByReference size) {
+            return gphoto2.gp_file_get_data_and_size(file, data, size);
+        }
+
+        @Override
+        int gp_camera_file_get_info(Camera camera, String folder, String name, Pointer info,
+                GPContext context) {
+            return gphoto2.gp_camera_file_get_info(camera, folder, name, info, context);
+        }
+
+        @Override
+        int gp_camera_file_delete(Camera camera, String folder, String name, GPContext context) {
+            return gphoto2.gp_camera_file_delete(camera, folder, name, context);
+        }
+    }
+
+    /**
+     * Calls direct-mapped methods, registered on the same library instance
+     * as the proxy.
+     */
+    private static class Direct extends Backend {
+
+        static {
+            Native.register(Direct.class, NativeLibrary.getInstance("libgphoto2.so"));
+        }
+
+        private static native int gp_camera_capture(Pointer camera, int type, Pointer path, Pointer context);
+
+        private static native int gp_camera_trigger_capture(Pointer camera, Pointer context);
+
+        private static native int gp_camera_wait_for_event(Pointer camera, int timeout, Pointer type,
+                Pointer data, Pointer context);
+
+        private static native int gp_file_new(Pointer file);
+
+        private static native int gp_file_free(Pointer file);
+
+        private static native int gp_camera_file_get(Pointer camera, String folder, String name, int type,
+                Pointer file, Pointer context);
+
+        private static native int gp_file_get_data_and_size(Pointer file, Pointer data, Pointer size);
+
+        private static native int gp_camera_file_get_info(Pointer camera, String folder, String name,
+                Pointer info, Pointer context);
+
+        private static native int gp_camera_file_delete(Pointer camera, String folder, String name,
+                Pointer context);
+
+        @Override
+        String getName() {
+            return "direct";
+        }
+
+        @Override
+        int gp_camera_capture(Camera camera, int type, Pointer path, GPContext context) {
+            return gp_camera_capture(camera.getPointer(), type, path, context.getPointer());
+        }
+
+        @Override
+        int gp_camera_trigger_capture(Camera camera, GPContext context) {
+            return gp_camera_trigger_capture(camera.getPointer(), context.getPointer());
+        }
+
+        @Override
+        int gp_camera_wait_for_event(Camera camera, int timeout, IntByReference type,
+                PointerByReference data, GPContext context) {
+            return gp_camera_wait_for_event(camera.getPointer(), timeout, type.getPointer(),
+                    data.getPointer(), context.getPointer());
+        }
+
+        @Override
+        int gp_file_new(PointerByReference file) {
+            return gp_file_new(file.getPointer());
+        }
+
+        @Override
+        int gp_file_free(CameraFile file) {
+            return gp_file_free(file.getPointer());
+        }
+
+        @Override
+        int gp_camera_file_get(Camera camera, String folder, String name, int type,
+                CameraFile file, GPContext context) {
+            return gp_camera_file_get(camera.getPointer(), folder, name, type, file.getPointer(),
+                    context.getPointer());
+        }
+
+        @Override
+        int gp_file_get_data_and_size(CameraFile file, PointerByReference data,
+                NativeLongByReference size) {
+            return gp_file_get_data_and_size(file.getPointer(), data.getPointer(), size.getPointer());
+        }
+
+        @Override
+        int gp_camera_file_get_info(Camera camera, String folder, String name, Pointer info,
+                GPContext context) {
+            return gp_camera_file_get_info(camera.getPointer(), folder, name, info, context.getPointer());
+        }
+
+        @Override
+        int gp_camera_file_delete(Camera camera, String folder, String name, GPContext context) {
+            return gp_camera_file_delete(camera.getPointer(), folder, name, context.getPointer());
+        }
+    }
+}
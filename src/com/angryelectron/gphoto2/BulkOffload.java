@@ -0,0 +1,428 @@
+/**
+ * BulkOffload Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Download every file from many cameras at once. Each camera is read on its
+ * own thread so that all USB buses stay busy, while writes are grouped by
+ * the volume each camera's directory is on and limited to a few at a time
+ * per volume so the disks don't thrash. Files are written straight from
+ * libgphoto2's buffer, so only the files being written are held in memory.
+ * </p>
+ * <p>
+ * Files from each camera are saved under
+ * <code>destination/&lt;camera name&gt;/&lt;camera folder&gt;/</code>, so
+ * give each camera a unique name with {@link GPhoto2#setName(String)}.
+ * Given several destinations, such as one per disk, cameras are spread
+ * across them in turn.
+ * </p>
+ * <pre>
+ * BulkOffload offload = new BulkOffload(cameras, new File("/mnt/ingest"));
+ * offload.setOrder(BulkOffload.Order.OLDEST_FIRST);
+ * BulkOffload.Report report = offload.run();
+ * System.out.println(report.getMegabytesPerSecond() + " MB/s");
+ * </pre>
+ */
+public class BulkOffload {
+
+    /**
+     * Order in which each camera's files are downloaded.
+     */
+    public enum Order {
+
+        /**
+         * The order the camera lists them in. Doesn't need file info, so
+         * starts fastest.
+         */
+        CAMERA,
+        /**
+         * Oldest modification time first.
+         */
+        OLDEST_FIRST,
+        /**
+         * Newest modification time first.
+         */
+        NEWEST_FIRST,
+        /**
+         * Smallest files first.
+         */
+        SMALLEST_FIRST,
+        /**
+         * Largest files first.
+         */
+        LARGEST_FIRST
+    }
+
+    /**
+     * Progress of an offload. While running, this is a live view.
+     */
+    public static class Report {
+
+        private final long started = System.nanoTime();
+        private volatile long finished = 0;
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final List<IOException> errors = Collections.synchronizedList(new ArrayList<IOException>());
+
+        /**
+         * @return Number of files written to disk.
+         */
+        public long getFiles() {
+            return files.get();
+        }
+
+        /**
+         * @return Number of bytes written to disk.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * @return Time taken so far, or in total once finished, in
+         * nanoseconds.
+         */
+        public long getElapsed() {
+            return (finished == 0 ? System.nanoTime() : finished) - started;
+        }
+
+        /**
+         * @return Aggregate throughput across all cameras, in MB/s.
+         */
+        public double getMegabytesPerSecond() {
+            double seconds = getElapsed() / 1e9;
+            return seconds <= 0 ? 0 : bytes.get() / 1e6 / seconds;
+        }
+
+        /**
+         * @return Files that could not be downloaded or written.
+         */
+        public List<IOException> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<>(errors);
+            }
+        }
+    }
+
+    /**
+     * Writes for a single destination volume.
+     */
+    private static class Volume {
+
+        /*
+         * Limits how many files are written to this volume at once; a slow
+         * disk slows the cameras down.
+         */
+        private final Semaphore writers;
+
+        Volume(int writerCount) {
+            writers = new Semaphore(writerCount, true);
+        }
+    }
+
+    /**
+     * A file being written to a volume. A writer slot is only taken once the
+     * camera has finished sending the file and the first write comes in, so
+     * waiting for a slot never holds up the USB transfer of another camera.
+     */
+    private static class VolumeChannel implements WritableByteChannel {
+
+        private final FileChannel file;
+        private final Volume volume;
+        private boolean writing = false;
+
+        VolumeChannel(Path target, Volume volume) throws IOException {
+            this.file = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.volume = volume;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!writing) {
+                try {
+                    volume.writers.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting to write");
+                }
+                writing = true;
+            }
+            return file.write(src);
+        }
+
+        void force() throws IOException {
+            file.force(true);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                file.close();
+            } finally {
+                if (writing) {
+                    writing = false;
+                    volume.writers.release();
+                }
+            }
+        }
+    }
+
+    private final List<GPhoto2> cameras;
+    private final List<File> destinations;
+    private Order order = Order.CAMERA;
+    private int writersPerVolume = 2;
+    private boolean delete = false;
+    private volatile Report report;
+
+    /**
+     * Constructor.
+     *
+     * @param cameras Open cameras to download from.
+     * @param destination Root directory to save into.
+     */
+    public BulkOffload(List<GPhoto2> cameras, File destination) {
+        this(cameras, Collections.singletonList(destination));
+    }
+
+    /**
+     * Constructor for saving to several volumes at once.
+     *
+     * @param cameras Open cameras to download from.
+     * @param destinations Root directories to save into. The first camera
+     * is saved into the first destination, the second into the second, and
+     * so on, starting again at the first.
+     */
+    public BulkOffload(List<GPhoto2> cameras, List<File> destinations) {
+        if (destinations.isEmpty()) {
+            throw new IllegalArgumentException("At least one destination is required.");
+        }
+        this.cameras = new ArrayList<>(cameras);
+        this.destinations = new ArrayList<>(destinations);
+    }
+
+    /**
+     * @param order Order in which files are downloaded from each camera.
+     * Default is {@link Order#CAMERA}.
+     */
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
+    /**
+     * @param writers Maximum number of files written at once to each
+     * destination volume. Default is 2.
+     */
+    public void setWritersPerVolume(int writers) {
+        if (writers < 1) {
+            throw new IllegalArgumentException("At least one writer is required.");
+        }
+        this.writersPerVolume = writers;
+    }
+
+    /**
+     * @param delete True if each file should be removed from the camera once
+     * it has been written to disk. Default is false.
+     */
+    public void setDelete(boolean delete) {
+        this.delete = delete;
+    }
+
+    /**
+     * @return Progress of the current or last run, or null if never run.
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    /**
+     * Download every file from every camera, and wait until they have all
+     * been written. Files that fail are recorded in the report and skipped.
+     *
+     * @return Summary of the offload.
+     * @throws IOException If a destination directory cannot be created.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Report run() throws IOException, InterruptedException {
+        final Report r = new Report();
+        report = r;
+        Map<FileStore, Volume> volumes = new HashMap<>();
+        ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, cameras.size()));
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < cameras.size(); i++) {
+                final GPhoto2 camera = cameras.get(i);
+                File destination = destinations.get(i % destinations.size());
+                final Path root = new File(destination, camera.getName()).toPath();
+                Files.createDirectories(root);
+                FileStore store = Files.getFileStore(root);
+                Volume v = volumes.get(store);
+                if (v == null) {
+                    v = new Volume(writersPerVolume);
+                    volumes.put(store, v);
+                }
+                final Volume volume = v;
+                futures.add(readers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        offload(camera, root, volume, r);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException ex) {
+                    r.errors.add(new IOException("Offload failed", ex.getCause()));
+                }
+            }
+        } finally {
+            readers.shutdown();
+            readers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            r.finished = System.nanoTime();
+        }
+        return r;
+    }
+
+    /**
+     * Read every file from one camera, writing each one through its volume.
+     */
+    private void offload(GPhoto2 camera, Path root, Volume volume, Report r) throws IOException {
+        List<CameraFileEntry> entries = new ArrayList<>();
+        listAll(camera, "/", entries, r);
+        sort(entries);
+
+        for (CameraFileEntry entry : entries) {
+            try {
+                Path target = root.resolve(entry.getPath().substring(1));
+                long size = save(camera, entry, target, volume);
+                r.files.incrementAndGet();
+                r.bytes.addAndGet(size);
+                if (delete) {
+                    camera.delete(entry.getFolder(), entry.getName());
+                }
+            } catch (InterruptedIOException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                r.errors.add(new IOException("Can't save " + entry + " from " + camera.getName(), ex));
+            }
+        }
+    }
+
+    /**
+     * Recursively list every file below a folder, reading file info only if
+     * the download order needs it.
+     */
+    private void listAll(GPhoto2 camera, String folder, List<CameraFileEntry> entries, Report r) throws IOException {
+        for (String name : camera.list(folder, false)) {
+            if (order == Order.CAMERA) {
+                entries.add(new CameraFileEntry(folder, name, -1, 0));
+            } else {
+                try {
+                    entries.add(camera.getFileEntry(folder, name));
+                } catch (IOException ex) {
+                    r.errors.add(ex);
+                    entries.add(new CameraFileEntry(folder, name, -1, 0));
+                }
+            }
+        }
+        for (String sub : camera.list(folder, true)) {
+            listAll(camera, folder.endsWith("/") ? folder + sub : folder + "/" + sub, entries, r);
+        }
+    }
+
+    private void sort(List<CameraFileEntry> entries) {
+        final Order o = order;
+        if (o == Order.CAMERA) {
+            return;
+        }
+        Collections.sort(entries, new Comparator<CameraFileEntry>() {
+            @Override
+            public int compare(CameraFileEntry a, CameraFileEntry b) {
+                switch (o) {
+                    case OLDEST_FIRST:
+                        return Long.compare(a.getMtime(), b.getMtime());
+                    case NEWEST_FIRST:
+                        return Long.compare(b.getMtime(), a.getMtime());
+                    case SMALLEST_FIRST:
+                        return Long.compare(a.getSize(), b.getSize());
+                    default:
+                        return Long.compare(b.getSize(), a.getSize());
+                }
+            }
+        });
+    }
+
+    /**
+     * Download a file straight to disk. If the camera copy is about to be
+     * deleted, the file and its directory are forced to disk first. A file
+     * that fails part way is removed.
+     */
+    private long save(GPhoto2 camera, CameraFileEntry entry, Path target, Volume volume) throws IOException {
+        Files.createDirectories(target.getParent());
+        long size;
+        try (VolumeChannel channel = new VolumeChannel(target, volume)) {
+            size = camera.download(entry.getFolder(), entry.getName(), channel);
+            if (delete) {
+                channel.force();
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(target);
+            throw ex;
+        }
+        if (delete) {
+            FileSync.forceDirectory(target.getParent());
+        }
+        return size;
+    }
+}
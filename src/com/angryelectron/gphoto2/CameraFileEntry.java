@@ -0,0 +1,103 @@
+/**
+ * CameraFileEntry Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+/**
+ * A file stored on the camera. This is a plain copy of the information
+ * libgphoto2 reports, so it is safe to keep and share between threads.
+ */
+public class CameraFileEntry {
+
+    private final String folder;
+    private final String name;
+    private final long size;
+    private final long mtime;
+
+    /**
+     * Constructor.
+     *
+     * @param folder Folder on the camera, for example "/store_00010001/DCIM/100CANON".
+     * @param name Name of the file.
+     * @param size Size in bytes, or -1 if unknown.
+     * @param mtime Modification time in milliseconds since the epoch, or 0
+     * if unknown.
+     */
+    public CameraFileEntry(String folder, String name, long size, long mtime) {
+        this.folder = folder;
+        this.name = name;
+        this.size = size;
+        this.mtime = mtime;
+    }
+
+    /**
+     * @return Folder on the camera.
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return Name of the file.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Full path of the file on the camera.
+     */
+    public String getPath() {
+        return folder.endsWith("/") ? folder + name : folder + "/" + name;
+    }
+
+    /**
+     * @return Size in bytes, or -1 if unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Modification time in milliseconds since the epoch, or 0 if
+     * unknown.
+     */
+    public long getMtime() {
+        return mtime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CameraFileEntry)) {
+            return false;
+        }
+        CameraFileEntry e = (CameraFileEntry) o;
+        return folder.equals(e.folder) && name.equals(e.name) && size == e.size && mtime == e.mtime;
+    }
+
+    @Override
+    public int hashCode() {
+        return (folder.hashCode() * 31 + name.hashCode()) * 31 + (int) (mtime ^ (mtime >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getPath();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * CameraFileMetadata Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+/**
+ * A file stored on the camera, with everything libgphoto2 reports about it
+ * and its preview. Like {@link CameraFileEntry} this is a plain copy, not a
+ * view of native memory.
+ */
+public class CameraFileMetadata extends CameraFileEntry {
+
+    private final String type;
+    private final int width;
+    private final int height;
+    private final long previewSize;
+    private final int previewWidth;
+    private final int previewHeight;
+
+    /**
+     * Constructor. Unknown sizes and dimensions are -1 and 0 as for
+     * {@link CameraFileEntry}.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @param size Size in bytes, or -1 if unknown.
+     * @param mtime Modification time in milliseconds since the epoch, or 0
+     * if unknown.
+     * @param type MIME type, or an empty string if unknown.
+     * @param width Width of the image in pixels, or 0 if unknown.
+     * @param height Height of the image in pixels, or 0 if unknown.
+     * @param previewSize Size of the preview in bytes, or -1 if unknown.
+     * @param previewWidth Width of the preview in pixels, or 0 if unknown.
+     * @param previewHeight Height of the preview in pixels, or 0 if unknown.
+     */
+    public CameraFileMetadata(String folder, String name, long size, long mtime, String type,
+            int width, int height, long previewSize, int previewWidth, int previewHeight) {
+        super(folder, name, size, mtime);
+        this.type = type;
+        this.width = width;
+        this.height = height;
+        this.previewSize = previewSize;
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+    }
+
+    /**
+     * @return MIME type, for example "image/jpeg", or an empty string if
+     * unknown.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return Width of the image in pixels, or 0 if unknown.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height of the image in pixels, or 0 if unknown.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Size of the preview in bytes, or -1 if unknown.
+     */
+    public long getPreviewSize() {
+        return previewSize;
+    }
+
+    /**
+     * @return Width of the preview in pixels, or 0 if unknown.
+     */
+    public int getPreviewWidth() {
+        return previewWidth;
+    }
+
+    /**
+     * @return Height of the preview in pixels, or 0 if unknown.
+     */
+    public int getPreviewHeight() {
+        return previewHeight;
+    }
+}
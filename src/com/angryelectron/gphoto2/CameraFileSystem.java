@@ -0,0 +1,353 @@
+/**
+ * CameraFileSystem Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFileType;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * The folders and files on one camera, seen through java.nio.file. Create
+ * one with the camera's name as the URI authority, then use the ordinary
+ * {@link java.nio.file.Files} methods:
+ * </p>
+ * <pre>
+ * GPhoto2 camera = new GPhoto2();
+ * camera.setName("left");
+ * camera.open();
+ * FileSystem fs = FileSystems.newFileSystem(URI.create("gphoto2://left/"),
+ *     Collections.singletonMap("camera", camera));
+ * try (DirectoryStream&lt;Path&gt; dir = Files.newDirectoryStream(fs.getPath("/store_00010001/DCIM/100CANON"))) {
+ *     for (Path p : dir) {
+ *         Files.copy(p, Paths.get("/tmp", p.getFileName().toString()));
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * Folder listings come from the camera's {@link CameraTree}, and file info
+ * is cached, since each costs a round trip to the camera. Call
+ * {@link #refresh()} if the camera's contents change in a way the tree
+ * can't see. Files may be read and deleted, but not written.
+ * </p>
+ */
+public class CameraFileSystem extends FileSystem {
+
+    private final CameraFileSystemProvider provider;
+    private final String name;
+    private final GPhoto2 camera;
+    private volatile boolean open = true;
+    private final ConcurrentHashMap<String, CameraFileEntry> entries = new ConcurrentHashMap<>();
+
+    CameraFileSystem(CameraFileSystemProvider provider, String name, GPhoto2 camera) {
+        this.provider = provider;
+        this.name = name;
+        this.camera = camera;
+    }
+
+    /**
+     * @return The name this file system was registered under, which is the
+     * authority part of its URIs.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The camera this file system reads from.
+     */
+    public GPhoto2 getCamera() {
+        return camera;
+    }
+
+    /**
+     * Forget all cached file info, and read the camera's folders again.
+     */
+    public void refresh() {
+        camera.getTree().invalidate();
+        entries.clear();
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    /**
+     * Unregister the file system. The camera itself is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            open = false;
+            provider.remove(this);
+            entries.clear();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.<Path>singletonList(new CameraPath(this, "/"));
+    }
+
+    /**
+     * One store per storage on the camera, such as a memory card. If the
+     * camera can't report its storage, there are none, as with mounts the
+     * default file system can't read.
+     */
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        List<FileStore> stores = new ArrayList<>();
+        try {
+            for (StorageInfo info : camera.getStorageInfo()) {
+                stores.add(new CameraFileStore(info));
+            }
+        } catch (IOException ex) {
+            stores.clear();
+        }
+        return stores;
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Collections.singleton("basic");
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        StringBuilder sb = new StringBuilder(first);
+        for (String s : more) {
+            if (!s.isEmpty()) {
+                sb.append('/').append(s);
+            }
+        }
+        return new CameraPath(this, sb.toString());
+    }
+
+    /**
+     * Camera paths use the same separator as the default file system on
+     * the platforms libgphoto2 runs on, so its glob and regex syntax is
+     * reused.
+     */
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+        return new PathMatcher() {
+            @Override
+            public boolean matches(Path path) {
+                return matcher.matches(Paths.get(path.toString()));
+            }
+        };
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchService newWatchService() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return The path as the camera tree names it, without "." or ".."
+     * elements.
+     */
+    private static CameraPath absolute(CameraPath path) {
+        return (CameraPath) path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return The storage a path is on.
+     * @throws FileSystemException If the path isn't on any storage, for
+     * example the root.
+     */
+    FileStore getFileStore(CameraPath path) throws IOException {
+        String abs = absolute(path).toString();
+        for (StorageInfo info : camera.getStorageInfo()) {
+            String base = info.getBaseDir();
+            if (abs.equals(base) || abs.startsWith(base.endsWith("/") ? base : base + "/")) {
+                return new CameraFileStore(info);
+            }
+        }
+        throw new FileSystemException(abs, null, "Not on any storage");
+    }
+
+    /**
+     * @return Sub-folder names followed by file names.
+     */
+    List<String> list(CameraPath dir) throws IOException {
+        String folder = absolute(dir).toString();
+        if (!isDirectory(dir)) {
+            throw new NoSuchFileException(folder);
+        }
+        List<String> names = camera.getTree().getFolders(folder);
+        names.addAll(camera.getTree().getFiles(folder));
+        return names;
+    }
+
+    boolean isDirectory(CameraPath path) throws IOException {
+        return camera.getTree().isFolder(absolute(path).toString());
+    }
+
+    /**
+     * @return File info, read from the camera on first use.
+     * @throws NoSuchFileException If there is no such file.
+     */
+    CameraFileEntry getEntry(CameraPath path) throws IOException {
+        CameraPath abs = absolute(path);
+        String key = abs.toString();
+        CameraFileEntry e = entries.get(key);
+        if (e == null) {
+            if (!camera.getTree().isFile(key)) {
+                throw new NoSuchFileException(key);
+            }
+            e = camera.getFileEntry(abs.getFolder(), abs.getFileName().toString());
+            entries.put(key, e);
+        }
+        return e;
+    }
+
+    byte[] read(CameraPath path) throws IOException {
+        CameraFileEntry e = getEntry(path);
+        return camera.download(e.getFolder(), e.getName(), CameraFileType.GP_FILE_TYPE_NORMAL);
+    }
+
+    void delete(CameraPath path) throws IOException {
+        CameraFileEntry e = getEntry(path);
+        camera.delete(e.getFolder(), e.getName());
+        entries.remove(e.getPath());
+    }
+
+    /**
+     * A storage on the camera, such as a memory card. Space is as reported
+     * when the store was obtained; get the store again for current figures.
+     */
+    private static class CameraFileStore extends FileStore {
+
+        private final StorageInfo info;
+
+        CameraFileStore(StorageInfo info) {
+            this.info = info;
+        }
+
+        /**
+         * @return The storage's base folder without the leading "/", for
+         * example "store_00010001".
+         */
+        @Override
+        public String name() {
+            return info.getBaseDir().substring(1);
+        }
+
+        @Override
+        public String type() {
+            return CameraFileSystemProvider.SCHEME;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return false;
+        }
+
+        @Override
+        public long getTotalSpace() {
+            return info.getCapacity();
+        }
+
+        @Override
+        public long getUsableSpace() {
+            return info.getFree();
+        }
+
+        @Override
+        public long getUnallocatedSpace() {
+            return info.getFree();
+        }
+
+        @Override
+        public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+            return type == BasicFileAttributeView.class;
+        }
+
+        @Override
+        public boolean supportsFileAttributeView(String name) {
+            return name.equals("basic");
+        }
+
+        @Override
+        public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+            return null;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) {
+            switch (attribute) {
+                case "totalSpace":
+                    return getTotalSpace();
+                case "usableSpace":
+                    return getUsableSpace();
+                case "unallocatedSpace":
+                    return getUnallocatedSpace();
+                default:
+                    throw new UnsupportedOperationException("Unknown attribute " + attribute);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return info.getBaseDir() + " (" + info.getDescription() + ")";
+        }
+    }
+}
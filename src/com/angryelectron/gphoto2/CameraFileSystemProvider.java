@@ -0,0 +1,454 @@
+/**
+ * CameraFileSystemProvider Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provider for the <code>gphoto2</code> URI scheme, which maps
+ * <code>gphoto2://&lt;camera name&gt;/&lt;folder&gt;/&lt;file&gt;</code> onto
+ * files stored on a camera. It is registered as an installed provider, so
+ * {@link java.nio.file.FileSystems#newFileSystem(URI, Map)} and
+ * {@link java.nio.file.Paths#get(URI)} find it. See
+ * {@link CameraFileSystem} for an example.
+ */
+public class CameraFileSystemProvider extends FileSystemProvider {
+
+    /**
+     * URI scheme handled by this provider.
+     */
+    public static final String SCHEME = "gphoto2";
+
+    /**
+     * Key of the open {@link GPhoto2} camera in the environment passed to
+     * {@link #newFileSystem(URI, Map)}.
+     */
+    public static final String CAMERA = "camera";
+
+    private final ConcurrentHashMap<String, CameraFileSystem> filesystems = new ConcurrentHashMap<>();
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    private String authority(URI uri) {
+        if (!SCHEME.equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("URI scheme is not " + SCHEME + ": " + uri);
+        }
+        if (uri.getAuthority() == null) {
+            throw new IllegalArgumentException("URI has no camera name: " + uri);
+        }
+        return uri.getAuthority();
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        String name = authority(uri);
+        Object camera = env.get(CAMERA);
+        if (!(camera instanceof GPhoto2)) {
+            throw new IllegalArgumentException("Environment must map \"" + CAMERA + "\" to an open camera.");
+        }
+        CameraFileSystem fs = new CameraFileSystem(this, name, (GPhoto2) camera);
+        if (filesystems.putIfAbsent(name, fs) != null) {
+            throw new FileSystemAlreadyExistsException(name);
+        }
+        return fs;
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        CameraFileSystem fs = filesystems.get(authority(uri));
+        if (fs == null) {
+            throw new FileSystemNotFoundException(uri.toString());
+        }
+        return fs;
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        String path = uri.getPath();
+        return getFileSystem(uri).getPath(path == null || path.isEmpty() ? "/" : path);
+    }
+
+    void remove(CameraFileSystem fs) {
+        filesystems.remove(fs.getName(), fs);
+    }
+
+    private static CameraPath check(Path path) {
+        if (!(path instanceof CameraPath)) {
+            throw new ProviderMismatchException();
+        }
+        return (CameraPath) path;
+    }
+
+    private static CameraFileSystem fs(Path path) {
+        CameraFileSystem fs = (CameraFileSystem) check(path).getFileSystem();
+        if (!fs.isOpen()) {
+            throw new ClosedFileSystemException();
+        }
+        return fs;
+    }
+
+    /**
+     * Open a file for reading. libgphoto2 transfers whole files, so the file
+     * is downloaded when opened and the channel reads from memory.
+     */
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+            FileAttribute<?>... attrs) throws IOException {
+        for (OpenOption o : options) {
+            if (o == StandardOpenOption.WRITE || o == StandardOpenOption.APPEND
+                    || o == StandardOpenOption.CREATE || o == StandardOpenOption.CREATE_NEW) {
+                throw new UnsupportedOperationException("Camera files can't be written.");
+            }
+        }
+        CameraPath p = check(path);
+        return new ByteArrayChannel(fs(p).read(p));
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, final DirectoryStream.Filter<? super Path> filter)
+            throws IOException {
+        final CameraPath p = check(dir);
+        final List<Path> paths = new ArrayList<>();
+        for (String name : fs(p).list(p)) {
+            Path child = p.resolve(name);
+            if (filter == null || filter.accept(child)) {
+                paths.add(child);
+            }
+        }
+        return new DirectoryStream<Path>() {
+            private boolean iterated = false;
+
+            @Override
+            public Iterator<Path> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("Iterator already obtained.");
+                }
+                iterated = true;
+                return paths.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        throw new UnsupportedOperationException("Folders can't be created on the camera.");
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        CameraPath p = check(path);
+        fs(p).delete(p);
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        throw new UnsupportedOperationException("Camera files can't be written.");
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        throw new UnsupportedOperationException("Camera files can't be written.");
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        return path.toAbsolutePath().normalize().equals(path2.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(Path path) throws IOException {
+        return false;
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        CameraPath p = check(path);
+        readAttributes(p, BasicFileAttributes.class);
+        return fs(p).getFileStore(p);
+    }
+
+    /**
+     * Files can be read, and deleted through {@link #delete(Path)}, but not
+     * written or executed.
+     */
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        readAttributes(path, BasicFileAttributes.class);
+        for (AccessMode m : modes) {
+            if (m == AccessMode.WRITE || m == AccessMode.EXECUTE) {
+                throw new AccessDeniedException(path.toString());
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(final Path path, Class<V> type,
+            LinkOption... options) {
+        if (type != BasicFileAttributeView.class) {
+            return null;
+        }
+        return (V) new BasicFileAttributeView() {
+            @Override
+            public String name() {
+                return "basic";
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes() throws IOException {
+                return CameraFileSystemProvider.this.readAttributes(path, BasicFileAttributes.class);
+            }
+
+            @Override
+            public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type,
+            LinkOption... options) throws IOException {
+        if (type != BasicFileAttributes.class) {
+            throw new UnsupportedOperationException("Only basic attributes are supported.");
+        }
+        CameraPath p = check(path);
+        CameraFileSystem fs = fs(p);
+        if (fs.isDirectory(p)) {
+            return (A) new CameraFileAttributes(null);
+        }
+        return (A) new CameraFileAttributes(fs.getEntry(p));
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes,
+            LinkOption... options) throws IOException {
+        String names = attributes;
+        int colon = names.indexOf(':');
+        if (colon >= 0) {
+            if (!names.substring(0, colon).equals("basic")) {
+                throw new UnsupportedOperationException("Only basic attributes are supported.");
+            }
+            names = names.substring(colon + 1);
+        }
+        BasicFileAttributes a = readAttributes(path, BasicFileAttributes.class);
+        Map<String, Object> all = new HashMap<>();
+        all.put("lastModifiedTime", a.lastModifiedTime());
+        all.put("lastAccessTime", a.lastAccessTime());
+        all.put("creationTime", a.creationTime());
+        all.put("size", a.size());
+        all.put("isRegularFile", a.isRegularFile());
+        all.put("isDirectory", a.isDirectory());
+        all.put("isSymbolicLink", a.isSymbolicLink());
+        all.put("isOther", a.isOther());
+        all.put("fileKey", a.fileKey());
+        if (names.equals("*")) {
+            return all;
+        }
+        Map<String, Object> map = new HashMap<>();
+        for (String name : names.split(",")) {
+            if (!all.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown attribute " + name);
+            }
+            map.put(name, all.get(name));
+        }
+        return map;
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value,
+            LinkOption... options) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Attributes of a camera file or folder.
+     */
+    private static class CameraFileAttributes implements BasicFileAttributes {
+
+        private final CameraFileEntry entry;
+
+        /**
+         * @param entry The file, or null for a folder.
+         */
+        CameraFileAttributes(CameraFileEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(entry == null ? 0 : entry.getMtime());
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return entry != null;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return entry == null;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return entry == null ? 0 : Math.max(0, entry.getSize());
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+
+    /**
+     * Read-only channel over a downloaded file.
+     */
+    private static class ByteArrayChannel implements SeekableByteChannel {
+
+        private final byte[] data;
+        private int position = 0;
+        private boolean open = true;
+
+        ByteArrayChannel(byte[] data) {
+            this.data = data;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), data.length - position);
+            dst.put(data, position, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("Negative position");
+            }
+            position = (int) Math.min(newPosition, data.length);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            ensureOpen();
+            return data.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * CameraMetrics Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Timers and counters for a single camera. Instances are obtained from
+ * {@link MetricsRegistry#forCamera(java.lang.String)} and are shared by every
+ * {@link GPhoto2} object using the same name.
+ * </p>
+ * <p>
+ * While the registry is disabled every recording method returns after a
+ * single volatile read.
+ * </p>
+ */
+public class CameraMetrics {
+
+    /**
+     * Operations that are timed.
+     */
+    public enum Operation {
+
+        /**
+         * Triggering the shutter, including waiting for capture complete.
+         */
+        CAPTURE,
+        /**
+         * Transferring a file from the camera and saving it to disk.
+         */
+        DOWNLOAD,
+        /**
+         * Deleting a file from the camera.
+         */
+        DELETE,
+        /**
+         * Reading the configuration widget tree.
+         */
+        READ_CONFIG,
+        /**
+         * Writing the configuration widget tree.
+         */
+        WRITE_CONFIG,
+        /**
+         * Waiting for a camera event.
+         */
+        WAIT_FOR_EVENT,
+        /**
+         * Reading storage capacity and free space.
+         */
+        STORAGE_INFO
+    }
+
+    private final String name;
+    private final Map<Operation, LatencyHistogram> latency = new EnumMap<>(Operation.class);
+    private final AtomicLong bytes = new AtomicLong();
+    private final ConcurrentMap<Integer, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final AtomicInteger eventQueueDepth = new AtomicInteger();
+    private final AtomicInteger maxEventQueueDepth = new AtomicInteger();
+
+    CameraMetrics(String name) {
+        this.name = name;
+        for (Operation op : Operation.values()) {
+            latency.put(op, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @return Name of the camera these metrics belong to.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Start timing an operation.
+     *
+     * @return A start time to pass to {@link #stop(Operation, long)}, or 0 if
+     * metrics are disabled.
+     */
+    public long start() {
+        return MetricsRegistry.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stop timing an operation and record its latency.
+     *
+     * @param op The operation that was timed.
+     * @param start Value returned by {@link #start()}.
+     */
+    public void stop(Operation op, long start) {
+        if (start != 0) {
+            latency.get(op).recordSince(start);
+        }
+    }
+
+    /**
+     * Count bytes transferred from the camera.
+     *
+     * @param count Number of bytes.
+     */
+    public void addBytes(long count) {
+        if (MetricsRegistry.isEnabled()) {
+            bytes.addAndGet(count);
+        }
+    }
+
+    /**
+     * Count a failed libgphoto2 call.
+     *
+     * @param code The GP_ERROR_* code returned.
+     */
+    public void error(int code) {
+        if (!MetricsRegistry.isEnabled()) {
+            return;
+        }
+        AtomicLong counter = errors.get(code);
+        if (counter == null) {
+            AtomicLong c = new AtomicLong();
+            counter = errors.putIfAbsent(code, c);
+            if (counter == null) {
+                counter = c;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Record how many events were read from the camera before the expected
+     * one arrived.
+     *
+     * @param depth Number of events drained.
+     */
+    public void eventsDrained(int depth) {
+        if (!MetricsRegistry.isEnabled()) {
+            return;
+        }
+        eventQueueDepth.set(depth);
+        int m;
+        while (depth > (m = maxEventQueueDepth.get()) && !maxEventQueueDepth.compareAndSet(m, depth)) {
+        }
+    }
+
+    /**
+     * @param op Operation to read.
+     * @return Latency histogram for the operation.
+     */
+    public LatencyHistogram getLatency(Operation op) {
+        return latency.get(op);
+    }
+
+    /**
+     * @return Total bytes transferred from the camera.
+     */
+    public long getBytesTransferred() {
+        return bytes.get();
+    }
+
+    /**
+     * @return Number of failed calls, keyed by GP_ERROR_* code.
+     */
+    public Map<Integer, Long> getErrorCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, AtomicLong> e : errors.entrySet()) {
+            counts.put(e.getKey(), e.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return Total number of failed calls.
+     */
+    public long getErrorCount() {
+        long total = 0;
+        for (AtomicLong c : errors.values()) {
+            total += c.get();
+        }
+        return total;
+    }
+
+    /**
+     * @return Number of events drained by the most recent wait.
+     */
+    public int getEventQueueDepth() {
+        return eventQueueDepth.get();
+    }
+
+    /**
+     * @return Largest number of events drained by a single wait.
+     */
+    public int getMaxEventQueueDepth() {
+        return maxEventQueueDepth.get();
+    }
+
+    /**
+     * Clear all timers and counters.
+     */
+    public void reset() {
+        for (LatencyHistogram h : latency.values()) {
+            h.reset();
+        }
+        bytes.set(0);
+        errors.clear();
+        eventQueueDepth.set(0);
+        maxEventQueueDepth.set(0);
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * CameraPath Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A path to a folder or file on a camera. Paths use '/' as the separator,
+ * just like libgphoto2 folder names.
+ */
+class CameraPath implements Path {
+
+    private final CameraFileSystem fs;
+    private final String path;
+    private volatile String[] names;
+
+    CameraPath(CameraFileSystem fs, String path) {
+        this.fs = fs;
+        this.path = clean(path);
+    }
+
+    /**
+     * Remove duplicate and trailing separators.
+     */
+    private static String clean(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        char last = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\0') {
+                throw new InvalidPathException(path, "NUL character not allowed");
+            }
+            if (c == '/' && last == '/') {
+                continue;
+            }
+            sb.append(c);
+            last = c;
+        }
+        if (sb.length() > 1 && last == '/') {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    private String[] names() {
+        String[] n = names;
+        if (n == null) {
+            String p = isAbsolute() ? path.substring(1) : path;
+            n = p.isEmpty() ? new String[0] : p.split("/");
+            names = n;
+        }
+        return n;
+    }
+
+    private CameraPath check(Path other) {
+        if (!(other instanceof CameraPath)) {
+            throw new ProviderMismatchException();
+        }
+        return (CameraPath) other;
+    }
+
+    /**
+     * @return Folder on the camera, for an absolute path.
+     */
+    String getFolder() {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+
+    @Override
+    public FileSystem getFileSystem() {
+        return fs;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return path.startsWith("/");
+    }
+
+    @Override
+    public Path getRoot() {
+        return isAbsolute() ? new CameraPath(fs, "/") : null;
+    }
+
+    @Override
+    public Path getFileName() {
+        String[] n = names();
+        return n.length == 0 ? null : new CameraPath(fs, n[n.length - 1]);
+    }
+
+    @Override
+    public Path getParent() {
+        String[] n = names();
+        if (n.length == 0 || (n.length == 1 && !isAbsolute())) {
+            return null;
+        }
+        int slash = path.lastIndexOf('/');
+        return new CameraPath(fs, slash == 0 ? "/" : path.substring(0, slash));
+    }
+
+    @Override
+    public int getNameCount() {
+        return names().length;
+    }
+
+    @Override
+    public Path getName(int index) {
+        return new CameraPath(fs, names()[index]);
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        String[] n = names();
+        if (beginIndex < 0 || endIndex > n.length || beginIndex >= endIndex) {
+            throw new IllegalArgumentException();
+        }
+        return new CameraPath(fs, join(Arrays.asList(n).subList(beginIndex, endIndex), false));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        if (!(other instanceof CameraPath)) {
+            return false;
+        }
+        CameraPath o = (CameraPath) other;
+        if (o.fs != fs || o.isAbsolute() != isAbsolute() || o.getNameCount() > getNameCount()) {
+            return false;
+        }
+        String[] a = names();
+        String[] b = o.names();
+        for (int i = 0; i < b.length; i++) {
+            if (!a[i].equals(b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startsWith(String other) {
+        return startsWith(new CameraPath(fs, other));
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        if (!(other instanceof CameraPath)) {
+            return false;
+        }
+        CameraPath o = (CameraPath) other;
+        if (o.fs != fs || (o.isAbsolute() && !o.path.equals(path)) || o.getNameCount() > getNameCount()) {
+            return false;
+        }
+        String[] a = names();
+        String[] b = o.names();
+        for (int i = 1; i <= b.length; i++) {
+            if (!a[a.length - i].equals(b[b.length - i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(String other) {
+        return endsWith(new CameraPath(fs, other));
+    }
+
+    @Override
+    public Path normalize() {
+        List<String> out = new ArrayList<>();
+        for (String n : names()) {
+            if (n.equals(".")) {
+                continue;
+            }
+            if (n.equals("..") && !out.isEmpty() && !out.get(out.size() - 1).equals("..")) {
+                out.remove(out.size() - 1);
+            } else if (!(n.equals("..") && isAbsolute())) {
+                out.add(n);
+            }
+        }
+        return new CameraPath(fs, join(out, isAbsolute()));
+    }
+
+    @Override
+    public Path resolve(Path other) {
+        CameraPath o = check(other);
+        if (o.isAbsolute()) {
+            return o;
+        }
+        if (o.path.isEmpty()) {
+            return this;
+        }
+        if (path.isEmpty()) {
+            return o;
+        }
+        return new CameraPath(fs, path.equals("/") ? "/" + o.path : path + "/" + o.path);
+    }
+
+    @Override
+    public Path resolve(String other) {
+        return resolve(new CameraPath(fs, other));
+    }
+
+    @Override
+    public Path resolveSibling(Path other) {
+        Path parent = getParent();
+        return parent == null ? other : parent.resolve(other);
+    }
+
+    @Override
+    public Path resolveSibling(String other) {
+        return resolveSibling(new CameraPath(fs, other));
+    }
+
+    @Override
+    public Path relativize(Path other) {
+        CameraPath o = check(other);
+        if (o.isAbsolute() != isAbsolute()) {
+            throw new IllegalArgumentException("Both paths must be absolute or relative.");
+        }
+        String[] a = names();
+        String[] b = o.names();
+        int common = 0;
+        while (common < a.length && common < b.length && a[common].equals(b[common])) {
+            common++;
+        }
+        List<String> out = new ArrayList<>();
+        for (int i = common; i < a.length; i++) {
+            out.add("..");
+        }
+        out.addAll(Arrays.asList(b).subList(common, b.length));
+        return new CameraPath(fs, join(out, false));
+    }
+
+    @Override
+    public URI toUri() {
+        try {
+            return new URI(CameraFileSystemProvider.SCHEME, fs.getName(), toAbsolutePath().toString(), null);
+        } catch (URISyntaxException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+        return isAbsolute() ? this : new CameraPath(fs, "/" + path);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws java.io.IOException {
+        Path real = toAbsolutePath().normalize();
+        fs.provider().checkAccess(real);
+        return real;
+    }
+
+    @Override
+    public File toFile() {
+        throw new UnsupportedOperationException("Camera paths are not local files.");
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        List<Path> list = new ArrayList<>();
+        for (String n : names()) {
+            list.add(new CameraPath(fs, n));
+        }
+        return list.iterator();
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return path.compareTo(check(other).path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CameraPath && ((CameraPath) o).fs == fs && ((CameraPath) o).path.equals(path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    private static String join(List<String> names, boolean absolute) {
+        StringBuilder sb = new StringBuilder();
+        if (absolute) {
+            sb.append('/');
+        }
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(names.get(i));
+        }
+        return sb.toString();
+    }
+}
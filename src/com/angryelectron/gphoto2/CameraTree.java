@@ -0,0 +1,366 @@
+/**
+ * CameraTree Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * In-memory copy of the folders and files on a camera. Listing a folder on
+ * a PTP camera walks the camera's whole object table, so the tree is read
+ * once and then kept up to date from GP_EVENT_FILE_ADDED and
+ * GP_EVENT_FOLDER_ADDED events, captures and deletes made through
+ * {@link GPhoto2}. It is read again only when the camera reports a storage
+ * change, or after {@link #invalidate()}.
+ * </p>
+ * <p>
+ * Events are only seen while something is reading them, for example
+ * {@link GPhoto2#captureTethered(int, boolean)} or
+ * {@link GPhoto2#captureAsync(boolean)}. Files added while nothing is
+ * listening won't appear until the tree is invalidated.
+ * </p>
+ * <pre>
+ * CameraTree tree = camera.getTree();
+ * long mark = tree.mark();
+ * ...
+ * for (CameraFileEntry e : tree.getAddedSince(mark)) { ... }
+ * </pre>
+ */
+public class CameraTree {
+
+    /**
+     * Contents of one folder.
+     */
+    private static class Folder {
+
+        final Set<String> folders = new LinkedHashSet<>();
+        final Set<String> files = new LinkedHashSet<>();
+    }
+
+    private final GPhoto2 camera;
+    private Map<String, Folder> tree;
+    /*
+     * The tree before the last invalidate(), so a rebuild can tell which
+     * files are new.
+     */
+    private Map<String, Folder> stale;
+    /*
+     * Files added since the tree was first built, in order, with the change
+     * number at which each appeared.
+     */
+    private final LinkedHashMap<String, Long> added = new LinkedHashMap<>();
+    private long changes = 0;
+    private long builds = 0;
+
+    CameraTree(GPhoto2 camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * @return Names of the sub-folders of a folder.
+     * @throws IOException If the tree has to be read and can't be.
+     */
+    public List<String> getFolders(String folder) throws IOException {
+        return new ArrayList<>(folder(folder).folders);
+    }
+
+    /**
+     * @return Names of the files in a folder.
+     * @throws IOException If the tree has to be read and can't be.
+     */
+    public List<String> getFiles(String folder) throws IOException {
+        return new ArrayList<>(folder(folder).files);
+    }
+
+    /**
+     * @param path Absolute path of a file or folder on the camera.
+     * @return True if the file or folder exists.
+     * @throws IOException If the tree has to be read and can't be.
+     */
+    public boolean exists(String path) throws IOException {
+        return isFolder(path) || isFile(path);
+    }
+
+    /**
+     * @param path Absolute path on the camera.
+     * @return True if the path is a folder.
+     * @throws IOException If the tree has to be read and can't be.
+     */
+    public boolean isFolder(String path) throws IOException {
+        ensureBuilt();
+        synchronized (this) {
+            return tree != null && tree.containsKey(clean(path));
+        }
+    }
+
+    /**
+     * @param path Absolute path on the camera.
+     * @return True if the path is a file.
+     * @throws IOException If the tree has to be read and can't be.
+     */
+    public boolean isFile(String path) throws IOException {
+        String p = clean(path);
+        int slash = p.lastIndexOf('/');
+        if (slash < 0 || slash == p.length() - 1) {
+            return false;
+        }
+        Folder f = find(slash == 0 ? "/" : p.substring(0, slash));
+        return f != null && f.files.contains(p.substring(slash + 1));
+    }
+
+    /**
+     * @return Every file on the camera, folder by folder.
+     * @throws IOException If the tree has to be read and can't be.
+     */
+    public List<CameraFileEntry> getAllFiles() throws IOException {
+        while (true) {
+            ensureBuilt();
+            synchronized (this) {
+                /*
+                 * The tree can be invalidated between building it and
+                 * getting here, in which case build it again.
+                 */
+                if (tree == null) {
+                    continue;
+                }
+                List<CameraFileEntry> entries = new ArrayList<>();
+                for (Map.Entry<String, Folder> e : tree.entrySet()) {
+                    for (String name : e.getValue().files) {
+                        entries.add(new CameraFileEntry(e.getKey(), name, -1, 0));
+                    }
+                }
+                return entries;
+            }
+        }
+    }
+
+    /**
+     * @return A marker for {@link #getAddedSince(long)}.
+     */
+    public synchronized long mark() {
+        return changes;
+    }
+
+    /**
+     * Files that have appeared since a marker was taken, and are still on
+     * the camera. Files found by a rebuild that weren't in the old tree are
+     * included.
+     *
+     * @param mark Value returned by {@link #mark()}.
+     * @return New files, oldest first. Size and time are not known.
+     */
+    public synchronized List<CameraFileEntry> getAddedSince(long mark) {
+        List<CameraFileEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, Long> e : added.entrySet()) {
+            if (e.getValue() > mark) {
+                String path = e.getKey();
+                int slash = path.lastIndexOf('/');
+                entries.add(new CameraFileEntry(slash == 0 ? "/" : path.substring(0, slash),
+                        path.substring(slash + 1), -1, 0));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return Number of times the tree has been read from the camera.
+     */
+    public synchronized long getBuildCount() {
+        return builds;
+    }
+
+    /**
+     * Read the whole tree again the next time it is used.
+     */
+    public synchronized void invalidate() {
+        if (tree != null) {
+            stale = tree;
+        }
+        tree = null;
+    }
+
+    /**
+     * Forget everything, including which files are new. Used when a
+     * different camera is opened.
+     */
+    synchronized void clear() {
+        tree = null;
+        stale = null;
+        added.clear();
+    }
+
+    private Folder folder(String folder) throws IOException {
+        Folder f = find(folder);
+        return f == null ? new Folder() : f;
+    }
+
+    private Folder find(String folder) throws IOException {
+        ensureBuilt();
+        synchronized (this) {
+            return tree == null ? null : tree.get(clean(folder));
+        }
+    }
+
+    /**
+     * Read the tree from the camera if there isn't a current copy. The
+     * camera lock is taken before the tree's own, which is the order event
+     * handling uses too.
+     */
+    private void ensureBuilt() throws IOException {
+        synchronized (this) {
+            if (tree != null) {
+                return;
+            }
+        }
+        camera.lock.lock();
+        try {
+            synchronized (this) {
+                if (tree != null) {
+                    return;
+                }
+            }
+            Map<String, Folder> fresh = new HashMap<>();
+            walk("/", fresh);
+            synchronized (this) {
+                if (stale != null) {
+                    changes++;
+                    for (Map.Entry<String, Folder> e : fresh.entrySet()) {
+                        Folder old = stale.get(e.getKey());
+                        for (String name : e.getValue().files) {
+                            if (old == null || !old.files.contains(name)) {
+                                added.put(join(e.getKey(), name), changes);
+                            }
+                        }
+                    }
+                    Iterator<String> it = added.keySet().iterator();
+                    while (it.hasNext()) {
+                        String path = it.next();
+                        int slash = path.lastIndexOf('/');
+                        Folder f = fresh.get(slash == 0 ? "/" : path.substring(0, slash));
+                        if (f == null || !f.files.contains(path.substring(slash + 1))) {
+                            it.remove();
+                        }
+                    }
+                    stale = null;
+                }
+                tree = fresh;
+                builds++;
+            }
+        } finally {
+            camera.lock.unlock();
+        }
+    }
+
+    private void walk(String folder, Map<String, Folder> into) throws IOException {
+        Folder f = new Folder();
+        into.put(folder, f);
+        f.files.addAll(camera.list(folder, false));
+        f.folders.addAll(camera.list(folder, true));
+        for (String sub : f.folders) {
+            walk(join(folder, sub), into);
+        }
+    }
+
+    /**
+     * A file has appeared on the camera.
+     */
+    synchronized void fileAdded(String folder, String name) {
+        if (tree == null) {
+            return;
+        }
+        String path = clean(folder);
+        if (makeFolder(path).files.add(name)) {
+            changes++;
+            added.put(join(path, name), changes);
+        }
+    }
+
+    /**
+     * A folder has appeared on the camera.
+     */
+    synchronized void folderAdded(String folder, String name) {
+        if (tree != null) {
+            makeFolder(join(clean(folder), name));
+        }
+    }
+
+    /**
+     * A file has been deleted from the camera.
+     */
+    synchronized void fileRemoved(String folder, String name) {
+        if (tree == null) {
+            return;
+        }
+        String path = clean(folder);
+        Folder f = tree.get(path);
+        if (f != null && f.files.remove(name)) {
+            added.remove(join(path, name));
+        }
+    }
+
+    /**
+     * Every file in a folder has been deleted from the camera.
+     */
+    synchronized void folderEmptied(String folder) {
+        if (tree == null) {
+            return;
+        }
+        String path = clean(folder);
+        Folder f = tree.get(path);
+        if (f != null) {
+            for (String name : f.files) {
+                added.remove(join(path, name));
+            }
+            f.files.clear();
+        }
+    }
+
+    /**
+     * Find a folder, creating it and any missing parents.
+     */
+    private Folder makeFolder(String path) {
+        Folder f = tree.get(path);
+        if (f == null) {
+            f = new Folder();
+            tree.put(path, f);
+            int slash = path.lastIndexOf('/');
+            if (slash >= 0 && path.length() > 1) {
+                makeFolder(slash == 0 ? "/" : path.substring(0, slash)).folders.add(path.substring(slash + 1));
+            }
+        }
+        return f;
+    }
+
+    private static String clean(String folder) {
+        return folder.length() > 1 && folder.endsWith("/") ? folder.substring(0, folder.length() - 1) : folder;
+    }
+
+    static String join(String folder, String name) {
+        return folder.endsWith("/") ? folder + name : folder + "/" + name;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * CaptureCollector Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background event loop that collects images triggered by
+ * {@link GPhoto2#captureAsync(boolean)}. Each GP_EVENT_FILE_ADDED is matched
+ * to the oldest trigger still waiting for a file, downloaded, and used to
+ * complete its {@link PendingCapture}. The thread only runs while there are
+ * captures waiting, and releases the camera lock between events so other
+ * calls can get in. After the last capture has been collected it keeps
+ * listening for up to the capture timeout, so the second file of a RAW+JPEG
+ * pair is still attached to its capture.
+ */
+class CaptureCollector implements Runnable {
+
+    /**
+     * The camera calls used by the collector.
+     */
+    interface Source {
+
+        String getName();
+
+        int getCaptureTimeout();
+
+        CameraFileEntry waitForFile(int timeout) throws IOException;
+
+        File saveImage(CameraFileEntry path, boolean delete) throws IOException;
+
+        void captured(long latency);
+    }
+
+    /**
+     * How long each gp_camera_wait_for_event call may block, in
+     * milliseconds.
+     */
+    private static final int POLL = 100;
+
+    private final Source camera;
+    private final Deque<PendingCapture> pending = new ArrayDeque<>();
+    private PendingCapture last;
+    private Thread thread;
+    private long lastProgress;
+
+    CaptureCollector(Source camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * Wait for a file for this capture. Must be called before the shutter is
+     * triggered, while holding the camera lock.
+     */
+    synchronized void add(PendingCapture capture) {
+        if (pending.isEmpty()) {
+            lastProgress = System.nanoTime();
+        }
+        pending.add(capture);
+        if (thread == null) {
+            thread = new Thread(this, "collector-" + camera.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop waiting for a capture, for example because the trigger failed.
+     */
+    synchronized void remove(PendingCapture capture) {
+        pending.remove(capture);
+    }
+
+    /**
+     * @return Number of triggers still waiting for a file.
+     */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Fail every waiting capture.
+     */
+    synchronized void cancel(IOException reason) {
+        PendingCapture p;
+        while ((p = pending.poll()) != null) {
+            p.fail(reason);
+        }
+    }
+
+    @Override
+    public void run() {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(camera.getCaptureTimeout());
+        try {
+            while (true) {
+                synchronized (this) {
+                    boolean expired = System.nanoTime() - lastProgress > timeout;
+                    if (pending.isEmpty() && (last == null || expired)) {
+                        /*
+                         * Nothing left to wait for, and the companion of
+                         * the last image has arrived or is overdue.
+                         */
+                        last = null;
+                        thread = null;
+                        return;
+                    }
+                    if (!pending.isEmpty() && expired) {
+                        cancel(new IOException("Timeout occured waiting for GP_EVENT_FILE_ADDED."));
+                        last = null;
+                        thread = null;
+                        return;
+                    }
+                }
+                CameraFileEntry path = camera.waitForFile(POLL);
+                if (path != null) {
+                    collect(path);
+                }
+            }
+        } catch (IOException ex) {
+            synchronized (this) {
+                cancel(ex);
+                last = null;
+                thread = null;
+            }
+        }
+    }
+
+    private void collect(CameraFileEntry path) {
+        String folder = path.getFolder();
+        String name = path.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        PendingCapture target;
+        boolean extra = false;
+
+        synchronized (this) {
+            lastProgress = System.nanoTime();
+            if (last != null && base.equals(last.getBaseName()) && folder.equals(last.getFolder())) {
+                target = last;
+                extra = true;
+            } else {
+                target = pending.poll();
+            }
+        }
+
+        /*
+         * A file nobody asked for, probably from the shutter button.  Leave
+         * it on the camera.
+         */
+        if (target == null) {
+            return;
+        }
+
+        try {
+            File file = camera.saveImage(path, target.isDelete());
+            if (extra) {
+                target.addFile(file);
+                synchronized (this) {
+                    last = null;
+                }
+            } else {
+                target.complete(folder, name, file);
+                camera.captured(target.getLatency());
+                synchronized (this) {
+                    last = target;
+                }
+            }
+        } catch (IOException ex) {
+            if (!extra) {
+                target.fail(ex);
+            }
+        }
+    }
+}
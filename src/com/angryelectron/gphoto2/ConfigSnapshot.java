@@ -0,0 +1,533 @@
+/**
+ * ConfigSnapshot Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidgetType;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Every setting of a camera, read in one go. Get one from
+ * {@link GPhoto2Config#snapshot()} or {@link GPhoto2#snapshotConfig()}.
+ * </p>
+ * <p>
+ * Snapshots of different cameras can be compared with
+ * {@link #diff(ConfigSnapshot)}, which is useful for checking that every
+ * camera in a rig is set up the same way, and the differences copied to
+ * another camera with {@link Diff#apply(GPhoto2Config)}. Snapshots can be
+ * written to an audit log with {@link #write(DataOutput)} and read back with
+ * {@link #read(DataInput)}.
+ * </p>
+ * <p>
+ * Settings are held in parallel arrays, sorted by path. Paths are interned
+ * to ints shared by all snapshots, so comparing two snapshots is a merge
+ * over int arrays, with strings compared only for text settings whose paths
+ * match. Only paths are interned, since a camera has a fixed set of them;
+ * text values, such as counters and clocks that change on every poll, stay
+ * with their snapshot and are freed with it. Snapshots are immutable.
+ * </p>
+ */
+public final class ConfigSnapshot {
+
+    private static final int MAGIC = 0x47504353; // "GPCS"
+    private static final int VERSION = 1;
+    private static final byte READONLY = 1;
+    private static final int NONE = -1;
+
+    /*
+     * Interned paths.  These only grow with the number of distinct settings
+     * across the cameras seen, never with their values.
+     */
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final List<String> names = new ArrayList<>();
+
+    private static synchronized int intern(String s) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = names.size();
+            ids.put(s, id);
+            names.add(s);
+        }
+        return id;
+    }
+
+    private static synchronized String name(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Collects settings while the widget tree is walked.
+     */
+    static class Builder {
+
+        private final long time;
+        private int size;
+        private int[] paths = new int[64];
+        private byte[] types = new byte[64];
+        private byte[] flags = new byte[64];
+        private double[] numbers = new double[64];
+        private String[] texts = new String[64];
+
+        Builder(long time) {
+            this.time = time;
+        }
+
+        /**
+         * Add a setting.
+         *
+         * @param path Full path, such as /main/imgsettings/iso.
+         * @param type A {@link CameraWidgetType} constant.
+         * @param readonly True if the setting can't be changed.
+         * @param number Value of a range, toggle or date setting.
+         * @param text Value of a text, radio or menu setting, otherwise null.
+         */
+        Builder add(String path, int type, boolean readonly, double number, String text) {
+            if (size == paths.length) {
+                int n = size * 2;
+                paths = Arrays.copyOf(paths, n);
+                types = Arrays.copyOf(types, n);
+                flags = Arrays.copyOf(flags, n);
+                numbers = Arrays.copyOf(numbers, n);
+                texts = Arrays.copyOf(texts, n);
+            }
+            paths[size] = intern(path);
+            types[size] = (byte) type;
+            flags[size] = readonly ? READONLY : 0;
+            numbers[size] = text == null ? number : 0;
+            texts[size] = text;
+            size++;
+            return this;
+        }
+
+        ConfigSnapshot build() {
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) paths[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            ConfigSnapshot s = new ConfigSnapshot(time, size);
+            for (int i = 0; i < size; i++) {
+                int from = (int) order[i];
+                s.paths[i] = paths[from];
+                s.types[i] = types[from];
+                s.flags[i] = flags[from];
+                s.numbers[i] = numbers[from];
+                s.texts[i] = texts[from];
+            }
+            return s;
+        }
+    }
+
+    /**
+     * The settings that differ between two snapshots.
+     */
+    public static final class Diff {
+
+        private final ConfigSnapshot from;
+        private final ConfigSnapshot to;
+        private final int[] left;
+        private final int[] right;
+
+        private Diff(ConfigSnapshot from, ConfigSnapshot to, int[] left, int[] right) {
+            this.from = from;
+            this.to = to;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return Number of settings that differ.
+         */
+        public int size() {
+            return left.length;
+        }
+
+        /**
+         * @return True if the snapshots have the same settings.
+         */
+        public boolean isEmpty() {
+            return left.length == 0;
+        }
+
+        /**
+         * @param i Index of the difference.
+         * @return Full path of the setting.
+         */
+        public String getPath(int i) {
+            return name(left[i] != NONE ? from.paths[left[i]] : to.paths[right[i]]);
+        }
+
+        /**
+         * @param i Index of the difference.
+         * @return The value in the first snapshot, or null if it doesn't
+         * have the setting.
+         */
+        public String getFrom(int i) {
+            return left[i] == NONE ? null : from.getValue(left[i]);
+        }
+
+        /**
+         * @param i Index of the difference.
+         * @return The value in the second snapshot, or null if it doesn't
+         * have the setting.
+         */
+        public String getTo(int i) {
+            return right[i] == NONE ? null : to.getValue(right[i]);
+        }
+
+        /**
+         * Leave some settings out, such as the serial number or clock,
+         * which are expected to differ between cameras.
+         *
+         * @param settings Names, such as "serialnumber", or full paths.
+         * @return A diff without those settings.
+         */
+        public Diff without(String... settings) {
+            Set<String> skip = new HashSet<>(Arrays.asList(settings));
+            int n = 0;
+            int[] l = new int[left.length];
+            int[] r = new int[right.length];
+            for (int i = 0; i < left.length; i++) {
+                String path = getPath(i);
+                if (!skip.contains(path) && !skip.contains(leaf(path))) {
+                    l[n] = left[i];
+                    r[n] = right[i];
+                    n++;
+                }
+            }
+            return new Diff(from, to, Arrays.copyOf(l, n), Arrays.copyOf(r, n));
+        }
+
+        /**
+         * Change a camera's settings to the values in the second snapshot,
+         * writing the configuration once. Settings are found by their full
+         * path, so settings with the same name in different sections are
+         * kept apart. Read-only settings, and settings the second snapshot
+         * doesn't have, are skipped.
+         *
+         * @param target Configuration of the camera to change, already read
+         * with {@link GPhoto2Config#readConfig()}.
+         * @return Number of settings changed.
+         * @throws IOException If a setting can't be changed or the
+         * configuration can't be written.
+         */
+        public int apply(GPhoto2Config target) throws IOException {
+            int changed = 0;
+            for (int i = 0; i < right.length; i++) {
+                int j = right[i];
+                if (j == NONE || (to.flags[j] & READONLY) != 0) {
+                    continue;
+                }
+                PreparedParameter p = target.prepare(name(to.paths[j]));
+                switch (to.types[j]) {
+                    case CameraWidgetType.GP_WIDGET_RANGE:
+                        p.set((float) to.numbers[j]);
+                        break;
+                    case CameraWidgetType.GP_WIDGET_TOGGLE:
+                    case CameraWidgetType.GP_WIDGET_DATE:
+                        p.set((int) to.numbers[j]);
+                        break;
+                    default:
+                        p.set(to.texts[j]);
+                        break;
+                }
+                changed++;
+            }
+            if (changed > 0) {
+                target.writeConfig();
+            }
+            return changed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < size(); i++) {
+                sb.append(getPath(i)).append(": ").append(getFrom(i)).append(" -> ").append(getTo(i)).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    private final long time;
+    private final int[] paths;
+    private final byte[] types;
+    private final byte[] flags;
+    private final double[] numbers;
+    private final String[] texts;
+
+    private ConfigSnapshot(long time, int size) {
+        this.time = time;
+        this.paths = new int[size];
+        this.types = new byte[size];
+        this.flags = new byte[size];
+        this.numbers = new double[size];
+        this.texts = new String[size];
+    }
+
+    private static String leaf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return When the snapshot was taken, in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return Number of settings.
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * @param i Index of the setting.
+     * @return Full path, such as /main/imgsettings/iso.
+     */
+    public String getPath(int i) {
+        return name(paths[i]);
+    }
+
+    /**
+     * @param i Index of the setting.
+     * @return True if the setting can't be changed.
+     */
+    public boolean isReadOnly(int i) {
+        return (flags[i] & READONLY) != 0;
+    }
+
+    /**
+     * @param i Index of the setting.
+     * @return The value, formatted as by
+     * {@link GPhoto2Config#getParameter(java.lang.String)}.
+     */
+    public String getValue(int i) {
+        switch (types[i]) {
+            case CameraWidgetType.GP_WIDGET_RANGE:
+                return Float.toString((float) numbers[i]);
+            case CameraWidgetType.GP_WIDGET_DATE:
+                return Long.toString((long) numbers[i] * 1000);
+            case CameraWidgetType.GP_WIDGET_TOGGLE:
+                return Integer.toString((int) numbers[i]);
+            default:
+                return texts[i];
+        }
+    }
+
+    /**
+     * Get a setting by name or full path.
+     *
+     * @param setting A name, such as "iso", or a full path.
+     * @return The value, or null if there is no such setting.
+     */
+    public String getValue(String setting) {
+        boolean path = setting.startsWith("/");
+        for (int i = 0; i < paths.length; i++) {
+            String p = name(paths[i]);
+            if (path ? p.equals(setting) : leaf(p).equals(setting)) {
+                return getValue(i);
+            }
+        }
+        return null;
+    }
+
+    private boolean same(int i, ConfigSnapshot other, int j) {
+        return types[i] == other.types[j] && Double.compare(numbers[i], other.numbers[j]) == 0
+                && (texts[i] == null ? other.texts[j] == null : texts[i].equals(other.texts[j]));
+    }
+
+    /**
+     * Compare with another snapshot, usually of another camera.
+     *
+     * @param other The snapshot to compare with.
+     * @return The settings whose values differ, or that only one snapshot
+     * has, with this snapshot's values as "from" and the other's as "to".
+     */
+    public Diff diff(ConfigSnapshot other) {
+        int max = paths.length + other.paths.length;
+        int[] left = new int[max];
+        int[] right = new int[max];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < paths.length || j < other.paths.length) {
+            int a = i < paths.length ? paths[i] : Integer.MAX_VALUE;
+            int b = j < other.paths.length ? other.paths[j] : Integer.MAX_VALUE;
+            if (a == b) {
+                if (!same(i, other, j)) {
+                    left[n] = i;
+                    right[n++] = j;
+                }
+                i++;
+                j++;
+            } else if (a < b) {
+                left[n] = i++;
+                right[n++] = NONE;
+            } else {
+                left[n] = NONE;
+                right[n++] = j++;
+            }
+        }
+        return new Diff(this, other, Arrays.copyOf(left, n), Arrays.copyOf(right, n));
+    }
+
+    /**
+     * Write the snapshot in a compact binary form. Each path and text value
+     * is written once, in a table at the start.
+     *
+     * @param out Where to write.
+     * @throws IOException If writing fails.
+     */
+    public void write(DataOutput out) throws IOException {
+        Map<String, Integer> local = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        int[] pathRefs = new int[paths.length];
+        int[] textRefs = new int[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            pathRefs[i] = localRef(name(paths[i]), local, table);
+            textRefs[i] = texts[i] == null ? NONE : localRef(texts[i], local, table);
+        }
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(time);
+        writeVarint(out, table.size());
+        for (String name : table) {
+            out.writeUTF(name);
+        }
+        writeVarint(out, paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            writeVarint(out, pathRefs[i]);
+            out.writeByte(types[i]);
+            out.writeByte(flags[i]);
+            switch (types[i]) {
+                case CameraWidgetType.GP_WIDGET_RANGE:
+                    out.writeFloat((float) numbers[i]);
+                    break;
+                case CameraWidgetType.GP_WIDGET_TOGGLE:
+                case CameraWidgetType.GP_WIDGET_DATE:
+                    out.writeInt((int) numbers[i]);
+                    break;
+                default:
+                    writeVarint(out, textRefs[i]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(DataOutput)}.
+     *
+     * @param in Where to read from.
+     * @return The snapshot.
+     * @throws IOException If reading fails or the data isn't a snapshot.
+     */
+    public static ConfigSnapshot read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a config snapshot");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported config snapshot version " + version);
+        }
+        long time = in.readLong();
+        String[] table = new String[count(in)];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = in.readUTF();
+        }
+        int size = count(in);
+        Builder b = new Builder(time);
+        for (int i = 0; i < size; i++) {
+            String path = entry(table, in);
+            int type = in.readByte();
+            boolean readonly = (in.readByte() & READONLY) != 0;
+            switch (type) {
+                case CameraWidgetType.GP_WIDGET_RANGE:
+                    b.add(path, type, readonly, in.readFloat(), null);
+                    break;
+                case CameraWidgetType.GP_WIDGET_TOGGLE:
+                case CameraWidgetType.GP_WIDGET_DATE:
+                    b.add(path, type, readonly, in.readInt(), null);
+                    break;
+                default:
+                    b.add(path, type, readonly, 0, entry(table, in));
+                    break;
+            }
+        }
+        return b.build();
+    }
+
+    private static int localRef(String name, Map<String, Integer> local, List<String> table) {
+        Integer ref = local.get(name);
+        if (ref == null) {
+            ref = table.size();
+            local.put(name, ref);
+            table.add(name);
+        }
+        return ref;
+    }
+
+    private static int count(DataInput in) throws IOException {
+        int n = readVarint(in);
+        if (n < 0) {
+            throw new IOException("Malformed config snapshot: negative count " + n);
+        }
+        return n;
+    }
+
+    private static String entry(String[] table, DataInput in) throws IOException {
+        int ref = readVarint(in);
+        if (ref < 0 || ref >= table.length) {
+            throw new IOException("Malformed config snapshot: bad string reference " + ref);
+        }
+        return table[ref];
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed config snapshot");
+    }
+}
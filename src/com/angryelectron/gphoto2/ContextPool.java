@@ -0,0 +1,147 @@
+/**
+ * ContextPool Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Core;
+import com.angryelectron.libgphoto2.Gphoto2Library.GPContext;
+import com.angryelectron.libgphoto2.Gphoto2Core.GPContextErrorFunc;
+import com.angryelectron.libgphoto2.Gphoto2Core.GPContextMessageFunc;
+import com.angryelectron.libgphoto2.Gphoto2Library.va_list;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import java.util.ArrayDeque;
+
+/**
+ * The libgphoto2 library handle, loaded once for the whole process, and a
+ * pool of GPContexts shared by {@link GPhoto2} objects. Each context has
+ * its error and message callbacks registered when it is created, and the
+ * callbacks report to whichever GPhoto2 has borrowed it, so creating and
+ * closing many GPhoto2 objects doesn't load the library or build contexts
+ * each time.
+ */
+final class ContextPool {
+
+    /**
+     * Contexts kept for reuse. Any more are released when returned.
+     */
+    static final int MAX_IDLE = 16;
+
+    private static final ArrayDeque<Context> idle = new ArrayDeque<>();
+
+    /*
+     * Loaded when first used, by the JVM's class initialization.
+     */
+    private static class Library {
+
+        static final Gphoto2Core INSTANCE = (Gphoto2Core) Native.loadLibrary("libgphoto2.so", Gphoto2Core.class);
+    }
+
+    /**
+     * A GPContext with callbacks already registered.
+     */
+    static final class Context {
+
+        final GPContext context;
+        private volatile GPhoto2 owner;
+
+        /*
+         * Kept in fields so the callbacks aren't garbage collected while
+         * libgphoto2 still holds them.
+         */
+        private final GPContextErrorFunc errorFunc = new GPContextErrorFunc() {
+            @Override
+            public void apply(GPContext context, Pointer format, va_list args, Pointer data) {
+                GPhoto2 o = owner;
+                if (o != null) {
+                    o.contextError(format.getString(0));
+                }
+            }
+        };
+        private final GPContextMessageFunc messageFunc = new GPContextMessageFunc() {
+            @Override
+            public void apply(GPContext context, Pointer format, va_list args, Pointer data) {
+                GPhoto2 o = owner;
+                if (o != null) {
+                    o.contextMessage(format.getString(0));
+                }
+            }
+        };
+
+        private Context() {
+            Gphoto2Core gphoto2 = library();
+            context = gphoto2.gp_context_new();
+            gphoto2.gp_context_set_error_func(context, errorFunc, null);
+            gphoto2.gp_context_set_message_func(context, messageFunc, null);
+        }
+    }
+
+    private ContextPool() {
+    }
+
+    /**
+     * @return The shared libgphoto2 handle.
+     */
+    static Gphoto2Core library() {
+        return Library.INSTANCE;
+    }
+
+    /**
+     * Take a context from the pool, or create one if none are idle.
+     *
+     * @param owner The GPhoto2 that error and message callbacks report to.
+     * @return The context.
+     */
+    static Context borrow(GPhoto2 owner) {
+        Context c;
+        synchronized (idle) {
+            c = idle.poll();
+        }
+        if (c == null) {
+            c = new Context();
+        }
+        c.owner = owner;
+        return c;
+    }
+
+    /**
+     * Return a context to the pool. It must not be used afterwards.
+     *
+     * @param c The context.
+     */
+    static void release(Context c) {
+        c.owner = null;
+        synchronized (idle) {
+            if (idle.size() < MAX_IDLE) {
+                idle.push(c);
+                return;
+            }
+        }
+        library().gp_context_unref(c.context);
+    }
+
+    /**
+     * @return Number of idle contexts in the pool.
+     */
+    static int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+}
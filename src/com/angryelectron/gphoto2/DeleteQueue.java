@@ -0,0 +1,249 @@
+/**
+ * DeleteQueue Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread that deletes files from the camera after they have been
+ * downloaded, when {@link GPhoto2#setDeferredDelete(boolean)} is on. Before
+ * anything is deleted, the local copy is forced to disk and its size
+ * checked, and its directory is forced once per batch. Deletes are grouped
+ * by folder: if every file left in a folder has been saved, the folder is
+ * emptied with a single gp_camera_folder_delete_all. The thread runs at low
+ * priority, only while there is something to delete, and steps aside
+ * whenever a capture is waiting for the camera.
+ */
+class DeleteQueue implements Runnable {
+
+    /**
+     * How long to wait for more files before deleting, so that a burst is
+     * deleted in one batch.
+     */
+    private static final long LINGER = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long YIELD = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_YIELDS = 1000;
+
+    /**
+     * A downloaded file waiting to be deleted from the camera.
+     */
+    private static class Entry {
+
+        final String name;
+        final File local;
+        final long size;
+
+        Entry(String name, File local, long size) {
+            this.name = name;
+            this.local = local;
+            this.size = size;
+        }
+    }
+
+    private final GPhoto2 camera;
+    private final Map<String, List<Entry>> pending = new LinkedHashMap<>();
+    private final List<IOException> errors = new ArrayList<>();
+    private int queued;
+    private int inFlight;
+    private Thread thread;
+
+    DeleteQueue(GPhoto2 camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * Delete a file from the camera once its local copy is safely on disk.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @param local The downloaded copy.
+     * @param size Size of the file in bytes, or -1 if unknown.
+     */
+    synchronized void add(String folder, String name, File local, long size) {
+        List<Entry> entries = pending.get(folder);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            pending.put(folder, entries);
+        }
+        entries.add(new Entry(name, local, size));
+        queued++;
+        if (thread == null) {
+            thread = new Thread(this, "delete-" + camera.getName());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return Number of files waiting to be deleted.
+     */
+    synchronized int size() {
+        return queued + inFlight;
+    }
+
+    /**
+     * @return Files that could not be deleted, or whose local copy could not
+     * be confirmed. They are left on the camera.
+     */
+    synchronized List<IOException> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Wait for every queued file to be deleted.
+     *
+     * @param timeout Maximum time to wait, in nanoseconds.
+     * @return True if the queue is empty.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    synchronized boolean flush(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout;
+        while (queued + inFlight > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (queued == 0) {
+                    thread = null;
+                    notifyAll();
+                    return;
+                }
+            }
+            LockSupport.parkNanos(this, LINGER);
+            Map<String, List<Entry>> batch;
+            synchronized (this) {
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+                inFlight = queued;
+                queued = 0;
+            }
+            for (Map.Entry<String, List<Entry>> e : batch.entrySet()) {
+                deleteFolder(e.getKey(), e.getValue());
+            }
+            synchronized (this) {
+                inFlight = 0;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Delete one folder's worth of files.
+     */
+    private void deleteFolder(String folder, List<Entry> entries) {
+        Set<String> saved = new HashSet<>();
+        Set<Path> directories = new HashSet<>();
+        for (Entry e : entries) {
+            try {
+                force(e);
+                saved.add(e.name);
+                directories.add(e.local.getAbsoluteFile().getParentFile().toPath());
+            } catch (IOException ex) {
+                error(new IOException("Not deleting " + folder + "/" + e.name + " from " + camera.getName()
+                        + ": local copy not confirmed", ex));
+            }
+        }
+        for (Path dir : directories) {
+            FileSync.forceDirectory(dir);
+        }
+        if (saved.isEmpty()) {
+            return;
+        }
+        if (saved.size() > 1 && deleteAll(folder, saved)) {
+            return;
+        }
+        for (String name : saved) {
+            yieldToCaptures();
+            try {
+                camera.delete(folder, name);
+            } catch (IOException ex) {
+                error(new IOException("Can't delete " + folder + "/" + name + " from " + camera.getName(), ex));
+            }
+        }
+    }
+
+    /**
+     * Empty the folder in one call if every file in it has been saved. The
+     * folder is listed again under the camera lock, so a file captured in
+     * the meantime is never deleted.
+     *
+     * @return True if the folder was emptied.
+     */
+    private boolean deleteAll(String folder, Set<String> saved) {
+        yieldToCaptures();
+        camera.lock.lock();
+        try {
+            if (!saved.containsAll(camera.list(folder, false))) {
+                return false;
+            }
+            camera.deleteAll(folder);
+            return true;
+        } catch (IOException ex) {
+            // not supported by every camera; delete one at a time instead
+            return false;
+        } finally {
+            camera.lock.unlock();
+        }
+    }
+
+    /**
+     * Force a downloaded file to disk and check its size.
+     */
+    private static void force(Entry e) throws IOException {
+        try (FileChannel channel = FileChannel.open(e.local.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+            if (e.size >= 0 && channel.size() != e.size) {
+                throw new IOException("Expected " + e.size + " bytes, found " + channel.size());
+            }
+        }
+    }
+
+    private void yieldToCaptures() {
+        for (int i = 0; i < MAX_YIELDS && camera.lock.hasQueuedThreads(); i++) {
+            LockSupport.parkNanos(this, YIELD);
+        }
+    }
+
+    private synchronized void error(IOException ex) {
+        errors.add(ex);
+    }
+}
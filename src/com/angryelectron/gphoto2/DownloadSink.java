@@ -0,0 +1,386 @@
+/**
+ * DownloadSink Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Writes downloaded files to disk straight from libgphoto2's buffer through
+ * a {@link FileChannel}, with a choice of how hard to try to get them onto
+ * the disk. gp_file_save can't fsync, and fsyncing after every file slows a
+ * burst down, so {@link Durability#GROUP} instead forces files in groups:
+ * every few files or milliseconds, each file in the group is forced and
+ * each directory they were written to is forced once. Files downloaded
+ * with delete through a GROUP sink are deleted from the camera in the
+ * background, as with {@link GPhoto2#setDeferredDelete(boolean)}, once
+ * each one is on disk.
+ * </p>
+ * <pre>
+ * DownloadSink sink = new DownloadSink(DownloadSink.Durability.GROUP);
+ * sink.setGroupCommit(16, 500, TimeUnit.MILLISECONDS);
+ * camera.setDownloadSink(sink);
+ * for (int i = 0; i &lt; 100; i++) {
+ *     camera.captureAndDownload(true);
+ * }
+ * sink.close();
+ * System.out.println(sink.getFlushTime());
+ * </pre>
+ */
+public class DownloadSink {
+
+    /**
+     * When files are forced to disk.
+     */
+    public enum Durability {
+
+        /**
+         * Never. The operating system writes files when it chooses.
+         */
+        NONE,
+        /**
+         * After every file, along with its directory.
+         */
+        PER_FILE,
+        /**
+         * After every N files or T milliseconds, whichever comes first.
+         */
+        GROUP
+    }
+
+    private final Durability durability;
+    private int groupFiles = 32;
+    private long groupInterval = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    /*
+     * Files written but not yet forced, with their channels still open.
+     * Guarded by this; flushLock keeps flushes in order.
+     */
+    private List<FileChannel> channels = new ArrayList<>();
+    private Set<File> directories = new LinkedHashSet<>();
+    private long oldest;
+    private final Object flushLock = new Object();
+    private Thread flusher;
+    private IOException failure;
+    private boolean closed = false;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final LatencyHistogram flushTime = new LatencyHistogram();
+
+    /**
+     * Constructor.
+     *
+     * @param durability When files are forced to disk.
+     */
+    public DownloadSink(Durability durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * For {@link Durability#GROUP}, force files once this many are waiting,
+     * or once the oldest has waited this long. Default is 32 files or 1
+     * second.
+     *
+     * @param files Number of files.
+     * @param interval Longest time a file waits.
+     * @param unit Unit of the interval.
+     */
+    public synchronized void setGroupCommit(int files, long interval, TimeUnit unit) {
+        if (files < 1 || interval <= 0) {
+            throw new IllegalArgumentException("Group commit needs at least one file and a positive interval.");
+        }
+        this.groupFiles = files;
+        this.groupInterval = unit.toNanos(interval);
+        notifyAll();
+    }
+
+    /**
+     * @return When files are forced to disk.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Write a buffer to a file, replacing it if it exists.
+     *
+     * @param data File contents, such as a view of a CameraFile's buffer.
+     * Only needed until this returns.
+     * @param target File to write.
+     * @return Number of bytes written.
+     * @throws IOException If the file can't be written, or an earlier
+     * background flush failed.
+     */
+    public long write(ByteBuffer data, File target) throws IOException {
+        rethrow();
+        long length = data.remaining();
+        FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        files.incrementAndGet();
+        bytes.addAndGet(length);
+        switch (durability) {
+            case NONE:
+                channel.close();
+                break;
+            case PER_FILE:
+                long start = System.nanoTime();
+                try {
+                    channel.force(false);
+                } finally {
+                    channel.close();
+                }
+                FileSync.forceDirectoryOf(target);
+                flushTime.recordSince(start);
+                flushes.incrementAndGet();
+                break;
+            default:
+                if (queue(channel, target)) {
+                    flush();
+                }
+        }
+        return length;
+    }
+
+    /**
+     * Download a file from a camera and write it.
+     *
+     * @param camera An open camera.
+     * @param file The file on the camera.
+     * @param target File to write.
+     * @return Number of bytes written.
+     * @throws IOException If the file can't be downloaded or written.
+     */
+    public long save(GPhoto2 camera, CameraFileEntry file, File target) throws IOException {
+        return camera.download(file.getFolder(), file.getName(), this, target);
+    }
+
+    /**
+     * Add a written file to the group.
+     *
+     * @return True if the group is full.
+     */
+    private synchronized boolean queue(FileChannel channel, File target) throws IOException {
+        if (closed) {
+            channel.close();
+            throw new IllegalStateException("Download sink is closed.");
+        }
+        if (channels.isEmpty()) {
+            oldest = System.nanoTime();
+        }
+        channels.add(channel);
+        directories.add(target.getAbsoluteFile().getParentFile());
+        if (flusher == null) {
+            flusher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    flushOnTime();
+                }
+            }, "sink-flush");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            notifyAll();
+        }
+        return channels.size() >= groupFiles;
+    }
+
+    /**
+     * Background thread: flush a group once its oldest file has waited
+     * long enough. Exits once nothing is waiting.
+     */
+    private void flushOnTime() {
+        while (true) {
+            synchronized (this) {
+                while (true) {
+                    if (channels.isEmpty() || closed) {
+                        flusher = null;
+                        return;
+                    }
+                    long remaining = oldest + groupInterval - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException ex) {
+                        flusher = null;
+                        return;
+                    }
+                }
+            }
+            try {
+                flush();
+            } catch (IOException ex) {
+                synchronized (this) {
+                    failure = ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Force every waiting file, then each of their directories once.
+     *
+     * @throws IOException If a file or directory can't be forced. The rest
+     * are still forced and closed.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            List<FileChannel> group;
+            Set<File> dirs;
+            synchronized (this) {
+                if (channels.isEmpty()) {
+                    return;
+                }
+                group = channels;
+                dirs = directories;
+                channels = new ArrayList<>();
+                directories = new LinkedHashSet<>();
+            }
+            long start = System.nanoTime();
+            IOException error = null;
+            for (FileChannel channel : group) {
+                try {
+                    channel.force(false);
+                } catch (IOException ex) {
+                    error = ex;
+                } finally {
+                    try {
+                        channel.close();
+                    } catch (IOException ex) {
+                        error = ex;
+                    }
+                }
+            }
+            for (File dir : dirs) {
+                FileSync.forceDirectory(dir.toPath());
+            }
+            flushTime.recordSince(start);
+            flushes.incrementAndGet();
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Make sure a file written by this sink is on disk whatever the
+     * durability, before the only other copy is deleted from the camera.
+     *
+     * @param target A file written by this sink.
+     * @throws IOException If the file can't be forced.
+     */
+    void sync(File target) throws IOException {
+        switch (durability) {
+            case PER_FILE:
+                break;
+            case GROUP:
+                flush();
+                break;
+            default:
+                long start = System.nanoTime();
+                try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                }
+                FileSync.forceDirectoryOf(target);
+                flushTime.recordSince(start);
+                flushes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Flush waiting files and stop accepting new ones.
+     *
+     * @throws IOException If a file can't be forced, or an earlier
+     * background flush failed.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        flush();
+        rethrow();
+    }
+
+    private synchronized void rethrow() throws IOException {
+        if (failure != null) {
+            IOException ex = failure;
+            failure = null;
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Number of files waiting to be forced.
+     */
+    public synchronized int getPending() {
+        return channels.size();
+    }
+
+    /**
+     * @return Number of files written.
+     */
+    public long getFiles() {
+        return files.get();
+    }
+
+    /**
+     * @return Number of bytes written.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return Number of flushes, including one per file for
+     * {@link Durability#PER_FILE}.
+     */
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * @return Time each flush took, including directory syncs.
+     */
+    public LatencyHistogram getFlushTime() {
+        return flushTime;
+    }
+}
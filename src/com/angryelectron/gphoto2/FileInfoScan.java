@@ -0,0 +1,187 @@
+/**
+ * FileInfoScan Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * Read the file info of every file below a folder. A background thread
+ * lists each folder and queries each file back to back, so the camera is
+ * never idle waiting for the caller, and results can be consumed while
+ * later folders are still being listed. The camera lock is taken for one
+ * call at a time, so other threads can still use the camera.
+ * </p>
+ * <pre>
+ * try (FileInfoScan scan = new FileInfoScan(camera, "/")) {
+ *     CameraFileMetadata m;
+ *     while ((m = scan.take()) != null) {
+ *         manifest.add(m);
+ *     }
+ * }
+ * </pre>
+ */
+public class FileInfoScan implements AutoCloseable, Runnable {
+
+    private static final int QUEUE_SIZE = 256;
+    /*
+     * Marks the end of the scan in the queue.
+     */
+    private static final CameraFileMetadata END = new CameraFileMetadata("", "", -1, 0, "", 0, 0, -1, 0, 0);
+
+    private final GPhoto2 camera;
+    private final String root;
+    private final BlockingQueue<CameraFileMetadata> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final List<IOException> errors = Collections.synchronizedList(new ArrayList<IOException>());
+    private final Thread thread;
+    private volatile IOException failure;
+    private volatile boolean cancelled = false;
+    private boolean finished = false;
+
+    /**
+     * Start scanning.
+     *
+     * @param camera Open camera to scan.
+     * @param root Folder to start from, for example "/".
+     */
+    public FileInfoScan(GPhoto2 camera, String root) {
+        this.camera = camera;
+        this.root = root;
+        thread = new Thread(this, "fileinfo-" + camera.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Wait for the next file.
+     *
+     * @return The next file, or null once every file has been returned.
+     * @throws IOException If a folder could not be listed. Files whose info
+     * can't be read are skipped; see {@link #getErrors()}.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public CameraFileMetadata take() throws IOException, InterruptedException {
+        if (finished) {
+            return null;
+        }
+        CameraFileMetadata m = queue.take();
+        if (m == END) {
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return m;
+    }
+
+    /**
+     * Wait for the scan to finish.
+     *
+     * @return Every remaining file, in the order they were read.
+     * @throws IOException If a folder could not be listed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public List<CameraFileMetadata> takeAll() throws IOException, InterruptedException {
+        List<CameraFileMetadata> all = new ArrayList<>();
+        CameraFileMetadata m;
+        while ((m = take()) != null) {
+            all.add(m);
+        }
+        return all;
+    }
+
+    /**
+     * @return Files whose info couldn't be read.
+     */
+    public List<IOException> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    /**
+     * Stop scanning. Files already queued are discarded, and {@link #take()}
+     * returns null.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        thread.interrupt();
+        queue.clear();
+        queue.offer(END);
+    }
+
+    /**
+     * The scanning thread.
+     */
+    @Override
+    public void run() {
+        try {
+            scan(root);
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (InterruptedException ex) {
+            /* closed */
+        } catch (RuntimeException ex) {
+            failure = new IOException("File info scan of " + root + " failed.", ex);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Queue END so that take() always returns, whichever way the scan
+     * stopped.
+     */
+    private void end() {
+        if (!cancelled) {
+            try {
+                queue.put(END);
+                return;
+            } catch (InterruptedException ex) {
+                /* closed while the queue was full */
+            }
+        }
+        queue.clear();
+        queue.offer(END);
+    }
+
+    private void scan(String folder) throws IOException, InterruptedException {
+        for (String name : camera.list(folder, false)) {
+            if (cancelled) {
+                throw new InterruptedException();
+            }
+            try {
+                queue.put(camera.getFileMetadata(folder, name));
+            } catch (IOException ex) {
+                errors.add(ex);
+            }
+        }
+        for (String sub : camera.list(folder, true)) {
+            scan(CameraTree.join(folder, sub));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * FileSync Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Forcing directories to disk. A file forced with FileChannel.force() can
+ * still vanish after a crash if the directory entry naming it wasn't
+ * written, so anything that deletes the camera copy of a file forces its
+ * directory first.
+ */
+final class FileSync {
+
+    private FileSync() {
+    }
+
+    /**
+     * Force a directory's entries to disk, where the platform allows it.
+     * Some platforms can't open a directory for syncing; the files
+     * themselves are still on disk, so this is not an error.
+     *
+     * @param directory The directory.
+     */
+    static void forceDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // not every platform can sync a directory
+        }
+    }
+
+    /**
+     * Force the directory holding a file.
+     *
+     * @param file The file.
+     */
+    static void forceDirectoryOf(File file) {
+        forceDirectory(file.getAbsoluteFile().getParentFile().toPath());
+    }
+}
@@ -19,75 +19,172 @@
  */
 package com.angryelectron.gphoto2;
 
+import com.angryelectron.gphoto2.CameraMetrics.Operation;
 import com.angryelectron.libgphoto2.Camera;
 import com.angryelectron.libgphoto2.CameraAbilities;
+import com.angryelectron.libgphoto2.CameraFileInfo;
 import com.angryelectron.libgphoto2.CameraFilePath;
+import com.angryelectron.libgphoto2.CameraListReader;
+import com.angryelectron.libgphoto2.CameraStorageInformation;
 import com.angryelectron.libgphoto2.GPPortInfo;
+import com.angryelectron.libgphoto2.LibC;
+import com.angryelectron.libgphoto2.NativeField;
+import com.angryelectron.libgphoto2.Gphoto2Core;
 import com.angryelectron.libgphoto2.Gphoto2Library;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraAbilitiesList;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraCaptureType;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraEventType;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraFile;
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFileInfoFields;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraFileType;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraList;
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraStorageInfoFields;
 import com.angryelectron.libgphoto2.Gphoto2Library.GPContext;
-import com.angryelectron.libgphoto2.Gphoto2Library.GPContextErrorFunc;
-import com.angryelectron.libgphoto2.Gphoto2Library.GPContextMessageFunc;
 import com.angryelectron.libgphoto2.Gphoto2Library.GPPortInfoList;
-import com.angryelectron.libgphoto2.Gphoto2Library.va_list;
-import com.sun.jna.Native;
+import com.sun.jna.Memory;
 import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
 import com.sun.jna.ptr.PointerByReference;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 /**
  * Simple API for controlling a camera using libgphoto2.
  */
 public class GPhoto2 {
 
-    Gphoto2Library gphoto2;
+    Gphoto2Core gphoto2;
     GPContext context;
+    /**
+     * libgphoto2 calls made on every capture and download.
+     */
+    Backend backend = Backend.get();
+    private ContextPool.Context pooled;
     Camera camera;
     private String error;
     private String message;
     private boolean waitForEvent = false;
-
+    private int captureTimeout = 5000;
+    private final LatencyHistogram captureLatency = new LatencyHistogram();
+    private String name = "camera";
+    CameraMetrics metrics = MetricsRegistry.forCamera(name);
     /**
-     * This will be called when libgphoto2 has an error to share.
+     * Held during every call to the camera. libgphoto2 is not thread-safe,
+     * and background threads such as the capture collector share the camera
+     * with the caller.
      */
-    private final GPContextErrorFunc errorFunc = new GPContextErrorFunc() {
+    final ReentrantLock lock = new ReentrantLock();
+    private final CaptureCollector collector = new CaptureCollector(new CaptureCollector.Source() {
         @Override
-        public void apply(GPContext context, Pointer format, va_list args, Pointer data) {
-            //TODO: parse these errors better            
-            error = format.getString(0);            
+        public String getName() {
+            return GPhoto2.this.getName();
         }
-    };
 
-    /**
-     * This will be called when libgphoto2 has a message to share.
-     */
-    private final GPContextMessageFunc messageFunc = new GPContextMessageFunc() {
+        @Override
+        public int getCaptureTimeout() {
+            return GPhoto2.this.getCaptureTimeout();
+        }
 
         @Override
-        public void apply(GPContext context, Pointer format, va_list args, Pointer data) {
-            //TODO: parse these errors better
-            message = format.getString(0);            
+        public CameraFileEntry waitForFile(int timeout) throws IOException {
+            return GPhoto2.this.waitForFile(timeout);
         }
 
-    };
+        @Override
+        public File saveImage(CameraFileEntry path, boolean delete) throws IOException {
+            return GPhoto2.this.saveImage(path, delete);
+        }
+
+        @Override
+        public void captured(long latency) {
+            getCaptureLatency().record(latency);
+        }
+    });
+    private final CameraTree tree = new CameraTree(this);
+    /**
+     * Set while a {@link StorageMonitor} is watching this camera's captures.
+     */
+    volatile StorageMonitor storageMonitor;
+    private final DeleteQueue deletes = new DeleteQueue(this);
+    private volatile boolean deferredDelete = false;
+    private volatile DownloadSink downloadSink;
+    /*
+     * PTP StoreAdded and StoreRemoved, which libgphoto2 reports as
+     * GP_EVENT_UNKNOWN with the code as text.  ObjectRemoved and
+     * StorageInfoChanged are left out: many cameras send them for every
+     * capture and for our own deletes, which the tree already tracks.
+     */
+    private static final Pattern STORAGE_EVENT = Pattern.compile(
+            "(?i)PTP Event (4004|4005)|Store(Added|Removed)");
+    private long sequence = 0;
+    /*
+     * Set by arm(), guarded by the lock, and used up by the next capture.
+     */
+    private boolean armed = false;
+    private String serialNumber;
+    /*
+     * Fields read straight from native memory, so results don't go through
+     * a reflective Structure.read() of every field.
+     */
+    private static final NativeField PATH_NAME = NativeField.of(CameraFilePath.class, "name");
+    private static final NativeField PATH_FOLDER = NativeField.of(CameraFilePath.class, "folder");
+    private static final NativeField FILE_FIELDS = NativeField.of(CameraFileInfo.class, "file", "fields");
+    private static final NativeField FILE_SIZE = NativeField.of(CameraFileInfo.class, "file", "size");
+    private static final NativeField FILE_TYPE = NativeField.of(CameraFileInfo.class, "file", "type");
+    private static final NativeField FILE_WIDTH = NativeField.of(CameraFileInfo.class, "file", "width");
+    private static final NativeField FILE_HEIGHT = NativeField.of(CameraFileInfo.class, "file", "height");
+    private static final NativeField FILE_MTIME = NativeField.of(CameraFileInfo.class, "file", "mtime");
+    private static final NativeField PREVIEW_FIELDS = NativeField.of(CameraFileInfo.class, "preview", "fields");
+    private static final NativeField PREVIEW_SIZE = NativeField.of(CameraFileInfo.class, "preview", "size");
+    private static final NativeField PREVIEW_WIDTH = NativeField.of(CameraFileInfo.class, "preview", "width");
+    private static final NativeField PREVIEW_HEIGHT = NativeField.of(CameraFileInfo.class, "preview", "height");
+    private static final NativeField STORAGE_FIELDS = NativeField.of(CameraStorageInformation.class, "fields");
+    private static final NativeField STORAGE_BASEDIR = NativeField.of(CameraStorageInformation.class, "basedir");
+    private static final NativeField STORAGE_LABEL = NativeField.of(CameraStorageInformation.class, "label");
+    private static final NativeField STORAGE_DESCRIPTION = NativeField.of(CameraStorageInformation.class, "description");
+    private static final NativeField STORAGE_CAPACITY = NativeField.of(CameraStorageInformation.class, "capacitykbytes");
+    private static final NativeField STORAGE_FREE = NativeField.of(CameraStorageInformation.class, "freekbytes");
+    private static final NativeField STORAGE_FREE_IMAGES = NativeField.of(CameraStorageInformation.class, "freeimages");
+    private static final int STORAGE_SIZE = new CameraStorageInformation().size();
+    /*
+     * Reused for every capture and file info query, under the lock.
+     */
+    private Memory pathBuffer;
+    private Memory infoBuffer;
 
     /**
-     * Constructor. Loads the native libgphoto2.so library and initializes it.
+     * Constructor. Loads the native libgphoto2.so library, the first time
+     * any GPhoto2 is created, and borrows a context from a shared pool.
      */
     public GPhoto2() {
-        gphoto2 = (Gphoto2Library) Native.loadLibrary("libgphoto2.so", Gphoto2Library.class);
-        context = gphoto2.gp_context_new();
-        gphoto2.gp_context_set_error_func(context, errorFunc, null);
-        gphoto2.gp_context_set_message_func(context, messageFunc, null);
+        gphoto2 = ContextPool.library();
+        pooled = ContextPool.borrow(this);
+        context = pooled.context;
+    }
+
+    /**
+     * Called when libgphoto2 has an error to share.
+     */
+    void contextError(String text) {
+        //TODO: parse these errors better
+        error = text;
+    }
+
+    /**
+     * Called when libgphoto2 has a message to share.
+     */
+    void contextMessage(String text) {
+        message = text;
     }
 
     /**
@@ -109,6 +206,120 @@ public class GPhoto2 {
         this.waitForEvent = wait;
     }
 
+    /**
+     * Name this camera. The name identifies the camera in the
+     * {@link MetricsRegistry}, so each physical camera in a rig should be
+     * given a different one. Objects sharing a name share metrics. Default is
+     * "camera".
+     *
+     * @param name Name of the camera, for example its serial number or
+     * position in the rig.
+     */
+    public void setName(String name) {
+        this.name = name;
+        this.metrics = MetricsRegistry.forCamera(name);
+    }
+
+    /**
+     * @return Name of this camera.
+     * @see #setName(java.lang.String)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Set how long capture methods will wait for the camera to report
+     * GP_EVENT_CAPTURE_COMPLETE when {@link #waitForCaptureEvent(boolean)} is
+     * enabled. The budget starts when the shutter is triggered, so time spent
+     * in the capture call itself counts against it. Default is 5000ms.
+     *
+     * @param timeout Time from trigger to capture complete, in milliseconds.
+     */
+    public void setCaptureTimeout(int timeout) {
+        this.captureTimeout = checkTimeout(timeout);
+    }
+
+    private static int checkTimeout(int timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be greater than zero.");
+        }
+        return timeout;
+    }
+
+    /**
+     * @return Capture timeout, in milliseconds.
+     * @see #setCaptureTimeout(int)
+     */
+    public int getCaptureTimeout() {
+        return captureTimeout;
+    }
+
+    /**
+     * Trigger-to-file latency of every successful capture made by this
+     * object. When waiting for capture events, this includes the wait.
+     *
+     * @return Histogram of capture latencies.
+     */
+    public LatencyHistogram getCaptureLatency() {
+        return captureLatency;
+    }
+
+    /**
+     * Delete downloaded files from the camera in the background, instead of
+     * straight after each download. Used by the download methods that take
+     * a delete flag. The local copy of each file is forced to disk before it
+     * is deleted, and files are deleted a folder at a time, in one call
+     * where possible, so a burst doesn't pay for a delete after every
+     * frame. {@link #close()} waits for pending deletes. Default is false.
+     *
+     * @param deferred True to delete in the background.
+     */
+    public void setDeferredDelete(boolean deferred) {
+        this.deferredDelete = deferred;
+    }
+
+    /**
+     * Wait for background deletes to finish.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit Unit of the timeout.
+     * @return True if nothing is left to delete.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean flushDeletes(long timeout, TimeUnit unit) throws InterruptedException {
+        return deletes.flush(unit.toNanos(timeout));
+    }
+
+    /**
+     * @return Number of files waiting to be deleted in the background.
+     */
+    public int getPendingDeletes() {
+        return deletes.size();
+    }
+
+    /**
+     * @return Files the background delete left on the camera, because they
+     * could not be deleted or their local copy could not be confirmed.
+     */
+    public List<IOException> getDeleteErrors() {
+        return deletes.getErrors();
+    }
+
+    /**
+     * Write files saved by the download methods through a sink, instead of
+     * with gp_file_save, so they are forced to disk as the sink's
+     * {@link DownloadSink.Durability} requires. A file that is about to be
+     * deleted from the camera is always forced first, whatever the
+     * durability. The sink is not closed with the camera. Default is null,
+     * which uses gp_file_save.
+     *
+     * @param sink The sink, or null.
+     */
+    public void setDownloadSink(DownloadSink sink) {
+        this.downloadSink = sink;
+    }
+
     /**
      * Enumerate all cameras currently attached.  Will fail unless all attached
      * cameras are closed().
@@ -177,26 +388,9 @@ public class GPhoto2 {
          * Convert the Cameras List into a list of Camera objects
          */
         List<Camera> cList = new ArrayList<>();
-        int size = gphoto2.gp_list_count(cameraList);
-        String[] model = new String[1];
-        String[] port = new String[1];
-        for (int i = 0; i < size; i++) {
-
-            /*
-             * Get Model
-             */
-            rc = gphoto2.gp_list_get_name(cameraList, i, model);
-            if (rc != Gphoto2Library.GP_OK) {
-                throw new IOException("gp_list_get_name failed with code " + rc);
-            }
-
-            /*
-             * Get Port
-             */
-            rc = gphoto2.gp_list_get_value(cameraList, i, port);
-            if (rc != Gphoto2Library.GP_OK) {
-                throw new IOException("gp_list_get_value failed with code " + rc);
-            }
+        String[] models = CameraListReader.names(cameraList);
+        String[] ports = CameraListReader.values(cameraList);
+        for (int i = 0; i < models.length; i++) {
 
             /*
              * Create new Camera Object
@@ -210,7 +404,7 @@ public class GPhoto2 {
              * Abilities with a Camera
              */
             CameraAbilities.ByValue cameraAbilities = new CameraAbilities.ByValue();
-            int modelIndex = gphoto2.gp_abilities_list_lookup_model(cameraAbilitiesList, model[0]);
+            int modelIndex = gphoto2.gp_abilities_list_lookup_model(cameraAbilitiesList, models[i]);
             gphoto2.gp_abilities_list_get_abilities(cameraAbilitiesList, modelIndex, cameraAbilities);
             gphoto2.gp_camera_set_abilities(c, cameraAbilities);
 
@@ -218,9 +412,9 @@ public class GPhoto2 {
              * Do the same for the Port.  TODO: verify return codes.
              */
             GPPortInfo.ByValue portInfo = new GPPortInfo.ByValue();
-            gphoto2.gp_port_info_list_lookup_path(portInfoList, port[0]);
-            gphoto2.gp_port_info_list_get_info(portInfoList, i, portInfo);
-            gphoto2.gp_camera_set_port_info(camera, portInfo);
+            int portIndex = gphoto2.gp_port_info_list_lookup_path(portInfoList, ports[i]);
+            gphoto2.gp_port_info_list_get_info(portInfoList, portIndex, portInfo);
+            gphoto2.gp_camera_set_port_info(c, portInfo);
 
             /*
              * Finally, add this Camera to the List
@@ -244,12 +438,20 @@ public class GPhoto2 {
     public void open() throws IOException {
         PointerByReference ref = new PointerByReference();
         gphoto2.gp_camera_new(ref);
-        camera = new Camera(ref.getValue());
-        int result = gphoto2.gp_camera_init(camera, context);
-        if (result != Gphoto2Library.GP_OK) {
-            gphoto2.gp_camera_unref(camera);
-            camera = null;
-            throw new IOException(error + "(" + result + ")");
+        lock.lock();
+        try {
+            borrowContext();
+            camera = new Camera(ref.getValue());
+            serialNumber = null;
+            tree.clear();
+            int result = gphoto2.gp_camera_init(camera, context);
+            if (result != Gphoto2Library.GP_OK) {
+                gphoto2.gp_camera_unref(camera);
+                camera = null;
+                throw new IOException(error + "(" + result + ")");
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -261,22 +463,57 @@ public class GPhoto2 {
      * @throws IOException
      */
     public void open(Camera camera) throws IOException {
-        this.camera = camera;
-        int rc = gphoto2.gp_camera_init(camera, context);
-        if (rc != Gphoto2Library.GP_OK) {
-            gphoto2.gp_camera_unref(camera);
-            this.camera = null;
-            throw new IOException("gp_camera_init failed with code " + rc);
+        lock.lock();
+        try {
+            borrowContext();
+            this.camera = camera;
+            serialNumber = null;
+            tree.clear();
+            int rc = gphoto2.gp_camera_init(camera, context);
+            if (rc != Gphoto2Library.GP_OK) {
+                gphoto2.gp_camera_unref(camera);
+                this.camera = null;
+                throw new IOException("gp_camera_init failed with code " + rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a context from the pool again after {@link #close()}.
+     */
+    private void borrowContext() {
+        if (pooled == null) {
+            pooled = ContextPool.borrow(this);
+            context = pooled.context;
         }
     }
 
     /**
-     * Close camera connection.
+     * Close camera connection and return its context to the shared pool.
+     * Any {@link PendingCapture} not yet collected will fail.
      */
     public void close() {
-        gphoto2.gp_camera_exit(camera, context);
-        gphoto2.gp_context_unref(context);
-        gphoto2.gp_camera_unref(camera);                
+        collector.cancel(new IOException("Camera closed."));
+        try {
+            deletes.flush(Long.MAX_VALUE);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            gphoto2.gp_camera_exit(camera, context);
+            gphoto2.gp_camera_unref(camera);
+            camera = null;
+            if (pooled != null) {
+                ContextPool.release(pooled);
+                pooled = null;
+                context = null;
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -286,8 +523,106 @@ public class GPhoto2 {
      * @throws IOException If the picture cannot be taken.
      */
     public String capture() throws IOException {
-        CameraFilePath path = captureImage();
-        return new String(path.name);
+        return capture(captureTimeout);
+    }
+
+    /**
+     * Take a picture, overriding the capture timeout for this call only.
+     *
+     * @param timeout Time from trigger to capture complete, in milliseconds.
+     * Only used when {@link #waitForCaptureEvent(boolean)} is enabled.
+     * @return Name of image file on the camera.
+     * @throws IOException If the picture cannot be taken in time.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public String capture(int timeout) throws IOException {
+        checkTimeout(timeout);
+        lock.lock();
+        try {
+            return captureImage(timeout).getName();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a picture, leaving it on the camera.
+     *
+     * @return Folder and name of the new file.
+     * @throws IOException If the picture cannot be taken.
+     */
+    CameraFileEntry captureFile() throws IOException {
+        lock.lock();
+        try {
+            return captureImage(captureTimeout);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fire the shutter without waiting for the camera to store the image.
+     * The new image is reported later by a GP_EVENT_FILE_ADDED event, which
+     * can be collected with {@link #captureTethered(int, boolean)}. Not all
+     * cameras support this.
+     *
+     * @throws IOException If the shutter cannot be triggered.
+     */
+    public void triggerCapture() throws IOException {
+        lock.lock();
+        try {
+            StorageMonitor monitor = storageMonitor;
+            if (monitor != null && !admitted()) {
+                monitor.admit();
+            }
+            long start = metrics.start();
+            int rc = backend.gp_camera_trigger_capture(camera, context);
+            validateResult("gp_camera_trigger_capture", rc);
+            metrics.stop(Operation.CAPTURE, start);
+            if (monitor != null) {
+                monitor.captured();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fire the shutter and return immediately, without waiting for the
+     * camera to store the image. A background thread collects each new file
+     * as the camera reports it, saves it into the current directory and
+     * completes the matching PendingCapture. Files are matched to triggers
+     * in order, so this can be called again straight away to shoot at the
+     * camera's own burst rate.
+     * <p>
+     * If no file arrives within the capture timeout (see
+     * {@link #setCaptureTimeout(int)}) of the last one, every outstanding
+     * capture fails. Not all cameras support this.</p>
+     *
+     * @param delete True if the image should be removed from the camera
+     * after saving.
+     * @return A PendingCapture which completes once the image is saved.
+     * @throws IOException If the shutter cannot be triggered.
+     */
+    public PendingCapture captureAsync(boolean delete) throws IOException {
+        lock.lock();
+        try {
+            PendingCapture capture = new PendingCapture(++sequence, delete);
+            /*
+             * Register before triggering: the collector can't see any events
+             * until the lock is released.
+             */
+            collector.add(capture);
+            try {
+                triggerCapture();
+            } catch (IOException ex) {
+                collector.remove(capture);
+                throw ex;
+            }
+            return capture;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -299,15 +634,36 @@ public class GPhoto2 {
      * @throws IOException If image cannot be captured or saved.
      */
     public File captureAndDownload(Boolean delete) throws IOException {
-        CameraFilePath path = captureImage();
-        return saveImage(path, delete);
+        return captureAndDownload(delete, captureTimeout);
+    }
+
+    /**
+     * Take a picture and save it to disk, overriding the capture timeout for
+     * this call only.
+     *
+     * @param delete True if image should be removed from camera after saving.
+     * @param timeout Time from trigger to capture complete, in milliseconds.
+     * Only used when {@link #waitForCaptureEvent(boolean)} is enabled.
+     * @return a File object which points to the saved image.
+     * @throws IOException If image cannot be captured or saved.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public File captureAndDownload(Boolean delete, int timeout) throws IOException {
+        checkTimeout(timeout);
+        lock.lock();
+        try {
+            return saveImage(captureImage(timeout), delete);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Don't take a picture, rather wait for camera to capture an image, then
      * download. Call in a loop to create a tethered-shooting mode.
      *
-     * @param timeout Time to wait before aborting (in milliseconds).
+     * @param timeout Time to wait before aborting (in milliseconds). This is a
+     * total for the call, not for each event received from the camera.
      * @param delete If true, image is deleted from camera after downloading.
      * @return A File which points to the new image on disk.
      * @throws IOException on camera error
@@ -315,23 +671,36 @@ public class GPhoto2 {
      */
     public File captureTethered(int timeout, boolean delete) throws IOException, InterruptedException {
         int rc;
-        IntBuffer eventType = IntBuffer.allocate(1);
-        CameraFilePath path = new CameraFilePath();
-        PointerByReference ref = new PointerByReference(path.getPointer());
+        IntByReference eventType = new IntByReference();
+        PointerByReference ref = new PointerByReference();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int events = 0;
 
-        /*
-         * need to loop, othewise GP_EVENT_UNKNOWN is almost always returned
-         */
-        while (true) {
-            rc = gphoto2.gp_camera_wait_for_event(camera, timeout, eventType, ref, context);
-            if (rc != Gphoto2Library.GP_OK) {
-                throw new IOException("Wait for Event failed with code " + rc);
-            }
-            if (eventType.get(0) == CameraEventType.GP_EVENT_FILE_ADDED) {
-                return saveImage(path, delete);
-            } else if (eventType.get(0) == CameraEventType.GP_EVENT_TIMEOUT) {
-                throw new InterruptedException("Timeout occured waiting for GP_EVENT_FILE_ADDED.");
+        lock.lock();
+        try {
+            /*
+             * need to loop, othewise GP_EVENT_UNKNOWN is almost always returned
+             */
+            while (true) {
+                int remaining = remainingMillis(deadline);
+                if (remaining <= 0) {
+                    throw new InterruptedException("Timeout occured waiting for GP_EVENT_FILE_ADDED.");
+                }
+                long start = metrics.start();
+                rc = backend.gp_camera_wait_for_event(camera, remaining, eventType, ref, context);
+                metrics.stop(Operation.WAIT_FOR_EVENT, start);
+                validateResult("Wait for Event", rc);
+                events++;
+                CameraFileEntry path = eventPath(eventType.getValue(), ref.getValue());
+                if (path != null) {
+                    metrics.eventsDrained(events);
+                    return saveImage(path, delete);
+                } else if (eventType.getValue() == CameraEventType.GP_EVENT_TIMEOUT) {
+                    throw new InterruptedException("Timeout occured waiting for GP_EVENT_FILE_ADDED.");
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -346,7 +715,12 @@ public class GPhoto2 {
      * @throws IOException if images cannot be captured or saved.
      */
     public ArrayList<File> burstAndDownload(Boolean delete) throws IOException {
-        return saveImages(captureImage(), delete);
+        lock.lock();
+        try {
+            return saveImages(captureImage(captureTimeout), delete);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -359,10 +733,19 @@ public class GPhoto2 {
      * @throws IOException
      */
     public void setConfig(String param, String value) throws IOException {
-        GPhoto2Config config = new GPhoto2Config(this);
-        config.readConfig();
-        config.setParameter(param, value);
-        config.writeConfig();
+        lock.lock();
+        try {
+            GPhoto2Config config = new GPhoto2Config(this);
+            try {
+                config.readConfig();
+                config.setParameter(param, value);
+                config.writeConfig();
+            } finally {
+                config.free();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -376,100 +759,469 @@ public class GPhoto2 {
      * @throws IOException if the parameter cannot be read.
      */
     public String getConfig(String param) throws IOException {
-        GPhoto2Config config = new GPhoto2Config(this);
-        config.readConfig();
-        String value = config.getParameter(param);
-        return value;
+        lock.lock();
+        try {
+            GPhoto2Config config = new GPhoto2Config(this);
+            try {
+                config.readConfig();
+                return config.getParameter(param);
+            } finally {
+                config.free();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read every camera setting at once. Much faster than calling
+     * {@link #getConfig(java.lang.String)} for several parameters, since the
+     * configuration is only read from the camera once.
+     *
+     * @return A snapshot of the camera's configuration.
+     * @throws IOException If the configuration cannot be read.
+     */
+    public ConfigSnapshot snapshotConfig() throws IOException {
+        lock.lock();
+        try {
+            GPhoto2Config config = new GPhoto2Config(this);
+            try {
+                config.readConfig();
+                return config.snapshot();
+            } finally {
+                config.free();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the capacity and free space of each storage, such as a memory
+     * card.
+     *
+     * @return One entry per storage.
+     * @throws IOException If the information cannot be read.
+     */
+    public List<StorageInfo> getStorageInfo() throws IOException {
+        PointerByReference ref = new PointerByReference();
+        IntBuffer count = IntBuffer.allocate(1);
+        lock.lock();
+        try {
+            long start = metrics.start();
+            int rc = gphoto2.gp_camera_get_storageinfo(camera, ref, count, context);
+            validateResult("gp_camera_get_storageinfo", rc);
+            metrics.stop(Operation.STORAGE_INFO, start);
+        } finally {
+            lock.unlock();
+        }
+        Pointer array = ref.getValue();
+        List<StorageInfo> storage = new ArrayList<>();
+        if (array == null) {
+            return storage;
+        }
+        for (int i = 0; i < count.get(0); i++) {
+            Pointer p = array.share((long) i * STORAGE_SIZE);
+            int fields = STORAGE_FIELDS.getInt(p);
+            storage.add(new StorageInfo(
+                    (fields & CameraStorageInfoFields.GP_STORAGEINFO_BASE) != 0 ? STORAGE_BASEDIR.getString(p) : "",
+                    (fields & CameraStorageInfoFields.GP_STORAGEINFO_LABEL) != 0 ? STORAGE_LABEL.getString(p) : "",
+                    (fields & CameraStorageInfoFields.GP_STORAGEINFO_DESCRIPTION) != 0
+                    ? STORAGE_DESCRIPTION.getString(p) : "",
+                    (fields & CameraStorageInfoFields.GP_STORAGEINFO_MAXCAPACITY) != 0
+                    ? STORAGE_CAPACITY.getLong(p) : -1,
+                    (fields & CameraStorageInfoFields.GP_STORAGEINFO_FREESPACEKBYTES) != 0
+                    ? STORAGE_FREE.getLong(p) : -1,
+                    (fields & CameraStorageInfoFields.GP_STORAGEINFO_FREESPACEIMAGES) != 0
+                    ? STORAGE_FREE_IMAGES.getLong(p) : -1));
+        }
+        LibC.INSTANCE.free(array);
+        return storage;
+    }
+
+    /**
+     * Serial number of the camera, read from the "serialnumber" parameter the
+     * first time it is needed. Cameras that don't report one use
+     * {@link #getName()} instead.
+     *
+     * @return Serial number of the camera.
+     */
+    public String getSerialNumber() {
+        if (serialNumber == null) {
+            String serial;
+            try {
+                serial = getConfig("serialnumber").trim();
+            } catch (IOException ex) {
+                serial = "";
+            }
+            serialNumber = serial.isEmpty() ? name : serial;
+        }
+        return serialNumber;
+    }
+
+    /**
+     * @return In-memory copy of the folders and files on the camera, read
+     * the first time it is used.
+     */
+    public CameraTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Download the preview (thumbnail) of an image, without transferring
+     * the image itself. Use a {@link ThumbnailCache} when browsing many
+     * images.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the image.
+     * @return The preview image. Its dimensions are 0 (unknown); use
+     * {@link #downloadPreview(CameraFileEntry)} with a listed
+     * {@link CameraFileMetadata} to get them without another round trip.
+     * @throws IOException If the preview cannot be downloaded.
+     */
+    public Thumbnail downloadPreview(String folder, String name) throws IOException {
+        return downloadPreview(new CameraFileEntry(folder, name, -1, 0));
+    }
+
+    /**
+     * Download the preview (thumbnail) of an image, without transferring
+     * the image itself.
+     *
+     * @param entry The image, as listed from the camera.
+     * @return The preview image, with its dimensions if the entry is a
+     * {@link CameraFileMetadata} that has them.
+     * @throws IOException If the preview cannot be downloaded.
+     */
+    public Thumbnail downloadPreview(CameraFileEntry entry) throws IOException {
+        byte[] data = download(entry.getFolder(), entry.getName(), CameraFileType.GP_FILE_TYPE_PREVIEW);
+        int width = 0;
+        int height = 0;
+        if (entry instanceof CameraFileMetadata) {
+            width = ((CameraFileMetadata) entry).getPreviewWidth();
+            height = ((CameraFileMetadata) entry).getPreviewHeight();
+        }
+        return new Thumbnail(CameraFileType.GP_FILE_TYPE_PREVIEW, data, width, height);
+    }
+
+    /**
+     * Download the EXIF block of an image, without transferring the image
+     * itself.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the image.
+     * @return The EXIF data.
+     * @throws IOException If the EXIF data cannot be downloaded.
+     */
+    public Thumbnail downloadExif(String folder, String name) throws IOException {
+        byte[] data = download(folder, name, CameraFileType.GP_FILE_TYPE_EXIF);
+        return new Thumbnail(CameraFileType.GP_FILE_TYPE_EXIF, data, 0, 0);
     }
 
     /**
      * Wait (block) until the specified event is received or a timeout occurs.
+     * The timeout covers the whole call: other events received in the
+     * meantime (usually GP_EVENT_UNKNOWN) use up the budget rather than
+     * restarting it.
      *
      * @param timeout Timeout value, in milliseconds
      * @param event expected CameraEventType
      * @throws IOException if Timeout occurs or camera is unreachable.
      */
-    private void waitForEvent(int timeout, int event) throws IOException {
-        IntBuffer i = IntBuffer.allocate(1);
+    void waitForEvent(int timeout, int event) throws IOException {
+        lock.lock();
+        try {
+            waitForEventUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), event);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a single event, and return the new file if it was a
+     * GP_EVENT_FILE_ADDED. The camera lock is only held for this one event.
+     *
+     * @param timeout Timeout value, in milliseconds.
+     * @return Path of the new file, or null if the camera sent some other
+     * event or has been closed.
+     * @throws IOException if the camera is unreachable.
+     */
+    CameraFileEntry waitForFile(int timeout) throws IOException {
+        IntByReference type = new IntByReference();
+        PointerByReference data = new PointerByReference();
+        lock.lock();
+        try {
+            if (camera == null) {
+                return null;
+            }
+            long start = metrics.start();
+            int rc = backend.gp_camera_wait_for_event(camera, timeout, type, data, context);
+            metrics.stop(Operation.WAIT_FOR_EVENT, start);
+            validateResult("Wait for Event", rc);
+        } finally {
+            lock.unlock();
+        }
+        return eventPath(type.getValue(), data.getValue());
+    }
+
+    /**
+     * Copy the path out of a GP_EVENT_FILE_ADDED event, then release the
+     * event data, which libgphoto2 allocates for every event that has any.
+     * New files and folders, and storage changes, are passed on to the
+     * {@link CameraTree}.
+     *
+     * @param type CameraEventType of the event.
+     * @param data Event data returned by gp_camera_wait_for_event.
+     * @return Path of the new file, or null for any other event.
+     */
+    private CameraFileEntry eventPath(int type, Pointer data) {
+        if (data == null) {
+            return null;
+        }
+        CameraFileEntry path = null;
+        if (type == CameraEventType.GP_EVENT_FILE_ADDED) {
+            path = new CameraFileEntry(PATH_FOLDER.getString(data), PATH_NAME.getString(data), -1, 0);
+            tree.fileAdded(path.getFolder(), path.getName());
+        } else if (type == CameraEventType.GP_EVENT_FOLDER_ADDED) {
+            tree.folderAdded(PATH_FOLDER.getString(data), PATH_NAME.getString(data));
+        } else if (type == CameraEventType.GP_EVENT_UNKNOWN
+                && STORAGE_EVENT.matcher(data.getString(0)).find()) {
+            tree.invalidate();
+        }
+        LibC.INSTANCE.free(data);
+        return path;
+    }
+
+    /**
+     * Wait (block) until the specified event is received or a deadline
+     * passes.
+     *
+     * @param deadline Absolute deadline, as a {@link System#nanoTime()} value.
+     * @param event expected CameraEventType
+     * @throws IOException if the deadline passes or camera is unreachable.
+     */
+    private void waitForEventUntil(long deadline, int event) throws IOException {
+        IntByReference i = new IntByReference();
         PointerByReference data = new PointerByReference();
         int rc;
+        int events = 0;
 
         /*
          * need to loop, othewise GP_EVENT_UNKNOWN is almost always returned
          */
         while (true) {
-            rc = gphoto2.gp_camera_wait_for_event(camera, timeout, i, data, context);
-            if (rc != Gphoto2Library.GP_OK) {
-                throw new IOException("Wait for Event failed with code " + rc);
+            int remaining = remainingMillis(deadline);
+            if (remaining <= 0) {
+                throw new IOException("Timeout occured waiting for event " + event);
             }
-            if (i.get(0) == event) {
+            long start = metrics.start();
+            rc = backend.gp_camera_wait_for_event(camera, remaining, i, data, context);
+            metrics.stop(Operation.WAIT_FOR_EVENT, start);
+            validateResult("Wait for Event", rc);
+            events++;
+            eventPath(i.getValue(), data.getValue());
+            if (i.getValue() == event) {
+                metrics.eventsDrained(events);
                 return;
-            } else if (i.get(0) == CameraEventType.GP_EVENT_TIMEOUT) {
+            } else if (i.getValue() == CameraEventType.GP_EVENT_TIMEOUT) {
                 throw new IOException("Timeout occured waiting for event " + event);
             }
         }
     }
 
+    /**
+     * Verify return codes. If the return code is not GP_OK, the error is
+     * counted and an IOException is thrown.
+     *
+     * @param msg Name of the call, to include with the exception.
+     * @param rc The return code to validate.
+     * @throws IOException
+     */
+    void validateResult(String msg, int rc) throws IOException {
+        if (rc != Gphoto2Library.GP_OK) {
+            metrics.error(rc);
+            throw new IOException(msg + " failed with code " + rc);
+        }
+    }
+
+    /**
+     * Milliseconds left before a deadline.
+     *
+     * @param deadline Absolute deadline, as a {@link System#nanoTime()} value.
+     * @return Remaining time, rounded up so that a partial millisecond is
+     * still waited for. Zero or less once the deadline has passed.
+     */
+    private static int remainingMillis(long deadline) {
+        long nanos = deadline - System.nanoTime();
+        if (nanos <= 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (nanos + 999999) / 1000000);
+    }
+
     /**
      * Capture an Image.
      *
-     * @return CameraFilePath which references the captured image.
+     * @param timeout Time from trigger to capture complete, in milliseconds.
+     * @return The captured image on the camera.
      * @throws IOException If image cannot be captured.
      */
-    private CameraFilePath captureImage() throws IOException {
-        CameraFilePath cameraFilePath = new CameraFilePath();
-        int result = gphoto2.gp_camera_capture(camera, CameraCaptureType.GP_CAPTURE_IMAGE, cameraFilePath, context);
+    private CameraFileEntry captureImage(int timeout) throws IOException {
+        if (pathBuffer == null) {
+            pathBuffer = NativeField.allocate(CameraFilePath.class);
+        }
+        StorageMonitor monitor = storageMonitor;
+        if (monitor != null && !admitted()) {
+            monitor.admit();
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int result = backend.gp_camera_capture(camera, CameraCaptureType.GP_CAPTURE_IMAGE, pathBuffer, context);
         if (result != Gphoto2Library.GP_OK) {
+            metrics.error(result);
             throw new IOException(error + "(" + result + ")");
         }
+        CameraFileEntry cameraFilePath = new CameraFileEntry(PATH_FOLDER.getString(pathBuffer),
+                PATH_NAME.getString(pathBuffer), -1, 0);
+        tree.fileAdded(cameraFilePath.getFolder(), cameraFilePath.getName());
+        if (monitor != null) {
+            monitor.captured();
+        }
         if (this.waitForEvent) {
-            waitForEvent(5000, CameraEventType.GP_EVENT_CAPTURE_COMPLETE);
+            waitForEventUntil(deadline, CameraEventType.GP_EVENT_CAPTURE_COMPLETE);
+        }
+        long elapsed = System.nanoTime() - start;
+        captureLatency.record(elapsed);
+        if (MetricsRegistry.isEnabled()) {
+            metrics.getLatency(Operation.CAPTURE).record(elapsed);
         }
         return cameraFilePath;
     }
 
+    /**
+     * Get ready to capture with as little left to do as possible: take the
+     * camera lock and, if a {@link StorageMonitor} is watching, make room
+     * for the capture now. The next capture on this thread skips both. The
+     * lock stays held until {@link #disarm()}, which must be called on the
+     * same thread. Used by {@link SynchronizedTrigger} before its gate
+     * opens.
+     *
+     * @throws IOException If the card is full and nothing can be offloaded.
+     * The lock is not held.
+     */
+    void arm() throws IOException {
+        lock.lock();
+        try {
+            StorageMonitor monitor = storageMonitor;
+            if (monitor != null) {
+                monitor.admit();
+            }
+            armed = true;
+        } catch (IOException ex) {
+            lock.unlock();
+            throw ex;
+        }
+    }
+
+    /**
+     * Release the lock taken by {@link #arm()}.
+     */
+    void disarm() {
+        armed = false;
+        lock.unlock();
+    }
+
+    /**
+     * @return True if arm() has already admitted this capture. Clears the
+     * flag, so only one capture uses it.
+     */
+    private boolean admitted() {
+        boolean a = armed;
+        armed = false;
+        return a;
+    }
+
     /**
      * Save image to disk in current directory. TODO: allow path and filename to
      * be specified.
      *
-     * @param path CameraFilePath object returned by captureImage()
+     * @param path The image on the camera, as returned by captureImage()
      * @param delete True if the image should be deleted from the camera
      * @return a File which points to the new image.
      * @throws IOException If the image cannot be saved.
      */
-    private File saveImage(CameraFilePath path, Boolean delete) throws IOException {
-        String folder = new String(path.folder);
-        String name = new String(path.name);
+    File saveImage(CameraFileEntry path, Boolean delete) throws IOException {
+        /*
+         * Also called from the CaptureCollector thread, so take the lock
+         * here rather than relying on the caller.
+         */
+        lock.lock();
+        try {
+            return save(path, delete);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private File save(CameraFileEntry path, Boolean delete) throws IOException {
+        String folder = path.getFolder();
+        String name = path.getName();
         int rc;
+        long start = metrics.start();
 
         /* initialize a CameraFile object */        
-        CameraFile ref[] = new CameraFile[1];
-        rc = gphoto2.gp_file_new(ref);
-        if (rc != Gphoto2Library.GP_OK) {
-            throw new IOException("gp_file_new failed with code " + rc);
-        }
-        CameraFile cameraFile = ref[0];
+        CameraFile cameraFile = newFile();
 
-        /* point the CameraFile object at the CameraFilePath */
-        rc = gphoto2.gp_camera_file_get(camera, folder, name, CameraFileType.GP_FILE_TYPE_NORMAL, cameraFile, context);
+        /* point the CameraFile object at the file on the camera */
+        rc = backend.gp_camera_file_get(camera, folder, name, CameraFileType.GP_FILE_TYPE_NORMAL, cameraFile, context);
         if (rc != Gphoto2Library.GP_OK) {
-            throw new IOException("gp_camera_file_get failed with code " + rc);
+            backend.gp_file_free(cameraFile);
+            validateResult("gp_camera_file_get", rc);
+        }
+        long length = -1;
+        DownloadSink sink = downloadSink;
+        if (sink == null && (start != 0 || (delete && deferredDelete))) {
+            PointerByReference data = new PointerByReference();
+            NativeLongByReference size = new NativeLongByReference();
+            if (backend.gp_file_get_data_and_size(cameraFile, data, size) == Gphoto2Library.GP_OK) {
+                length = size.getValue().longValue();
+                metrics.addBytes(length);
+            }
         }
 
         /* save CameraFile to disk */
-        rc = gphoto2.gp_file_save(cameraFile, name);
-        gphoto2.gp_file_free(cameraFile);
-        if (rc != Gphoto2Library.GP_OK) {
-            throw new IOException("gp_file_save failed with code " + rc);
+        if (sink != null) {
+            try {
+                length = sink.write(data(cameraFile), new File(name));
+            } finally {
+                backend.gp_file_free(cameraFile);
+            }
+            metrics.addBytes(length);
+        } else {
+            rc = gphoto2.gp_file_save(cameraFile, name);
+            backend.gp_file_free(cameraFile);
+            validateResult("gp_file_save", rc);
         }
+        metrics.stop(Operation.DOWNLOAD, start);
 
-        if (delete) {
-            rc = gphoto2.gp_camera_file_delete(camera, folder, name, context);
-            if (rc != Gphoto2Library.GP_OK) {
-                throw new IOException("gp_camera_file_delete failed with code " + rc);
+        /*
+         * A group sink would have to flush its whole group before each
+         * delete, so its deletes go through the queue, which forces just
+         * the files it deletes.
+         */
+        boolean defer = deferredDelete || (sink != null && sink.getDurability() == DownloadSink.Durability.GROUP);
+        if (delete && defer) {
+            deletes.add(folder, name, new File(name).getAbsoluteFile(), length);
+        } else if (delete) {
+            if (sink != null) {
+                sink.sync(new File(name));
             }
+            start = metrics.start();
+            rc = backend.gp_camera_file_delete(camera, folder, name, context);
+            validateResult("gp_camera_file_delete", rc);
+            metrics.stop(Operation.DELETE, start);
+            tree.fileRemoved(folder, name);
         }
-        return new File(name.trim());
+        return new File(name);
     }
 
     /**
@@ -477,40 +1229,246 @@ public class GPhoto2 {
      * Warning: If delete option is enabled, all images on the camera will be
      * deleted, not just the ones from the most recent capture.
      *
-     * @param path CameraFilePath to the image on the camera
+     * @param path An image on the camera; every file in its folder is saved
      * @param delete True if all images should be removed from camera after
      * saving
      * @return ArrayList of Files for the downloaded images
      * @throws IOException on error
      */
-    private ArrayList<File> saveImages(CameraFilePath path, Boolean delete) throws IOException {
+    private ArrayList<File> saveImages(CameraFileEntry path, Boolean delete) throws IOException {
         ArrayList<File> fileList = new ArrayList<>();
-        String folder = new String(path.folder);
+        String folder = path.getFolder();
+
+        /*
+         * List the folder itself: the tree may not have seen the newest
+         * files yet, and events belong to whoever is waiting for them.
+         */
+        for (String name : list(folder, false)) {
+            fileList.add(saveImage(new CameraFileEntry(folder, name, -1, 0), delete));
+        }
+        return fileList;
+    }
 
-        /* get a list of files */
+    /**
+     * List the files or sub-folders of a folder on the camera.
+     *
+     * @param folder Folder on the camera.
+     * @param folders True to list sub-folders, false to list files.
+     * @return Names of the entries, in the order the camera returns them.
+     * @throws IOException If the folder cannot be listed.
+     */
+    List<String> list(String folder, boolean folders) throws IOException {
         PointerByReference ref = new PointerByReference();
         int rc = gphoto2.gp_list_new(ref);
-        if (rc != Gphoto2Library.GP_OK) {
-            throw new IOException("gp_list_new failed with code " + rc);
-        }
+        validateResult("gp_list_new", rc);
         CameraList cameraList = new CameraList(ref.getValue());
-        rc = gphoto2.gp_camera_folder_list_files(camera, folder, cameraList, context);
-        if (rc != Gphoto2Library.GP_OK) {
-            throw new IOException("gp_camera_folder_list_files failed with code " + rc);
+        lock.lock();
+        try {
+            if (folders) {
+                rc = gphoto2.gp_camera_folder_list_folders(camera, folder, cameraList, context);
+                validateResult("gp_camera_folder_list_folders", rc);
+            } else {
+                rc = gphoto2.gp_camera_folder_list_files(camera, folder, cameraList, context);
+                validateResult("gp_camera_folder_list_files", rc);
+            }
+            return new ArrayList<>(Arrays.asList(CameraListReader.names(cameraList)));
+        } finally {
+            lock.unlock();
+            gphoto2.gp_list_free(cameraList);
         }
+    }
 
-        /* iterate through list, downloading each item */
-        int gp_list_count = gphoto2.gp_list_count(cameraList);
-        for (int i = 0; i < gp_list_count; i++) {
-            rc = gphoto2.gp_list_get_name(cameraList, i, ref);
-            if (rc != Gphoto2Library.GP_OK) {
-                throw new IOException("gp_list_get_name failed with code " + rc);
+    /**
+     * Read the size and modification time of a file on the camera.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @return A CameraFileEntry for the file.
+     * @throws IOException If the information cannot be read.
+     */
+    CameraFileEntry getFileEntry(String folder, String name) throws IOException {
+        return getFileMetadata(folder, name);
+    }
+
+    /**
+     * Read everything libgphoto2 reports about a file and its preview, in a
+     * single call to the camera.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @return A copy of the file info.
+     * @throws IOException If the information cannot be read.
+     */
+    CameraFileMetadata getFileMetadata(String folder, String name) throws IOException {
+        lock.lock();
+        try {
+            if (infoBuffer == null) {
+                infoBuffer = NativeField.allocate(CameraFileInfo.class);
             }
-            String name = ref.getValue().getString(0);
-            path.name = name.getBytes();
-            fileList.add(saveImage(path, delete));
+            Pointer info = infoBuffer;
+            int rc = backend.gp_camera_file_get_info(camera, folder, name, info, context);
+            validateResult("gp_camera_file_get_info", rc);
+            int fields = FILE_FIELDS.getInt(info);
+            int previewFields = PREVIEW_FIELDS.getInt(info);
+            return new CameraFileMetadata(folder, name,
+                    (fields & CameraFileInfoFields.GP_FILE_INFO_SIZE) != 0 ? FILE_SIZE.getLong(info) : -1,
+                    (fields & CameraFileInfoFields.GP_FILE_INFO_MTIME) != 0 ? FILE_MTIME.getLong(info) * 1000 : 0,
+                    (fields & CameraFileInfoFields.GP_FILE_INFO_TYPE) != 0 ? FILE_TYPE.getString(info) : "",
+                    (fields & CameraFileInfoFields.GP_FILE_INFO_WIDTH) != 0 ? FILE_WIDTH.getInt(info) : 0,
+                    (fields & CameraFileInfoFields.GP_FILE_INFO_HEIGHT) != 0 ? FILE_HEIGHT.getInt(info) : 0,
+                    (previewFields & CameraFileInfoFields.GP_FILE_INFO_SIZE) != 0 ? PREVIEW_SIZE.getLong(info) : -1,
+                    (previewFields & CameraFileInfoFields.GP_FILE_INFO_WIDTH) != 0 ? PREVIEW_WIDTH.getInt(info) : 0,
+                    (previewFields & CameraFileInfoFields.GP_FILE_INFO_HEIGHT) != 0 ? PREVIEW_HEIGHT.getInt(info) : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Transfer a file from the camera into memory.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @param type CameraFileType to download, usually GP_FILE_TYPE_NORMAL.
+     * @return Contents of the file.
+     * @throws IOException If the file cannot be transferred.
+     */
+    byte[] download(String folder, String name, int type) throws IOException {
+        CameraFile cameraFile = fetch(folder, name, type);
+        try {
+            ByteBuffer data = data(cameraFile);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return bytes;
+        } finally {
+            backend.gp_file_free(cameraFile);
+        }
+    }
+
+    /**
+     * Transfer a file from the camera straight into a channel, for example
+     * a FileChannel or socket, without copying it onto the Java heap. The
+     * channel is not closed.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @param out Channel to write the file to.
+     * @return Number of bytes written.
+     * @throws IOException If the file cannot be transferred or written.
+     */
+    public long download(String folder, String name, WritableByteChannel out) throws IOException {
+        CameraFile cameraFile = fetch(folder, name, CameraFileType.GP_FILE_TYPE_NORMAL);
+        try {
+            ByteBuffer data = data(cameraFile);
+            long length = data.remaining();
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            return length;
+        } finally {
+            backend.gp_file_free(cameraFile);
+        }
+    }
+
+    /**
+     * Download a file and write it to disk through a sink, straight from
+     * libgphoto2's buffer.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @param sink Sink to write through.
+     * @param target File to write.
+     * @return Number of bytes written.
+     * @throws IOException If the file cannot be transferred or written.
+     */
+    public long download(String folder, String name, DownloadSink sink, File target) throws IOException {
+        CameraFile cameraFile = fetch(folder, name, CameraFileType.GP_FILE_TYPE_NORMAL);
+        try {
+            return sink.write(data(cameraFile), target);
+        } finally {
+            backend.gp_file_free(cameraFile);
+        }
+    }
+
+    private CameraFile newFile() throws IOException {
+        PointerByReference ref = new PointerByReference();
+        int rc = backend.gp_file_new(ref);
+        validateResult("gp_file_new", rc);
+        return new CameraFile(ref.getValue());
+    }
+
+    /**
+     * Transfer a file from the camera into a new CameraFile, which the
+     * caller must free.
+     */
+    private CameraFile fetch(String folder, String name, int type) throws IOException {
+        CameraFile cameraFile = newFile();
+        lock.lock();
+        try {
+            long start = metrics.start();
+            int rc = backend.gp_camera_file_get(camera, folder, name, type, cameraFile, context);
+            validateResult("gp_camera_file_get", rc);
+            metrics.stop(Operation.DOWNLOAD, start);
+        } catch (IOException ex) {
+            backend.gp_file_free(cameraFile);
+            throw ex;
+        } finally {
+            lock.unlock();
+        }
+        return cameraFile;
+    }
+
+    /**
+     * @return A view of the CameraFile's own buffer, valid until the file
+     * is freed.
+     */
+    private ByteBuffer data(CameraFile cameraFile) throws IOException {
+        PointerByReference data = new PointerByReference();
+        NativeLongByReference size = new NativeLongByReference();
+        int rc = backend.gp_file_get_data_and_size(cameraFile, data, size);
+        validateResult("gp_file_get_data_and_size", rc);
+        long length = size.getValue().longValue();
+        metrics.addBytes(length);
+        return length == 0 ? ByteBuffer.allocate(0) : data.getValue().getByteBuffer(0, length);
+    }
+
+    /**
+     * Delete a file from the camera.
+     *
+     * @param folder Folder on the camera.
+     * @param name Name of the file.
+     * @throws IOException If the file cannot be deleted.
+     */
+    void delete(String folder, String name) throws IOException {
+        lock.lock();
+        try {
+            long start = metrics.start();
+            int rc = backend.gp_camera_file_delete(camera, folder, name, context);
+            validateResult("gp_camera_file_delete", rc);
+            metrics.stop(Operation.DELETE, start);
+            tree.fileRemoved(folder, name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete every file in a folder with one call.
+     *
+     * @param folder Folder on the camera.
+     * @throws IOException If the files cannot be deleted.
+     */
+    void deleteAll(String folder) throws IOException {
+        lock.lock();
+        try {
+            long start = metrics.start();
+            int rc = gphoto2.gp_camera_folder_delete_all(camera, folder, context);
+            validateResult("gp_camera_folder_delete_all", rc);
+            metrics.stop(Operation.DELETE, start);
+            tree.folderEmptied(folder);
+        } finally {
+            lock.unlock();
         }
-        return fileList;
     }
 
 }
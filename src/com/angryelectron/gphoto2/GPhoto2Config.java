@@ -19,7 +19,9 @@
 
 package com.angryelectron.gphoto2;
 
+import com.angryelectron.gphoto2.CameraMetrics.Operation;
 import com.angryelectron.libgphoto2.Camera;
+import com.angryelectron.libgphoto2.Gphoto2Core;
 import com.angryelectron.libgphoto2.Gphoto2Library;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget;
 import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidgetType;
@@ -31,6 +33,9 @@ import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.ptr.PointerByReference;
 import java.io.IOException;
 import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>
@@ -50,10 +55,16 @@ import java.nio.IntBuffer;
  */
 public class GPhoto2Config {
           
-    private Gphoto2Library gphoto2;
+    private Gphoto2Core gphoto2;
     private GPContext context;
     private Camera camera;    
     private CameraWidget cameraWidget;
+    private final GPhoto2 owner;
+    private ReentrantLock lock;
+    private int generation;
+    private final Map<String, PreparedParameter> prepared = new HashMap<>();
+    private ConfigSnapshot snapshot;
+    private int snapshotGeneration;
     
     /**
      * Constructor.
@@ -63,6 +74,8 @@ public class GPhoto2Config {
         this.gphoto2 = g.gphoto2;
         this.context = g.context;
         this.camera = g.camera;        
+        this.owner = g;
+        this.lock = g.lock;
     }
     
     /**
@@ -72,19 +85,24 @@ public class GPhoto2Config {
      * @param rc The return code to validate.
      * @throws IOException 
      */
-    private void validateResult(String msg, int rc) throws IOException {        
+    void validateResult(String msg, int rc) throws IOException {        
         if (rc != Gphoto2Library.GP_OK) {
+            owner.metrics.error(rc);
             throw new IOException(msg + "failed with code " + rc);
         }        
     }
     
     /**
      * Retrieve the CameraWidget for the given parameter.
-     * @param param Name of the parameter
+     * @param param Name of the parameter, or its full path as in a 
+     * {@link ConfigSnapshot}, such as "/main/imgsettings/iso".
      * @return CameraWidget object.
      * @throws IOException If parameter is invalid or cannot be retrieved.
      */
-    private CameraWidget getParameterWidget(String param) throws IOException {        
+    CameraWidget getParameterWidget(String param) throws IOException {        
+        if (param.startsWith("/")) {
+            return getPathWidget(param);
+        }
         Pointer name = new Memory(param.length() + 1);
         name.setString(0, param);
         CameraWidget[] childs = new CameraWidget[1];
@@ -93,6 +111,44 @@ public class GPhoto2Config {
         return childs[0];   
     }
         
+    /**
+     * Retrieve the CameraWidget at a full path, one level at a time, so a 
+     * name used in more than one section finds the right one.
+     * @param path Path starting with the name of the top-level window.
+     * @return CameraWidget object.
+     * @throws IOException If there is no widget at the path.
+     */
+    private CameraWidget getPathWidget(String path) throws IOException {
+        String[] names = path.substring(1).split("/");
+        CameraWidget widget = cameraWidget;
+        if (!names[0].equals(widgetName(widget))) {
+            throw new IOException("No setting at " + path);
+        }
+        CameraWidget[] child = new CameraWidget[1];
+        for (int level = 1; level < names.length; level++) {
+            int count = gphoto2.gp_widget_count_children(widget);
+            validateResult("gp_widget_count_children", count < 0 ? count : 0);
+            CameraWidget next = null;
+            for (int i = 0; i < count && next == null; i++) {
+                validateResult("gp_widget_get_child", gphoto2.gp_widget_get_child(widget, i, child));
+                if (names[level].equals(widgetName(child[0]))) {
+                    next = child[0];
+                }
+            }
+            if (next == null) {
+                throw new IOException("No setting at " + path);
+            }
+            widget = next;
+        }
+        return widget;
+    }
+    
+    private String widgetName(CameraWidget widget) throws IOException {
+        PointerByReference name = new PointerByReference();
+        validateResult("gp_widget_get_name", gphoto2.gp_widget_get_name(widget, name));
+        return name.getValue().getString(0);
+    }
+        
     /**
      * Retrieve a parameter's value.  The value type depends on the parameter 
      * type.  This method retrieves the value using the correct type, then
@@ -101,7 +157,7 @@ public class GPhoto2Config {
      * @return A String representing the parameter's value.
      * @throws IOException If the value cannot be read.
      */
-    private String getParameterValue(CameraWidget paramWidget) throws IOException {        
+    String getParameterValue(CameraWidget paramWidget) throws IOException {        
         int rc;
                         
         IntBuffer type = IntBuffer.allocate(4);
@@ -138,57 +194,58 @@ public class GPhoto2Config {
         }        
     }
      
-    /**
-     * Set the value of a parameter.  This method will convert the value into the
-     * appropriate widget type.
-     * @param paramWidget A CameraWidget representing the parameter to be set.
-     * @param value The new value for the parameter.
-     * @throws IOException If the parameter cannot be set.
-     */
-    private void setParameterValue(CameraWidget paramWidget, String value) throws IOException {
-        Pointer pValue = null;
-        IntBuffer type = IntBuffer.allocate(4);
-        int rc = gphoto2.gp_widget_get_type(paramWidget, type);
-        validateResult("gp_widget_get_type", rc);
-        
-        switch (type.get()) {
-            case CameraWidgetType.GP_WIDGET_MENU:
-            case CameraWidgetType.GP_WIDGET_TEXT:
-            case CameraWidgetType.GP_WIDGET_RADIO:                
-                //char *
-                pValue = new Memory(value.length() + 1);
-                pValue.setString(0, value);
-                break;
-            case CameraWidgetType.GP_WIDGET_RANGE:
-                //floats are 32-bits or 4 bytes
-                float fValue = Float.parseFloat(value);
-                pValue = new Memory(4);
-                pValue.setFloat(0, fValue);
-                break;
-            case CameraWidgetType.GP_WIDGET_DATE:
-            case CameraWidgetType.GP_WIDGET_TOGGLE:             
-                //ints are 32-bits or 4 bytes
-                int iValue = Integer.parseInt(value);
-                pValue = new Memory(4);
-                pValue.setInt(0, iValue);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unsupported CameraWidgetType");
-        }
-        rc = gphoto2.gp_widget_set_value(paramWidget, pValue);
-        validateResult("gp_widget_set_value", rc);        
-    }
-    
     /**
      * Read the camera's current configuration.  This must be called before
-     * getting or setting any parameters.
+     * getting or setting any parameters.  The tree read by an earlier call 
+     * is freed, so the same GPhoto2Config can be read again and again.
      * @throws IOException If the configuration cannot be read.
      */
     public void readConfig() throws IOException {
         CameraWidget[] camWidg=new CameraWidget[1];
-        int rc = gphoto2.gp_camera_get_config(camera, camWidg, context);
-        validateResult("gp_camera_get_config", rc);
+        CameraMetrics metrics = owner.metrics;
+        lock.lock();
+        try {
+            long start = metrics.start();
+            int rc = gphoto2.gp_camera_get_config(camera, camWidg, context);
+            validateResult("gp_camera_get_config", rc);
+            metrics.stop(Operation.READ_CONFIG, start);
+        } finally {
+            lock.unlock();
+        }
+        if (cameraWidget != null) {
+            gphoto2.gp_widget_free(cameraWidget);
+        }
         cameraWidget = camWidg[0];                        
+        generation++;
+    }
+    
+    /**
+     * Free the configuration that was read.  Parameters can't be used again
+     * until the next {@link #readConfig()}.
+     */
+    void free() {
+        if (cameraWidget != null) {
+            gphoto2.gp_widget_free(cameraWidget);
+            cameraWidget = null;
+            generation++;
+        }
+    }
+    
+    /**
+     * A setting has been changed in the configuration that was read, so the
+     * cached snapshot no longer matches it.
+     */
+    void changed() {
+        snapshot = null;
+    }
+    
+    /**
+     * Number of times the configuration has been read.  Widgets resolved 
+     * before the last {@link #readConfig()} belong to the old tree.
+     * @return The current generation.
+     */
+    int getGeneration() {
+        return generation;
     }
     
     /**
@@ -198,8 +255,16 @@ public class GPhoto2Config {
      * @throws IOException If the settings cannot be written.
      */
     public void writeConfig() throws IOException {
-        int rc = gphoto2.gp_camera_set_config(camera, cameraWidget, context);
-        validateResult("gp_camera_set_config", rc);        
+        CameraMetrics metrics = owner.metrics;
+        lock.lock();
+        try {
+            long start = metrics.start();
+            int rc = gphoto2.gp_camera_set_config(camera, cameraWidget, context);
+            validateResult("gp_camera_set_config", rc);        
+            metrics.stop(Operation.WRITE_CONFIG, start);
+        } finally {
+            lock.unlock();
+        }
     }
         
     /**
@@ -208,25 +273,129 @@ public class GPhoto2Config {
      * parameter, run 'gphoto2 --get-config <parameter>'.  Note that "Choices" are
      * numbered, with the value appearing last (ie. when setting "evstep", 
      * use "1/3" for "Choice: 0 1/3", not "0").  Strings are case sensitive.
-     * @param param The parameter to set.  If getting parameters via --list-config,
-     * do not specify the entire path (ie. use 'iso', not '/main/imgsettings/iso').
+     * @param param The parameter to set, by name (ie. 'iso') or by the entire 
+     * path shown by --list-config (ie. '/main/imgsettings/iso').
      * @param value The value to set.
      * @throws IOException If the parameter cannot be set.
+     * @throws IllegalArgumentException If the parameter has a list of choices 
+     * and the value is not one of them.
      */
     public void setParameter(String param, String value) throws IOException {        
-        CameraWidget paramWidget = getParameterWidget(param);
-        setParameterValue(paramWidget, value);                        
+        prepare(param).set(value);
     }
     
     /**
      * Get the value of a parameter. A list of parameters can be viewed by
-     * running 'gphoto2 --list-config'. 
-     * @param param The parameter to retrieve.
+     * running 'gphoto2 --list-config'.  The widget is read directly, without
+     * looking up its choices or caching a handle; use 
+     * {@link #prepare(java.lang.String)} for a parameter read many times.
+     * @param param The parameter to retrieve, by name or by full path.
      * @return The value of the parameter, as a string.
      * @throws IOException If the parameter cannot be read.
+     * @throws IllegalStateException If {@link #readConfig()} has not been called.
      */
     public String getParameter(String param) throws IOException {
-        CameraWidget paramWidget = getParameterWidget(param);
-        return getParameterValue(paramWidget);        
+        if (cameraWidget == null) {
+            throw new IllegalStateException("readConfig() has not been called");
+        }
+        return getParameterValue(getParameterWidget(param));
+    }
+    
+    /**
+     * Prepare a parameter that will be set many times.  The parameter and its
+     * choices are looked up once, and again only after {@link #readConfig()}.
+     * Handles are cached, so preparing the same parameter twice returns the 
+     * same handle.
+     * @param param The parameter to prepare, as for 
+     * {@link #setParameter(java.lang.String, java.lang.String)}.
+     * @return A handle for the parameter.
+     * @throws IOException If the parameter is invalid or cannot be retrieved.
+     * @throws IllegalStateException If {@link #readConfig()} has not been called.
+     */
+    public PreparedParameter prepare(String param) throws IOException {
+        if (cameraWidget == null) {
+            throw new IllegalStateException("readConfig() has not been called");
+        }
+        PreparedParameter p = prepared.get(param);
+        if (p == null) {
+            p = new PreparedParameter(this, gphoto2, param);
+            prepared.put(param, p);
+        }
+        return p;
+    }
+    
+    /**
+     * Take a snapshot of every setting in the configuration that was read.  
+     * The widget tree is walked once per {@link #readConfig()}; later calls 
+     * return the same snapshot until a setting is changed.
+     * @return The snapshot.
+     * @throws IOException If a setting cannot be read.
+     * @throws IllegalStateException If {@link #readConfig()} has not been called.
+     */
+    public ConfigSnapshot snapshot() throws IOException {
+        if (cameraWidget == null) {
+            throw new IllegalStateException("readConfig() has not been called");
+        }
+        if (snapshot == null || snapshotGeneration != generation) {
+            ConfigSnapshot.Builder builder = new ConfigSnapshot.Builder(System.currentTimeMillis());
+            walk(cameraWidget, "", builder);
+            snapshot = builder.build();
+            snapshotGeneration = generation;
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Add a widget and its children to a snapshot.
+     * @param widget The widget.
+     * @param parent Path of the widget's parent.
+     * @param builder The snapshot being built.
+     * @throws IOException If the widget cannot be read.
+     */
+    @SuppressWarnings("deprecation")
+    private void walk(CameraWidget widget, String parent, ConfigSnapshot.Builder builder) throws IOException {
+        PointerByReference name = new PointerByReference();
+        validateResult("gp_widget_get_name", gphoto2.gp_widget_get_name(widget, name));
+        String path = parent + "/" + name.getValue().getString(0);
+        IntByReference type = new IntByReference();
+        validateResult("gp_widget_get_type", gphoto2.gp_widget_get_type(widget, type));
+        switch (type.getValue()) {
+            case CameraWidgetType.GP_WIDGET_WINDOW:
+            case CameraWidgetType.GP_WIDGET_SECTION:
+                int count = gphoto2.gp_widget_count_children(widget);
+                validateResult("gp_widget_count_children", count < 0 ? count : 0);
+                CameraWidget[] child = new CameraWidget[1];
+                for (int i = 0; i < count; i++) {
+                    validateResult("gp_widget_get_child", gphoto2.gp_widget_get_child(widget, i, child));
+                    walk(child[0], path, builder);
+                }
+                return;
+            case CameraWidgetType.GP_WIDGET_BUTTON:
+                return;
+            default:
+                break;
+        }
+        IntByReference readonly = new IntByReference();
+        validateResult("gp_widget_get_readonly", gphoto2.gp_widget_get_readonly(widget, readonly));
+        boolean ro = readonly.getValue() != 0;
+        switch (type.getValue()) {
+            case CameraWidgetType.GP_WIDGET_RANGE:
+                FloatByReference f = new FloatByReference();
+                validateResult("gp_widget_get_value", gphoto2.gp_widget_get_value(widget, f.getPointer()));
+                builder.add(path, type.getValue(), ro, f.getValue(), null);
+                break;
+            case CameraWidgetType.GP_WIDGET_TOGGLE:
+            case CameraWidgetType.GP_WIDGET_DATE:
+                IntByReference i = new IntByReference();
+                validateResult("gp_widget_get_value", gphoto2.gp_widget_get_value(widget, i.getPointer()));
+                builder.add(path, type.getValue(), ro, i.getValue(), null);
+                break;
+            default:
+                PointerByReference p = new PointerByReference();
+                validateResult("gp_widget_get_value", gphoto2.gp_widget_get_value(widget, p.getPointer()));
+                Pointer value = p.getValue();
+                builder.add(path, type.getValue(), ro, 0, value == null ? "" : value.getString(0));
+                break;
+        }
     }
 }
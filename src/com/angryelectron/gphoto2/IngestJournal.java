@@ -0,0 +1,769 @@
+/**
+ * IngestJournal Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Write-ahead log of which files have been listed, downloaded and deleted
+ * during an ingest, so an ingest interrupted by a crash can carry on where
+ * it stopped. See {@link JournaledIngest}, which uses it. Use one journal
+ * per camera.
+ * </p>
+ * <p>
+ * Each file moves through {@link State#LISTED}, {@link State#DOWNLOADING},
+ * {@link State#DURABLE} and {@link State#DELETED}. Changes are appended to
+ * an in-memory buffer and written to the journal file in groups: by a
+ * background thread every few milliseconds or records, or by
+ * {@link #sync(long)} when a caller needs a change on disk before going on,
+ * for example before deleting a file from the camera. Callers that sync at
+ * the same time share one write and one fsync.
+ * </p>
+ * <p>
+ * On disk, each group is one frame: its length, a CRC32, and the records.
+ * Files are numbered when listed, so later records are a type byte and a
+ * small number. A file is identified by its path, size and time, so a name
+ * the camera reuses after a file was deleted is a new file. When a journal is opened, frames are replayed up to the
+ * first one that is incomplete or corrupt, which is cut off.
+ * </p>
+ */
+public class IngestJournal {
+
+    /**
+     * Progress of one file.
+     */
+    public enum State {
+
+        /**
+         * On the camera and not yet downloaded.
+         */
+        LISTED,
+        /**
+         * Being downloaded. The local copy may be incomplete.
+         */
+        DOWNLOADING,
+        /**
+         * The local copy is complete and on disk.
+         */
+        DURABLE,
+        /**
+         * Deleted from the camera after being saved.
+         */
+        DELETED
+    }
+
+    /**
+     * A file in the journal. This is a copy, so it is safe to keep.
+     */
+    public static class Entry {
+
+        private final CameraFileEntry file;
+        private final State state;
+        private final String local;
+        private final long size;
+
+        Entry(CameraFileEntry file, State state, String local, long size) {
+            this.file = file;
+            this.state = state;
+            this.local = local;
+            this.size = size;
+        }
+
+        /**
+         * @return The file on the camera.
+         */
+        public CameraFileEntry getFile() {
+            return file;
+        }
+
+        /**
+         * @return How far the file got.
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return The local copy, or null if the download hasn't started.
+         */
+        public File getLocal() {
+            return local == null ? null : new File(local);
+        }
+
+        /**
+         * @return Size of the local copy in bytes, or -1 if the file isn't
+         * durable yet.
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /*
+     * Record types.  LISTED introduces a file and gives it a number; the
+     * others refer to that number.
+     */
+    private static final int LISTED = 1;
+    private static final int DOWNLOADING = 2;
+    private static final int DURABLE = 3;
+    private static final int DELETED = 4;
+    private static final int LISTING_COMPLETE = 5;
+    private static final int RUN_COMPLETE = 6;
+
+    /**
+     * Mutable state of one file, guarded by the journal.
+     */
+    private static class Record {
+
+        final int id;
+        final CameraFileEntry file;
+        State state = State.LISTED;
+        String local;
+        long size = -1;
+
+        Record(int id, CameraFileEntry file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        Entry copy() {
+            return new Entry(file, state, local, size);
+        }
+    }
+
+    private final File file;
+    private FileChannel channel;
+    private final List<Record> records = new ArrayList<>();
+    private final Map<CameraFileEntry, Record> byFile = new HashMap<>();
+    private boolean listingComplete = false;
+
+    /*
+     * Pending records, guarded by this.  appended counts every record
+     * added; committed, guarded by commitLock, counts those on disk.
+     */
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private DataOutputStream out = new DataOutputStream(buffer);
+    private long appended = 0;
+    private final Object commitLock = new Object();
+    private volatile long committed = 0;
+
+    private int commitEvery = 64;
+    private long commitInterval = TimeUnit.MILLISECONDS.toNanos(100);
+    private Thread committer;
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+    private final LatencyHistogram syncTime = new LatencyHistogram();
+    private long commits = 0;
+
+    private IngestJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open a journal, creating it if it doesn't exist, and replay it.
+     *
+     * @param file The journal file.
+     * @return The journal.
+     * @throws IOException If the journal can't be read or created.
+     */
+    public static IngestJournal open(File file) throws IOException {
+        IngestJournal journal = new IngestJournal(file);
+        journal.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long end = journal.replay();
+        if (end < journal.channel.size()) {
+            journal.channel.truncate(end);
+            journal.channel.force(false);
+        }
+        journal.channel.position(end);
+        journal.startCommitter();
+        return journal;
+    }
+
+    /**
+     * Write pending records every this many records or this often, whichever
+     * comes first. Default is 64 records or 100 ms.
+     *
+     * @param records Number of records.
+     * @param interval Longest time a record waits.
+     * @param unit Unit of the interval.
+     */
+    public synchronized void setGroupCommit(int records, long interval, TimeUnit unit) {
+        this.commitEvery = Math.max(1, records);
+        this.commitInterval = Math.max(1, unit.toNanos(interval));
+        notifyAll();
+    }
+
+    /**
+     * Read every frame, stopping at the first bad one.
+     *
+     * @return Position just after the last good frame.
+     */
+    private long replay() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (position + 8 <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || position + 8 + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining() && channel.read(payload, position + 8 + payload.position()) > 0) {
+                // keep reading
+            }
+            CRC32 check = new CRC32();
+            check.update(payload.array(), 0, length);
+            if ((int) check.getValue() != crc) {
+                break;
+            }
+            apply(payload.array());
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    /**
+     * Apply the records in one frame.
+     */
+    private void apply(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        while (true) {
+            int type = in.read();
+            if (type < 0) {
+                return;
+            }
+            if (type == LISTING_COMPLETE) {
+                listingComplete = true;
+                continue;
+            }
+            if (type == RUN_COMPLETE) {
+                listingComplete = false;
+                continue;
+            }
+            int id = readVarint(in);
+            if (type == LISTED) {
+                CameraFileEntry e = new CameraFileEntry(in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+                add(id, e);
+                continue;
+            }
+            if (id >= records.size()) {
+                throw new IOException("Journal " + file + " refers to unknown file " + id);
+            }
+            Record r = records.get(id);
+            switch (type) {
+                case DOWNLOADING:
+                    r.state = State.DOWNLOADING;
+                    r.local = in.readUTF();
+                    break;
+                case DURABLE:
+                    r.state = State.DURABLE;
+                    r.size = in.readLong();
+                    r.local = in.readUTF();
+                    break;
+                case DELETED:
+                    r.state = State.DELETED;
+                    break;
+                default:
+                    throw new IOException("Journal " + file + " has unknown record type " + type);
+            }
+        }
+    }
+
+    private Record add(int id, CameraFileEntry e) {
+        Record r = new Record(id, e);
+        records.add(r);
+        byFile.put(e, r);
+        return r;
+    }
+
+    private Record find(CameraFileEntry e) {
+        Record r = byFile.get(e);
+        if (r == null) {
+            throw new IllegalArgumentException(e.getPath() + " has not been listed.");
+        }
+        return r;
+    }
+
+    /**
+     * Record that a file is on the camera. Listing a file twice does
+     * nothing. The file's size and time should be known, since they tell
+     * it apart from an earlier file with the same name.
+     *
+     * @param e The file.
+     * @return Sequence number to pass to {@link #sync(long)}.
+     */
+    public synchronized long listed(CameraFileEntry e) {
+        if (byFile.containsKey(e)) {
+            return appended;
+        }
+        Record r = add(records.size(), new CameraFileEntry(e.getFolder(), e.getName(), e.getSize(), e.getMtime()));
+        try {
+            out.writeByte(LISTED);
+            writeVarint(out, r.id);
+            out.writeUTF(e.getFolder());
+            out.writeUTF(e.getName());
+            out.writeLong(e.getSize());
+            out.writeLong(e.getMtime());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return appended();
+    }
+
+    /**
+     * Record that every file on the camera has been listed, so an ingest
+     * restarted after a crash doesn't need to list the camera again.
+     *
+     * @return Sequence number to pass to {@link #sync(long)}.
+     */
+    public synchronized long listingComplete() {
+        listingComplete = true;
+        try {
+            out.writeByte(LISTING_COMPLETE);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return appended();
+    }
+
+    /**
+     * Record that an ingest has finished, so the next one lists the camera
+     * again to find new files.
+     *
+     * @return Sequence number to pass to {@link #sync(long)}.
+     */
+    public synchronized long runComplete() {
+        listingComplete = false;
+        try {
+            out.writeByte(RUN_COMPLETE);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return appended();
+    }
+
+    /**
+     * Record that a file is about to be downloaded.
+     *
+     * @param e A listed file.
+     * @param local Where it will be saved, so a restarted ingest saves it
+     * to the same place.
+     * @return Sequence number to pass to {@link #sync(long)}.
+     */
+    public synchronized long downloading(CameraFileEntry e, File local) {
+        Record r = find(e);
+        r.state = State.DOWNLOADING;
+        r.local = local.getAbsolutePath();
+        try {
+            out.writeByte(DOWNLOADING);
+            writeVarint(out, r.id);
+            out.writeUTF(r.local);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return appended();
+    }
+
+    /**
+     * Record that a file's local copy is complete and on disk.
+     *
+     * @param e A listed file.
+     * @param local The local copy.
+     * @param size Size of the local copy in bytes.
+     * @return Sequence number to pass to {@link #sync(long)}. Sync before
+     * deleting the file from the camera.
+     */
+    public synchronized long durable(CameraFileEntry e, File local, long size) {
+        Record r = find(e);
+        r.state = State.DURABLE;
+        r.size = size;
+        r.local = local.getAbsolutePath();
+        try {
+            out.writeByte(DURABLE);
+            writeVarint(out, r.id);
+            out.writeLong(size);
+            out.writeUTF(r.local);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return appended();
+    }
+
+    /**
+     * Record that a file has been deleted from the camera.
+     *
+     * @param e A listed file.
+     * @return Sequence number to pass to {@link #sync(long)}.
+     */
+    public synchronized long deleted(CameraFileEntry e) {
+        return state(find(e), State.DELETED, DELETED);
+    }
+
+    private long state(Record r, State state, int type) {
+        r.state = state;
+        try {
+            out.writeByte(type);
+            writeVarint(out, r.id);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return appended();
+    }
+
+    /**
+     * Count a new record, waking the committer if enough are waiting.
+     */
+    private long appended() {
+        appended++;
+        if (appended - committed >= commitEvery) {
+            notifyAll();
+        }
+        return appended;
+    }
+
+    /**
+     * Wait until a record is on disk, writing it if nobody else is. Callers
+     * that arrive while a write is in progress are covered by the next one.
+     * Once a write has failed, the journal is cut back to the last good
+     * frame and every later sync fails, since the records in memory can no
+     * longer be trusted to reach the disk.
+     *
+     * @param sequence Value returned when the record was added.
+     * @throws IOException If the journal can't be written, now or earlier.
+     */
+    public void sync(long sequence) throws IOException {
+        checkFailure();
+        if (committed >= sequence) {
+            return;
+        }
+        synchronized (commitLock) {
+            checkFailure();
+            if (committed >= sequence) {
+                return;
+            }
+            byte[] records;
+            long upTo;
+            synchronized (this) {
+                records = buffer.toByteArray();
+                upTo = appended;
+            }
+            if (records.length > 0) {
+                long start = System.nanoTime();
+                long good = channel.position();
+                try {
+                    writeFrame(channel, records);
+                    channel.force(false);
+                } catch (IOException ex) {
+                    failure = ex;
+                    try {
+                        channel.truncate(good);
+                        channel.position(good);
+                        channel.force(false);
+                    } catch (IOException truncate) {
+                        // replay stops at the torn frame anyway
+                    }
+                    throw ex;
+                }
+                syncTime.recordSince(start);
+                synchronized (this) {
+                    /*
+                     * Only drop what was written; records added during the
+                     * write stay for the next frame.
+                     */
+                    byte[] all = buffer.toByteArray();
+                    buffer = new ByteArrayOutputStream();
+                    buffer.write(all, records.length, all.length - records.length);
+                    out = new DataOutputStream(buffer);
+                    commits++;
+                }
+            }
+            committed = upTo;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException ex = failure;
+        if (ex != null) {
+            throw new IOException("Journal " + file + " failed to write", ex);
+        }
+    }
+
+    private static void writeFrame(FileChannel channel, byte[] records) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(records, 0, records.length);
+        ByteBuffer frame = ByteBuffer.allocate(8 + records.length);
+        frame.putInt(records.length).putInt((int) crc.getValue()).put(records).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Write every pending record.
+     *
+     * @throws IOException If the journal can't be written.
+     */
+    public void sync() throws IOException {
+        long upTo;
+        synchronized (this) {
+            upTo = appended;
+        }
+        sync(upTo);
+    }
+
+    private void startCommitter() {
+        committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commit();
+            }
+        }, "journal-" + file.getName());
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Background thread: write pending records every commitInterval, or
+     * sooner once commitEvery are waiting.
+     */
+    private void commit() {
+        while (!closed) {
+            synchronized (this) {
+                long deadline = System.nanoTime() + commitInterval;
+                while (!closed && appended - committed < commitEvery) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+            try {
+                sync();
+            } catch (IOException ex) {
+                // failure is kept and thrown by every later sync
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return True if every file on the camera has been listed, and the
+     * ingest that listed them hasn't finished.
+     */
+    public synchronized boolean isListingComplete() {
+        return listingComplete;
+    }
+
+    /**
+     * @param e A file on the camera.
+     * @return The file's progress, or null if it hasn't been listed.
+     */
+    public synchronized Entry get(CameraFileEntry e) {
+        Record r = byFile.get(e);
+        return r == null ? null : r.copy();
+    }
+
+    /**
+     * @return Every file that hasn't been deleted yet, in the order listed.
+     */
+    public synchronized List<Entry> getPending() {
+        List<Entry> pending = new ArrayList<>();
+        for (Record r : records) {
+            if (r.state != State.DELETED) {
+                pending.add(r.copy());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return Every file, in the order listed.
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>();
+        for (Record r : records) {
+            entries.add(r.copy());
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return Time each group write and fsync took.
+     */
+    public LatencyHistogram getSyncTime() {
+        return syncTime;
+    }
+
+    /**
+     * @return Number of group writes.
+     */
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Rewrite the journal with only the files that haven't been deleted.
+     * The new journal is written beside the old one and renamed over it.
+     *
+     * @throws IOException If the journal can't be rewritten.
+     */
+    public void compact() throws IOException {
+        synchronized (commitLock) {
+            checkFailure();
+            synchronized (this) {
+                /*
+                 * Records in memory already include everything still in the
+                 * buffer, so the buffer is replaced by the rewrite rather
+                 * than written with ids that are about to change.
+                 */
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(bytes);
+                List<Record> live = new ArrayList<>();
+                Map<CameraFileEntry, Record> liveFiles = new HashMap<>();
+                for (Record old : records) {
+                    if (old.state == State.DELETED) {
+                        continue;
+                    }
+                    Record r = new Record(live.size(), old.file);
+                    r.state = old.state;
+                    r.size = old.size;
+                    r.local = old.local;
+                    live.add(r);
+                    liveFiles.put(r.file, r);
+                    data.writeByte(LISTED);
+                    writeVarint(data, r.id);
+                    data.writeUTF(r.file.getFolder());
+                    data.writeUTF(r.file.getName());
+                    data.writeLong(r.file.getSize());
+                    data.writeLong(r.file.getMtime());
+                    if (r.state == State.DOWNLOADING) {
+                        data.writeByte(DOWNLOADING);
+                        writeVarint(data, r.id);
+                        data.writeUTF(r.local);
+                    }
+                    if (r.state == State.DURABLE) {
+                        data.writeByte(DURABLE);
+                        writeVarint(data, r.id);
+                        data.writeLong(r.size);
+                        data.writeUTF(r.local);
+                    }
+                }
+                if (listingComplete) {
+                    data.writeByte(LISTING_COMPLETE);
+                }
+                byte[] payload = bytes.toByteArray();
+                File temp = new File(file.getPath() + ".tmp");
+                FileChannel next = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    if (payload.length > 0) {
+                        writeFrame(next, payload);
+                    }
+                    next.force(true);
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    next.close();
+                    temp.delete();
+                    throw ex;
+                }
+                FileSync.forceDirectoryOf(file);
+                channel.close();
+                channel = next;
+                records.clear();
+                records.addAll(live);
+                byFile.clear();
+                byFile.putAll(liveFiles);
+                buffer = new ByteArrayOutputStream();
+                out = new DataOutputStream(buffer);
+                committed = appended;
+            }
+        }
+    }
+
+    /**
+     * Write pending records and close the journal.
+     *
+     * @throws IOException If the journal can't be written.
+     */
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed journal record");
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * JmxMetricsExporter Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.gphoto2.CameraMetrics.Operation;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Export camera metrics as JMX MBeans, one per camera, named
+ * <code>com.angryelectron.gphoto2:type=Camera,name=&lt;name&gt;</code>. View
+ * them with jconsole or any JMX client.
+ * <pre>
+ * MetricsRegistry.addExporter(new JmxMetricsExporter());
+ * MetricsRegistry.setEnabled(true);
+ * </pre>
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+
+    /**
+     * Attributes published for each camera. Latencies are in milliseconds.
+     */
+    public interface CameraMBean {
+
+        double getCaptureMean();
+
+        double getCaptureP99();
+
+        double getDownloadMean();
+
+        double getDownloadP99();
+
+        double getDeleteP99();
+
+        double getReadConfigP99();
+
+        double getWriteConfigP99();
+
+        double getWaitForEventP99();
+
+        double getStorageInfoP99();
+
+        long getCaptureCount();
+
+        long getBytesTransferred();
+
+        long getErrorCount();
+
+        String getErrors();
+
+        int getEventQueueDepth();
+
+        int getMaxEventQueueDepth();
+
+        void reset();
+    }
+
+    private static class CameraView implements CameraMBean {
+
+        private final CameraMetrics m;
+
+        CameraView(CameraMetrics m) {
+            this.m = m;
+        }
+
+        @Override
+        public double getCaptureMean() {
+            return m.getLatency(Operation.CAPTURE).getMean();
+        }
+
+        @Override
+        public double getCaptureP99() {
+            return m.getLatency(Operation.CAPTURE).getPercentile(99);
+        }
+
+        @Override
+        public double getDownloadMean() {
+            return m.getLatency(Operation.DOWNLOAD).getMean();
+        }
+
+        @Override
+        public double getDownloadP99() {
+            return m.getLatency(Operation.DOWNLOAD).getPercentile(99);
+        }
+
+        @Override
+        public double getDeleteP99() {
+            return m.getLatency(Operation.DELETE).getPercentile(99);
+        }
+
+        @Override
+        public double getReadConfigP99() {
+            return m.getLatency(Operation.READ_CONFIG).getPercentile(99);
+        }
+
+        @Override
+        public double getWriteConfigP99() {
+            return m.getLatency(Operation.WRITE_CONFIG).getPercentile(99);
+        }
+
+        @Override
+        public double getWaitForEventP99() {
+            return m.getLatency(Operation.WAIT_FOR_EVENT).getPercentile(99);
+        }
+
+        @Override
+        public double getStorageInfoP99() {
+            return m.getLatency(Operation.STORAGE_INFO).getPercentile(99);
+        }
+
+        @Override
+        public long getCaptureCount() {
+            return m.getLatency(Operation.CAPTURE).getCount();
+        }
+
+        @Override
+        public long getBytesTransferred() {
+            return m.getBytesTransferred();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return m.getErrorCount();
+        }
+
+        @Override
+        public String getErrors() {
+            return m.getErrorCounts().toString();
+        }
+
+        @Override
+        public int getEventQueueDepth() {
+            return m.getEventQueueDepth();
+        }
+
+        @Override
+        public int getMaxEventQueueDepth() {
+            return m.getMaxEventQueueDepth();
+        }
+
+        @Override
+        public void reset() {
+            m.reset();
+        }
+    }
+
+    private final MBeanServer server;
+
+    /**
+     * Export to the platform MBean server.
+     */
+    public JmxMetricsExporter() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Export to a specific MBean server.
+     *
+     * @param server MBean server to register with.
+     */
+    public JmxMetricsExporter(MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void cameraAdded(CameraMetrics metrics) {
+        try {
+            ObjectName name = objectName(metrics);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(new CameraView(metrics), CameraMBean.class), name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Can't register MBean for " + metrics.getName(), ex);
+        }
+    }
+
+    @Override
+    public void cameraRemoved(CameraMetrics metrics) {
+        try {
+            ObjectName name = objectName(metrics);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Can't unregister MBean for " + metrics.getName(), ex);
+        }
+    }
+
+    private static ObjectName objectName(CameraMetrics metrics) throws JMException {
+        return new ObjectName("com.angryelectron.gphoto2:type=Camera,name="
+                + ObjectName.quote(metrics.getName()));
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * JournaledIngest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Download every file from a camera exactly once, surviving crashes and
+ * power loss. Progress is kept in an {@link IngestJournal}; running the
+ * ingest again with the same journal skips files that are already saved,
+ * downloads files that were interrupted, and finishes deleting files that
+ * were saved but not yet deleted. A run interrupted after listing the
+ * camera carries on from its listing; a run after one that finished lists
+ * the camera again to pick up new files.
+ * </p>
+ * <pre>
+ * IngestJournal journal = IngestJournal.open(new File("/mnt/ingest/cam1.journal"));
+ * JournaledIngest ingest = new JournaledIngest(camera, journal, new File("/mnt/ingest/cam1"));
+ * ingest.setDelete(true);
+ * JournaledIngest.Report report = ingest.run();
+ * journal.compact();
+ * journal.close();
+ * </pre>
+ * <p>
+ * Files are saved under <code>directory/&lt;camera folder&gt;/</code>. Each
+ * is written to a <code>.part</code> file, forced to disk and renamed, so a
+ * saved file is always complete. Files are handled in groups: the
+ * directories of a group are synced once, the group is marked durable with
+ * one journal sync, and only then are its files deleted from the camera.
+ * </p>
+ */
+public class JournaledIngest {
+
+    /**
+     * Progress of an ingest. While running, this is a live view.
+     */
+    public static class Report {
+
+        private final long started = System.nanoTime();
+        private volatile long finished = 0;
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong recovered = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private final List<IOException> errors = Collections.synchronizedList(new ArrayList<IOException>());
+
+        /**
+         * @return Number of files downloaded by this run.
+         */
+        public long getFiles() {
+            return files.get();
+        }
+
+        /**
+         * @return Number of bytes downloaded by this run.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * @return Number of files already saved by an earlier run, and so
+         * not downloaded again.
+         */
+        public long getRecovered() {
+            return recovered.get();
+        }
+
+        /**
+         * @return Number of files deleted from the camera by this run.
+         */
+        public long getDeleted() {
+            return deleted.get();
+        }
+
+        /**
+         * @return Time taken so far, or in total once finished, in
+         * nanoseconds.
+         */
+        public long getElapsed() {
+            return (finished == 0 ? System.nanoTime() : finished) - started;
+        }
+
+        /**
+         * @return Files that could not be downloaded, saved or deleted.
+         * They stay in the journal and are retried by the next run.
+         */
+        public List<IOException> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<>(errors);
+            }
+        }
+    }
+
+    private final GPhoto2 camera;
+    private final IngestJournal journal;
+    private final File directory;
+    private int groupSize = 16;
+    private boolean delete = false;
+    private volatile Report report;
+
+    /**
+     * Constructor.
+     *
+     * @param camera An open camera.
+     * @param journal The camera's journal.
+     * @param directory Directory to save into.
+     */
+    public JournaledIngest(GPhoto2 camera, IngestJournal journal, File directory) {
+        this.camera = camera;
+        this.journal = journal;
+        this.directory = directory;
+    }
+
+    /**
+     * @param files Number of files made durable with each journal sync.
+     * Larger groups mean fewer fsyncs, but more files downloaded again after
+     * a crash. Default is 16.
+     */
+    public void setGroupSize(int files) {
+        if (files < 1) {
+            throw new IllegalArgumentException("Group size must be at least 1.");
+        }
+        this.groupSize = files;
+    }
+
+    /**
+     * @param delete True if each file should be removed from the camera once
+     * it is durable. Default is false.
+     */
+    public void setDelete(boolean delete) {
+        this.delete = delete;
+    }
+
+    /**
+     * @return Progress of the current or last run, or null if never run.
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    /**
+     * Download every file not yet saved, and delete saved files from the
+     * camera if requested. Files that fail are recorded in the report and
+     * left for the next run.
+     *
+     * @return Summary of the ingest.
+     * @throws IOException If the camera can't be listed or the journal can't
+     * be written.
+     */
+    public Report run() throws IOException {
+        Report r = new Report();
+        report = r;
+        try {
+            if (!journal.isListingComplete()) {
+                listAll(r);
+                journal.sync(journal.listingComplete());
+            }
+            List<IngestJournal.Entry> group = new ArrayList<>();
+            for (IngestJournal.Entry e : journal.getPending()) {
+                if (e.getState() == IngestJournal.State.DURABLE && intact(e)) {
+                    r.recovered.incrementAndGet();
+                    if (delete) {
+                        delete(e.getFile(), r);
+                    }
+                    continue;
+                }
+                group.add(e);
+                if (group.size() == groupSize) {
+                    ingest(group, r);
+                    group.clear();
+                }
+            }
+            if (!group.isEmpty()) {
+                ingest(group, r);
+            }
+            journal.sync(journal.runComplete());
+        } finally {
+            r.finished = System.nanoTime();
+        }
+        return r;
+    }
+
+    /**
+     * Record every file on the camera as listed, with its size and time so
+     * that a reused name isn't mistaken for a file already ingested. Files
+     * whose info can't be read are left for the next run.
+     */
+    private void listAll(Report r) throws IOException {
+        try (FileInfoScan scan = new FileInfoScan(camera, "/")) {
+            CameraFileMetadata m;
+            while ((m = scan.take()) != null) {
+                journal.listed(m);
+            }
+            r.errors.addAll(scan.getErrors());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while listing " + camera.getName());
+        }
+    }
+
+    /**
+     * True if a file marked durable is still on disk at the recorded size.
+     */
+    private static boolean intact(IngestJournal.Entry e) {
+        File local = e.getLocal();
+        return local != null && local.isFile() && local.length() == e.getSize();
+    }
+
+    /**
+     * Download a group of files, make them durable with one journal sync,
+     * then delete them from the camera.
+     */
+    private void ingest(List<IngestJournal.Entry> group, Report r) throws IOException {
+        List<CameraFileEntry> saved = new ArrayList<>();
+        List<Path> targets = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        Set<File> directories = new LinkedHashSet<>();
+        for (IngestJournal.Entry e : group) {
+            CameraFileEntry file = e.getFile();
+            Path target = target(e);
+            journal.downloading(file, target.toFile());
+            try {
+                long size = save(file, target);
+                saved.add(file);
+                targets.add(target);
+                sizes.add(size);
+                directories.add(target.getParent().toFile());
+                r.files.incrementAndGet();
+                r.bytes.addAndGet(size);
+            } catch (IOException ex) {
+                r.errors.add(new IOException("Can't save " + file + " from " + camera.getName(), ex));
+            }
+        }
+        if (saved.isEmpty()) {
+            return;
+        }
+        for (File dir : directories) {
+            FileSync.forceDirectory(dir.toPath());
+        }
+        long sequence = 0;
+        for (int i = 0; i < saved.size(); i++) {
+            sequence = journal.durable(saved.get(i), targets.get(i).toFile(), sizes.get(i));
+        }
+        journal.sync(sequence);
+        if (delete) {
+            for (CameraFileEntry file : saved) {
+                delete(file, r);
+            }
+        }
+    }
+
+    /**
+     * Where to save a file: where an earlier run started saving it, or else
+     * under its camera folder. A name the camera has used before for a file
+     * that is already saved gets a numbered suffix instead of replacing it.
+     */
+    private Path target(IngestJournal.Entry e) {
+        if (e.getLocal() != null) {
+            return e.getLocal().toPath();
+        }
+        Path target = directory.toPath().resolve(e.getFile().getPath().substring(1));
+        String name = target.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot);
+        for (int i = 1; Files.exists(target); i++) {
+            target = target.resolveSibling(base + "-" + i + extension);
+        }
+        return target;
+    }
+
+    /**
+     * Download one file to a .part file, force it to disk and rename it
+     * into place. Whatever an interrupted run left behind is overwritten.
+     */
+    private long save(CameraFileEntry file, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        long size;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            size = camera.download(file.getFolder(), file.getName(), channel);
+            channel.force(false);
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * Delete a durable file from the camera. A file that is already gone,
+     * because a crash came between deleting it and recording that, counts as
+     * deleted.
+     */
+    private void delete(CameraFileEntry file, Report r) {
+        try {
+            camera.delete(file.getFolder(), file.getName());
+        } catch (IOException ex) {
+            try {
+                if (camera.list(file.getFolder(), false).contains(file.getName())) {
+                    r.errors.add(new IOException("Can't delete " + file + " from " + camera.getName(), ex));
+                    return;
+                }
+            } catch (IOException gone) {
+                r.errors.add(new IOException("Can't delete " + file + " from " + camera.getName(), ex));
+                return;
+            }
+        }
+        journal.deleted(file);
+        r.deleted.incrementAndGet();
+    }
+}
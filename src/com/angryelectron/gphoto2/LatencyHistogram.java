@@ -0,0 +1,204 @@
+/**
+ * LatencyHistogram Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Fixed-size, thread-safe latency histogram. Values are recorded with
+ * microsecond resolution into log-linear buckets (16 buckets per power of
+ * two), so any reported percentile is within about 6% of the real value no
+ * matter how large the latency is.
+ * </p>
+ * <p>
+ * Recording never allocates, which makes it safe to use on the capture path.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /*
+     * 2^40 microseconds is about 12 days, which is plenty for a camera.
+     * Anything larger ends up in the last bucket.
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = SUB_COUNT + (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a single latency.
+     *
+     * @param nanos Elapsed time, in nanoseconds. Negative values are recorded
+     * as zero.
+     */
+    public void record(long nanos) {
+        long micros = nanos > 0 ? TimeUnit.NANOSECONDS.toMicros(nanos) : 0;
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        long m;
+        while (micros < (m = min.get()) && !min.compareAndSet(m, micros)) {
+        }
+        while (micros > (m = max.get()) && !max.compareAndSet(m, micros)) {
+        }
+    }
+
+    /**
+     * Record the time elapsed since a {@link System#nanoTime()} timestamp.
+     *
+     * @param startNanos Value of System.nanoTime() when the operation started.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return Number of values recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Smallest recorded value, in milliseconds, or 0 if empty.
+     */
+    public double getMin() {
+        return getCount() == 0 ? 0 : min.get() / 1000.0;
+    }
+
+    /**
+     * @return Largest recorded value, in milliseconds.
+     */
+    public double getMax() {
+        return max.get() / 1000.0;
+    }
+
+    /**
+     * @return Mean of all recorded values, in milliseconds, or 0 if empty.
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : total.get() / 1000.0 / n;
+    }
+
+    /**
+     * Get the value below which the given percentage of recorded values
+     * fall. The upper edge of the matching bucket is returned, so the result
+     * errs on the side of being pessimistic.
+     *
+     * @param percentile Percentile to read, from 0 to 100.
+     * @return Latency in milliseconds, or 0 if nothing has been recorded.
+     */
+    public double getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                if (i == BUCKETS - 1) {
+                    return getMax();
+                }
+                return Math.min(upperBoundOf(i), max.get()) / 1000.0;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Add every value recorded in another histogram to this one.
+     *
+     * @param other Histogram to merge.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long v = other.buckets.get(i);
+            if (v != 0) {
+                buckets.addAndGet(i, v);
+            }
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        long m;
+        long otherMin = other.min.get();
+        while (otherMin < (m = min.get()) && !min.compareAndSet(m, otherMin)) {
+        }
+        long otherMax = other.max.get();
+        while (otherMax > (m = max.get()) && !max.compareAndSet(m, otherMax)) {
+        }
+    }
+
+    /**
+     * Discard all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%.3fms mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+                getCount(), getMin(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        int mantissa = (int) (micros >>> shift) - SUB_COUNT;
+        return SUB_COUNT + shift * SUB_COUNT + mantissa;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+        int mantissa = (bucket - SUB_COUNT) % SUB_COUNT;
+        long lower = (long) (SUB_COUNT + mantissa) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * MetricsExporter Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+/**
+ * Publishes camera metrics to a monitoring system. Exporters are notified as
+ * cameras come and go, and pull values from {@link CameraMetrics} whenever
+ * they need them, so recording is never slowed down by exporting. See
+ * {@link JmxMetricsExporter} for an example.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Called when a camera is added to the {@link MetricsRegistry}.
+     *
+     * @param metrics The new camera's metrics.
+     */
+    void cameraAdded(CameraMetrics metrics);
+
+    /**
+     * Called when a camera is removed from the {@link MetricsRegistry}.
+     *
+     * @param metrics The removed camera's metrics.
+     */
+    void cameraRemoved(CameraMetrics metrics);
+}
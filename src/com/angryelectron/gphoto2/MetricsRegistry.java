@@ -0,0 +1,160 @@
+/**
+ * MetricsRegistry Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.gphoto2.CameraMetrics.Operation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>
+ * Global registry of per-camera metrics. Metrics are disabled by default;
+ * call {@link #setEnabled(boolean)} to start recording.
+ * </p>
+ * <p>
+ * Cameras are identified by {@link GPhoto2#getName()}, so give each physical
+ * camera in a rig its own name to tell them apart. Exporters added with
+ * {@link #addExporter(MetricsExporter)} are told about every camera, and can
+ * read its metrics whenever they like.
+ * </p>
+ */
+public final class MetricsRegistry {
+
+    private static volatile boolean enabled = false;
+    private static final ConcurrentMap<String, CameraMetrics> cameras = new ConcurrentHashMap<>();
+    private static final List<MetricsExporter> exporters = new CopyOnWriteArrayList<>();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Start or stop recording metrics. Values recorded so far are kept.
+     *
+     * @param enable True to record metrics.
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * @return True if metrics are being recorded.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the metrics for a camera, creating them if needed.
+     *
+     * @param name Name of the camera.
+     * @return Metrics for the camera.
+     */
+    public static CameraMetrics forCamera(String name) {
+        CameraMetrics metrics = cameras.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        CameraMetrics created = new CameraMetrics(name);
+        metrics = cameras.putIfAbsent(name, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        for (MetricsExporter exporter : exporters) {
+            exporter.cameraAdded(created);
+        }
+        return created;
+    }
+
+    /**
+     * Forget a camera's metrics, for example after it leaves the rig.
+     *
+     * @param name Name of the camera.
+     */
+    public static void remove(String name) {
+        CameraMetrics metrics = cameras.remove(name);
+        if (metrics != null) {
+            for (MetricsExporter exporter : exporters) {
+                exporter.cameraRemoved(metrics);
+            }
+        }
+    }
+
+    /**
+     * @return Metrics for every known camera.
+     */
+    public static List<CameraMetrics> getCameras() {
+        return new ArrayList<>(cameras.values());
+    }
+
+    /**
+     * Rank cameras by latency, slowest first. Useful for finding the camera
+     * that is holding up the rest of a rig.
+     *
+     * @param op Operation to compare.
+     * @param percentile Percentile to compare, from 0 to 100.
+     * @return Metrics for every camera that has recorded the operation.
+     */
+    public static List<CameraMetrics> getSlowest(final Operation op, final double percentile) {
+        List<CameraMetrics> list = new ArrayList<>();
+        for (CameraMetrics m : cameras.values()) {
+            if (m.getLatency(op).getCount() > 0) {
+                list.add(m);
+            }
+        }
+        Collections.sort(list, new Comparator<CameraMetrics>() {
+            @Override
+            public int compare(CameraMetrics a, CameraMetrics b) {
+                return Double.compare(b.getLatency(op).getPercentile(percentile),
+                        a.getLatency(op).getPercentile(percentile));
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Add an exporter. It is told about all cameras already known.
+     *
+     * @param exporter Exporter to add.
+     */
+    public static void addExporter(MetricsExporter exporter) {
+        exporters.add(exporter);
+        for (CameraMetrics metrics : cameras.values()) {
+            exporter.cameraAdded(metrics);
+        }
+    }
+
+    /**
+     * Remove an exporter. It is told that every camera has been removed.
+     *
+     * @param exporter Exporter to remove.
+     */
+    public static void removeExporter(MetricsExporter exporter) {
+        if (exporters.remove(exporter)) {
+            for (CameraMetrics metrics : cameras.values()) {
+                exporter.cameraRemoved(metrics);
+            }
+        }
+    }
+}
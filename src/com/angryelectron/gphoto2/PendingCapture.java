@@ -0,0 +1,188 @@
+/**
+ * PendingCapture Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>
+ * An image that has been triggered by {@link GPhoto2#captureAsync(boolean)}
+ * but may not have been downloaded yet. It is completed in the background
+ * when the camera reports the new file.
+ * </p>
+ * <p>
+ * Cameras set to RAW+JPEG report two files for one trigger. Files that share
+ * a base name with the first one are added to the same PendingCapture, so
+ * {@link #getFiles()} may still grow for a short time after
+ * {@link #isDone()} becomes true.
+ * </p>
+ */
+public class PendingCapture {
+
+    private final long sequence;
+    private final long triggered;
+    private final boolean delete;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+    private volatile String folder;
+    private volatile String name;
+    private volatile long completed;
+    private volatile IOException error;
+
+    PendingCapture(long sequence, boolean delete) {
+        this.sequence = sequence;
+        this.delete = delete;
+        this.triggered = System.nanoTime();
+    }
+
+    /**
+     * @return Trigger number, starting at 1 for each camera.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return True if the image should be deleted from the camera once it
+     * has been saved.
+     */
+    boolean isDelete() {
+        return delete;
+    }
+
+    /**
+     * @return Value of System.nanoTime() when the shutter was triggered.
+     */
+    public long getTriggerTime() {
+        return triggered;
+    }
+
+    /**
+     * @return Nanoseconds from trigger until the first file was saved, or -1
+     * if not done yet.
+     */
+    public long getLatency() {
+        return completed == 0 ? -1 : completed - triggered;
+    }
+
+    /**
+     * @return True once the image has been saved, or the capture has failed.
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * @return Folder of the image on the camera, or null if not done yet.
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return Name of the image on the camera, or null if not done yet.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Every file saved for this trigger so far.
+     */
+    public List<File> getFiles() {
+        synchronized (files) {
+            return new ArrayList<>(files);
+        }
+    }
+
+    /**
+     * Wait for the image to be saved.
+     *
+     * @return The first file saved for this trigger.
+     * @throws IOException If the image could not be collected.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public File get() throws IOException, InterruptedException {
+        done.await();
+        return result();
+    }
+
+    /**
+     * Wait for the image to be saved, for at most the given time.
+     *
+     * @param timeout Time to wait.
+     * @param unit Unit of timeout.
+     * @return The first file saved for this trigger.
+     * @throws IOException If the image could not be collected.
+     * @throws InterruptedException If interrupted while waiting.
+     * @throws TimeoutException If the image was not saved in time.
+     */
+    public File get(long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Capture " + sequence + " not collected.");
+        }
+        return result();
+    }
+
+    private File result() throws IOException {
+        if (error != null) {
+            throw new IOException("Capture " + sequence + " failed.", error);
+        }
+        return files.get(0);
+    }
+
+    /**
+     * Base name (without extension) of the image, used to match the second
+     * file of a RAW+JPEG pair.
+     */
+    String getBaseName() {
+        String n = name;
+        if (n == null) {
+            return null;
+        }
+        int dot = n.lastIndexOf('.');
+        return dot < 0 ? n : n.substring(0, dot);
+    }
+
+    void complete(String folder, String name, File file) {
+        this.folder = folder;
+        this.name = name;
+        this.completed = System.nanoTime();
+        files.add(file);
+        done.countDown();
+    }
+
+    void addFile(File file) {
+        files.add(file);
+    }
+
+    void fail(IOException ex) {
+        this.error = ex;
+        this.completed = System.nanoTime();
+        done.countDown();
+    }
+}
@@ -0,0 +1,448 @@
+/**
+ * PreparedParameter Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Core;
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget;
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidgetType;
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>
+ * A camera parameter that has been looked up once, for settings that change
+ * on every shot such as shutter speed, aperture or ISO. Get one from
+ * {@link GPhoto2Config#prepare(java.lang.String)}.
+ * </p>
+ * <p>
+ * The handle keeps the parameter's widget, type and choices, and a native
+ * buffer for its value, so setting it is a single gp_widget_set_value call.
+ * If the configuration is read again with {@link GPhoto2Config#readConfig()},
+ * the handle looks the parameter up again the next time it is used.
+ * </p>
+ * <p>
+ * Menu and radio parameters only accept one of their choices, which is
+ * checked before anything is sent to the camera. They can also be set by
+ * position in the choice list, by the nearest numeric value, or stepped up
+ * and down. Choices like "1/250", "f/5.6" and "400" are read as numbers;
+ * others, such as "Auto" or "Bulb", are skipped when stepping.
+ * </p>
+ * <p>
+ * Like {@link GPhoto2Config}, a handle should only be used by one thread at
+ * a time.
+ * </p>
+ */
+public class PreparedParameter {
+
+    /**
+     * Smallest buffer allocated for text values.
+     */
+    private static final int MIN_TEXT = 32;
+
+    private final GPhoto2Config config;
+    private final Gphoto2Core gphoto2;
+    private final String name;
+    private CameraWidget widget;
+    private int type;
+    private List<String> choices;
+    private Memory choiceBuffer;
+    private long[] offsets;
+    private double[] values;
+    private int[] ladder;
+    private Memory buffer;
+    private int generation;
+
+    PreparedParameter(GPhoto2Config config, Gphoto2Core gphoto2, String name) throws IOException {
+        this.config = config;
+        this.gphoto2 = gphoto2;
+        this.name = name;
+        resolve();
+    }
+
+    /**
+     * Look up the widget, type and choices in the current configuration
+     * tree.
+     */
+    @SuppressWarnings("deprecation")
+    private void resolve() throws IOException {
+        CameraWidget w = config.getParameterWidget(name);
+        IntByReference t = new IntByReference();
+        config.validateResult("gp_widget_get_type", gphoto2.gp_widget_get_type(w, t));
+        List<String> c = new ArrayList<>();
+        int size = 4;
+        int total = 0;
+        switch (t.getValue()) {
+            case CameraWidgetType.GP_WIDGET_MENU:
+            case CameraWidgetType.GP_WIDGET_RADIO:
+                int count = gphoto2.gp_widget_count_choices(w);
+                config.validateResult("gp_widget_count_choices", count < 0 ? count : 0);
+                PointerByReference choice = new PointerByReference();
+                for (int i = 0; i < count; i++) {
+                    config.validateResult("gp_widget_get_choice", gphoto2.gp_widget_get_choice(w, i, choice));
+                    String s = choice.getValue().getString(0);
+                    c.add(s);
+                    total += s.getBytes().length + 1;
+                }
+                break;
+            case CameraWidgetType.GP_WIDGET_TEXT:
+                size = MIN_TEXT;
+                break;
+            case CameraWidgetType.GP_WIDGET_RANGE:
+            case CameraWidgetType.GP_WIDGET_TOGGLE:
+            case CameraWidgetType.GP_WIDGET_DATE:
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported CameraWidgetType");
+        }
+        widget = w;
+        type = t.getValue();
+        choices = Collections.unmodifiableList(c);
+        indexChoices(total);
+        if (buffer == null || buffer.size() < size) {
+            buffer = new Memory(size);
+        }
+        generation = config.getGeneration();
+    }
+
+    /**
+     * Copy every choice into one native block, so setting a choice doesn't
+     * allocate, and sort the numeric ones for stepping.
+     */
+    private void indexChoices(int total) {
+        int n = choices.size();
+        offsets = new long[n];
+        values = new double[n];
+        choiceBuffer = n == 0 ? null : new Memory(total);
+        long offset = 0;
+        for (int i = 0; i < n; i++) {
+            String s = choices.get(i);
+            offsets[i] = offset;
+            choiceBuffer.setString(offset, s);
+            offset += s.getBytes().length + 1;
+            values[i] = numeric(s);
+        }
+        ladder = ladder(values);
+    }
+
+    /**
+     * Resolve again if the configuration has been re-read since this handle
+     * was last used.
+     */
+    private void check() throws IOException {
+        if (generation != config.getGeneration()) {
+            resolve();
+        }
+    }
+
+    /**
+     * @return The name of the parameter.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The parameter's type, one of the
+     * {@link CameraWidgetType} constants.
+     * @throws IOException If the parameter can no longer be found.
+     */
+    public int getType() throws IOException {
+        check();
+        return type;
+    }
+
+    /**
+     * @return The values a menu or radio parameter can take, in the
+     * camera's order. Empty for other types.
+     * @throws IOException If the parameter can no longer be found.
+     */
+    public List<String> getChoices() throws IOException {
+        check();
+        return choices;
+    }
+
+    /**
+     * Set a new value. Nothing is sent to the camera until
+     * {@link GPhoto2Config#writeConfig()} is called, or use
+     * {@link #apply(java.lang.String)}.
+     *
+     * @param value The value, as for
+     * {@link GPhoto2Config#setParameter(java.lang.String, java.lang.String)}.
+     * @throws IOException If the parameter cannot be set.
+     * @throws IllegalArgumentException If the value is not one of a menu or
+     * radio parameter's choices.
+     */
+    public void set(String value) throws IOException {
+        check();
+        switch (type) {
+            case CameraWidgetType.GP_WIDGET_MENU:
+            case CameraWidgetType.GP_WIDGET_RADIO:
+                int index = choices.indexOf(value);
+                if (index < 0) {
+                    throw new IllegalArgumentException(value + " is not a choice for " + name);
+                }
+                setChoice(index);
+                return;
+            case CameraWidgetType.GP_WIDGET_TEXT:
+                int length = value.getBytes().length + 1;
+                if (buffer.size() < length) {
+                    buffer = new Memory(length);
+                }
+                buffer.setString(0, value);
+                break;
+            case CameraWidgetType.GP_WIDGET_RANGE:
+                buffer.setFloat(0, Float.parseFloat(value));
+                break;
+            default:
+                buffer.setInt(0, Integer.parseInt(value));
+                break;
+        }
+        setValue(buffer);
+    }
+
+    /**
+     * Set a range parameter.
+     *
+     * @param value The new value.
+     * @throws IOException If the parameter cannot be set.
+     * @throws IllegalArgumentException If this is not a range parameter.
+     */
+    public void set(float value) throws IOException {
+        check();
+        if (type != CameraWidgetType.GP_WIDGET_RANGE) {
+            throw new IllegalArgumentException(name + " is not a range");
+        }
+        buffer.setFloat(0, value);
+        setValue(buffer);
+    }
+
+    /**
+     * Set a toggle or date parameter.
+     *
+     * @param value The new value. Dates are in seconds since the epoch.
+     * @throws IOException If the parameter cannot be set.
+     * @throws IllegalArgumentException If this is not a toggle or date
+     * parameter.
+     */
+    public void set(int value) throws IOException {
+        check();
+        if (type != CameraWidgetType.GP_WIDGET_TOGGLE && type != CameraWidgetType.GP_WIDGET_DATE) {
+            throw new IllegalArgumentException(name + " is not a toggle or date");
+        }
+        buffer.setInt(0, value);
+        setValue(buffer);
+    }
+
+    /**
+     * Set a new value and write the configuration to the camera.
+     *
+     * @param value The new value.
+     * @throws IOException If the parameter cannot be set or written.
+     */
+    public void apply(String value) throws IOException {
+        set(value);
+        config.writeConfig();
+    }
+
+    /**
+     * Get the current value from the configuration that was read.
+     *
+     * @return The value, as for
+     * {@link GPhoto2Config#getParameter(java.lang.String)}.
+     * @throws IOException If the value cannot be read.
+     */
+    public String get() throws IOException {
+        check();
+        return config.getParameterValue(widget);
+    }
+
+    /**
+     * Position of the current value in {@link #getChoices()}.
+     *
+     * @return The index, or -1 if the value isn't one of the choices.
+     * @throws IOException If the value cannot be read.
+     */
+    public int getIndex() throws IOException {
+        check();
+        return choices.indexOf(get());
+    }
+
+    /**
+     * Set a menu or radio parameter by position in its choice list.
+     *
+     * @param index Position in {@link #getChoices()}.
+     * @throws IOException If the parameter cannot be set.
+     * @throws IllegalArgumentException If the index is out of range.
+     */
+    public void setIndex(int index) throws IOException {
+        check();
+        if (index < 0 || index >= choices.size()) {
+            throw new IllegalArgumentException(index + " is not a choice for " + name);
+        }
+        setChoice(index);
+    }
+
+    /**
+     * Set the choice whose numeric value is closest to a target, for
+     * example the nearest ISO to 640. Positive values are compared on a
+     * log scale, so 1/100 is closer to 1/125 than to 1/60; parameters with
+     * zero or negative choices, such as exposure compensation, are compared
+     * directly.
+     *
+     * @param target The value wanted.
+     * @return The choice that was set.
+     * @throws IOException If the parameter cannot be set.
+     * @throws IllegalArgumentException If no choice is numeric.
+     */
+    public String setNearest(double target) throws IOException {
+        check();
+        int index = nearest(values, target);
+        if (index < 0) {
+            throw new IllegalArgumentException(name + " has no numeric choices");
+        }
+        setChoice(index);
+        return choices.get(index);
+    }
+
+    /**
+     * Move up or down the numeric choices, for example to open the aperture
+     * or lengthen the exposure by a number of steps. Positive steps go to
+     * larger values, whatever order the camera lists them in. One step is
+     * one choice, usually a third or half of a stop depending on the
+     * camera's exposure step setting. Stops at the ends of the range.
+     *
+     * @param steps Number of choices to move.
+     * @return The choice that was set.
+     * @throws IOException If the parameter cannot be set.
+     * @throws IllegalStateException If the current value isn't numeric,
+     * such as "Auto".
+     */
+    public String step(int steps) throws IOException {
+        int from = getIndex();
+        int rung = -1;
+        for (int i = 0; i < ladder.length; i++) {
+            if (ladder[i] == from) {
+                rung = i;
+            }
+        }
+        if (rung < 0) {
+            throw new IllegalStateException(name + " is not set to a numeric value");
+        }
+        int index = ladder[Math.max(0, Math.min(ladder.length - 1, rung + steps))];
+        setChoice(index);
+        return choices.get(index);
+    }
+
+    private void setChoice(int index) throws IOException {
+        setValue(choiceBuffer.share(offsets[index]));
+    }
+
+    private void setValue(Pointer value) throws IOException {
+        config.validateResult("gp_widget_set_value", gphoto2.gp_widget_set_value(widget, value));
+        config.changed();
+    }
+
+    /**
+     * Read a choice as a number. Handles fractions such as "1/250",
+     * f-numbers such as "f/5.6" and a trailing unit like "30s".
+     *
+     * @param choice The choice.
+     * @return The value, or NaN if it isn't a number.
+     */
+    static double numeric(String choice) {
+        String s = choice.trim();
+        if (s.startsWith("f/") || s.startsWith("F/")) {
+            s = s.substring(2);
+        }
+        if (s.endsWith("s") || s.endsWith("\"")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            int slash = s.indexOf('/');
+            if (slash < 0) {
+                return Double.parseDouble(s);
+            }
+            return Double.parseDouble(s.substring(0, slash)) / Double.parseDouble(s.substring(slash + 1));
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Indexes of the numeric values, smallest value first. Zero and
+     * negative values, such as exposure compensation, are included.
+     */
+    static int[] ladder(final double[] values) {
+        List<Integer> numeric = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (!Double.isNaN(values[i]) && !Double.isInfinite(values[i])) {
+                numeric.add(i);
+            }
+        }
+        Collections.sort(numeric, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(values[a], values[b]);
+            }
+        });
+        int[] ladder = new int[numeric.size()];
+        for (int i = 0; i < ladder.length; i++) {
+            ladder[i] = numeric.get(i);
+        }
+        return ladder;
+    }
+
+    /**
+     * Index of the numeric value closest to a target. If the target and
+     * every value are positive, as for shutter speed, aperture and ISO, they
+     * are compared on a log scale; otherwise, as for exposure compensation,
+     * they are compared directly.
+     *
+     * @return The index, or -1 if there are no numeric values.
+     */
+    static int nearest(double[] values, double target) {
+        boolean log = target > 0;
+        for (double v : values) {
+            if (v <= 0) {
+                log = false;
+            }
+        }
+        double t = log ? Math.log(target) : target;
+        int best = -1;
+        double distance = Double.MAX_VALUE;
+        for (int i = 0; i < values.length; i++) {
+            if (!Double.isNaN(values[i]) && !Double.isInfinite(values[i])) {
+                double d = Math.abs((log ? Math.log(values[i]) : values[i]) - t);
+                if (d < distance) {
+                    best = i;
+                    distance = d;
+                }
+            }
+        }
+        return best;
+    }
+}
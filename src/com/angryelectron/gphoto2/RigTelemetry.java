@@ -0,0 +1,530 @@
+/**
+ * RigTelemetry Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Camera;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Keeps an up-to-date status for every camera in a rig, such as battery
+ * level, lens and free space, for showing on a dashboard.
+ * </p>
+ * <pre>
+ * RigTelemetry telemetry = new RigTelemetry(cameras, 5, TimeUnit.SECONDS);
+ * telemetry.addListener(new RigTelemetry.Listener() {
+ *     public void statusUpdated(RigTelemetry.Status status) {
+ *         dashboard.show(status.getCamera().getName(), status.getBatteryLevel());
+ *     }
+ * });
+ * telemetry.start();
+ * </pre>
+ * <p>
+ * Each poll of a camera is one configuration read and one storage
+ * information query, however many listeners and callers want the result.
+ * {@link #getStatus(GPhoto2)} returns the last result without touching the
+ * camera, and {@link #refresh(GPhoto2)} asks for an early poll; several
+ * refreshes before the poll runs are answered by that one poll.
+ * </p>
+ * <p>
+ * Polling gets out of the way of real work. A camera that is capturing or
+ * downloading is skipped, not waited for. If another thread starts waiting
+ * for the camera during a poll, the storage query is dropped and that
+ * camera's interval is doubled, up to the maximum. Otherwise the interval
+ * shrinks back towards the one requested, but never below twenty times the
+ * time the last poll took, so polling stays under about 5% of a camera's
+ * time. All polling is done by one low-priority thread.
+ * </p>
+ */
+public class RigTelemetry {
+
+    /**
+     * Polls take at most 1 / DUTY of a camera's time.
+     */
+    private static final int DUTY = 20;
+
+    /**
+     * Status of one camera. Statuses are immutable and shared by every
+     * listener.
+     */
+    public static class Status {
+
+        private final GPhoto2 camera;
+        private final long time;
+        private final long pollTime;
+        private final ConfigSnapshot config;
+        private final List<StorageInfo> storage;
+        private final IOException error;
+
+        Status(GPhoto2 camera, long time, long pollTime, ConfigSnapshot config, List<StorageInfo> storage,
+                IOException error) {
+            this.camera = camera;
+            this.time = time;
+            this.pollTime = pollTime;
+            this.config = config;
+            this.storage = storage;
+            this.error = error;
+        }
+
+        /**
+         * @return The camera.
+         */
+        public GPhoto2 getCamera() {
+            return camera;
+        }
+
+        /**
+         * @return When the camera was polled, in milliseconds since the
+         * epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return How long the poll held the camera, in nanoseconds.
+         */
+        public long getPollTime() {
+            return pollTime;
+        }
+
+        /**
+         * @return Every setting, or null if the configuration has never
+         * been read.
+         */
+        public ConfigSnapshot getConfig() {
+            return config;
+        }
+
+        /**
+         * @return Each storage, such as a memory card. May be from an
+         * earlier poll if the query was dropped to let a capture through.
+         */
+        public List<StorageInfo> getStorage() {
+            return storage;
+        }
+
+        /**
+         * @return The reason the last poll failed, or null. The other values
+         * are then from the last poll that worked.
+         */
+        public IOException getError() {
+            return error;
+        }
+
+        /**
+         * @param setting Name of a setting, such as "batterylevel".
+         * @return The value, or null if unknown.
+         */
+        public String getValue(String setting) {
+            return config == null ? null : config.getValue(setting);
+        }
+
+        /**
+         * @return Battery level as the camera reports it, such as "75%", or
+         * null if unknown.
+         */
+        public String getBatteryLevel() {
+            return getValue("batterylevel");
+        }
+
+        /**
+         * @return Name of the lens, or null if unknown.
+         */
+        public String getLens() {
+            return getValue("lensname");
+        }
+
+        /**
+         * @return Shots that will still fit on every storage together, as
+         * estimated by the camera, or -1 if unknown.
+         */
+        public long getShotsRemaining() {
+            long total = 0;
+            for (StorageInfo s : storage) {
+                if (s.getFreeImages() < 0) {
+                    return -1;
+                }
+                total += s.getFreeImages();
+            }
+            return storage.isEmpty() ? -1 : total;
+        }
+
+        /**
+         * @return Free space on every storage together, in kilobytes, or -1
+         * if unknown.
+         */
+        public long getFree() {
+            long total = 0;
+            for (StorageInfo s : storage) {
+                if (s.getFree() < 0) {
+                    return -1;
+                }
+                total += s.getFree();
+            }
+            return storage.isEmpty() ? -1 : total;
+        }
+    }
+
+    /**
+     * Receives every new status. Called on the polling thread, so it should
+     * return quickly.
+     */
+    public interface Listener {
+
+        /**
+         * @param status The new status.
+         */
+        void statusUpdated(Status status);
+    }
+
+    /**
+     * Polling state of one camera, only touched by the polling thread except
+     * for the volatile fields. The configuration is kept between polls, so
+     * each read replaces the last one instead of leaking it.
+     */
+    static class Target {
+
+        final GPhoto2 camera;
+        long due;
+        long interval;
+        volatile boolean refresh;
+        volatile Status status;
+        GPhoto2Config config;
+        Camera configured;
+
+        Target(GPhoto2 camera, long interval) {
+            this.camera = camera;
+            this.interval = interval;
+        }
+    }
+
+    private final List<Target> targets = new ArrayList<>();
+    private final Map<GPhoto2, Target> byCamera = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram pollTime = new LatencyHistogram();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong listenerErrors = new AtomicLong();
+    private volatile RuntimeException listenerError;
+    private final long interval;
+    private long maxInterval;
+    private Thread thread;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor.
+     *
+     * @param cameras Open cameras to poll.
+     * @param interval Time between polls of each camera, when the rig is
+     * idle.
+     * @param unit Unit of the interval.
+     */
+    public RigTelemetry(List<GPhoto2> cameras, long interval, TimeUnit unit) {
+        this.interval = unit.toNanos(interval);
+        this.maxInterval = this.interval * 8;
+        for (GPhoto2 camera : cameras) {
+            Target t = new Target(camera, this.interval);
+            targets.add(t);
+            byCamera.put(camera, t);
+        }
+    }
+
+    /**
+     * Longest time between polls of a busy camera. Default is eight times
+     * the interval.
+     *
+     * @param maxInterval Maximum interval.
+     * @param unit Unit of the interval.
+     */
+    public void setMaxInterval(long maxInterval, TimeUnit unit) {
+        this.maxInterval = Math.max(interval, unit.toNanos(maxInterval));
+    }
+
+    /**
+     * @param listener Listener to receive every new status.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove.
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start polling. Every camera is polled straight away.
+     *
+     * @throws IllegalStateException If already started.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Telemetry already started.");
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                schedule();
+            }
+        }, "telemetry");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stop polling. A poll in progress is finished.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Get the last status of a camera. This never touches the camera.
+     *
+     * @param camera One of the cameras being polled.
+     * @return The status, or null if the camera hasn't been polled yet.
+     */
+    public Status getStatus(GPhoto2 camera) {
+        return target(camera).status;
+    }
+
+    /**
+     * @return The last status of every camera that has been polled.
+     */
+    public List<Status> getStatus() {
+        List<Status> all = new ArrayList<>();
+        for (Target t : targets) {
+            Status s = t.status;
+            if (s != null) {
+                all.add(s);
+            }
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Poll a camera as soon as it is free, instead of waiting for its
+     * interval.
+     *
+     * @param camera One of the cameras being polled.
+     */
+    public void refresh(GPhoto2 camera) {
+        target(camera).refresh = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * @param camera One of the cameras being polled.
+     * @return Current time between polls of the camera, in nanoseconds.
+     */
+    public long getInterval(GPhoto2 camera) {
+        return target(camera).interval;
+    }
+
+    /**
+     * @return Time each poll held its camera.
+     */
+    public LatencyHistogram getPollTime() {
+        return pollTime;
+    }
+
+    /**
+     * @return Number of polls made.
+     */
+    public long getPolls() {
+        return polls.get();
+    }
+
+    /**
+     * @return Number of polls skipped because the camera was busy.
+     */
+    public long getBusy() {
+        return busy.get();
+    }
+
+    /**
+     * @return Number of times a listener threw. Polling carries on, and
+     * the other listeners are still called.
+     */
+    public long getListenerErrors() {
+        return listenerErrors.get();
+    }
+
+    /**
+     * @return The last exception thrown by a listener, or null.
+     */
+    public RuntimeException getLastListenerError() {
+        return listenerError;
+    }
+
+    private Target target(GPhoto2 camera) {
+        Target t = byCamera.get(camera);
+        if (t == null) {
+            throw new IllegalArgumentException(camera.getName() + " is not being polled.");
+        }
+        return t;
+    }
+
+    /**
+     * Poll whichever camera is due next, then sleep until the next one is
+     * due or a refresh is requested.
+     */
+    private void schedule() {
+        long now = System.nanoTime();
+        for (Target t : targets) {
+            t.due = now;
+        }
+        while (!stopped) {
+            now = System.nanoTime();
+            Target next = next(targets, now);
+            if (next == null) {
+                return;
+            }
+            long wait = next.due - now;
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            next.refresh = false;
+            try {
+                poll(next);
+            } catch (RuntimeException ex) {
+                /* keep polling the other cameras; try this one again later */
+                next.due = System.nanoTime() + next.interval;
+            }
+        }
+    }
+
+    /**
+     * The camera due first, counting a camera with a refresh requested as
+     * due now.
+     *
+     * @return The camera, or null if there are none.
+     */
+    static Target next(List<Target> targets, long now) {
+        Target next = null;
+        for (Target t : targets) {
+            if (t.refresh) {
+                t.due = now;
+            }
+            if (next == null || t.due - next.due < 0) {
+                next = t;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return The interval after a camera was found busy.
+     */
+    long backOff(long current) {
+        return Math.min(maxInterval, current * 2);
+    }
+
+    /**
+     * @return The interval after a poll that took cost nanoseconds and
+     * nobody waited for.
+     */
+    long settle(long current, long cost) {
+        return Math.min(maxInterval, Math.max(interval, Math.max(current / 2, cost * DUTY)));
+    }
+
+    private void poll(Target t) {
+        GPhoto2 camera = t.camera;
+        if (!camera.lock.tryLock()) {
+            busy.incrementAndGet();
+            t.interval = backOff(t.interval);
+            t.due = System.nanoTime() + t.interval;
+            return;
+        }
+        Status last = t.status;
+        ConfigSnapshot config = last == null ? null : last.config;
+        List<StorageInfo> storage = last == null ? Collections.<StorageInfo>emptyList() : last.storage;
+        IOException error = null;
+        boolean contended;
+        long start = System.nanoTime();
+        try {
+            if (camera.camera == null) {
+                t.due = start + t.interval;
+                return;
+            }
+            try {
+                if (t.configured != camera.camera) {
+                    if (t.config != null) {
+                        t.config.free();
+                    }
+                    t.config = new GPhoto2Config(camera);
+                    t.configured = camera.camera;
+                }
+                t.config.readConfig();
+                config = t.config.snapshot();
+                if (!camera.lock.hasQueuedThreads()) {
+                    storage = Collections.unmodifiableList(camera.getStorageInfo());
+                }
+            } catch (IOException ex) {
+                error = ex;
+            } catch (RuntimeException ex) {
+                error = new IOException("Poll of " + camera.getName() + " failed.", ex);
+            }
+            contended = camera.lock.hasQueuedThreads();
+        } finally {
+            camera.lock.unlock();
+        }
+        long end = System.nanoTime();
+        long cost = end - start;
+        polls.incrementAndGet();
+        pollTime.record(cost);
+        if (contended) {
+            t.interval = backOff(t.interval);
+        } else {
+            t.interval = settle(t.interval, cost);
+        }
+        t.due = end + t.interval;
+        Status status = new Status(camera, System.currentTimeMillis(), cost, config, storage, error);
+        t.status = status;
+        for (Listener l : listeners) {
+            try {
+                l.statusUpdated(status);
+            } catch (RuntimeException ex) {
+                listenerErrors.incrementAndGet();
+                listenerError = ex;
+            }
+        }
+    }
+}
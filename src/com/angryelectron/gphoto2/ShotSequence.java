@@ -0,0 +1,404 @@
+/**
+ * ShotSequence Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidgetType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A list of settings changes and captures, such as an exposure bracket,
+ * focus stack or ISO sweep.
+ * </p>
+ * <pre>
+ * ShotSequence bracket = new ShotSequence()
+ *     .set("shutterspeed", "1/15").capture()
+ *     .set("shutterspeed", "1/60").capture()
+ *     .set("shutterspeed", "1/250").capture();
+ * ShotSequence.Plan plan = bracket.compile(camera);
+ * for (ShotSequence.Step step : plan.run(new File("bracket"), true)) {
+ *     System.out.println(step);
+ * }
+ * </pre>
+ * <p>
+ * Compiling reads the camera's configuration once, looks up every widget
+ * the sequence uses, and drops settings that wouldn't change anything after
+ * the first step, which sets them all so that every run starts the same.
+ * Running the plan then sets only the changed widgets and writes the
+ * configuration once per step, instead of reading and writing the whole
+ * configuration for every setting as {@link GPhoto2#setConfig(String,
+ * String)} does. Each image is downloaded in the background while the next
+ * step is being set up.
+ * </p>
+ */
+public class ShotSequence {
+
+    /**
+     * Outcome of one step of a plan. Times are in nanoseconds.
+     */
+    public static class Step {
+
+        private final int index;
+        private final Map<String, String> changes;
+        private final boolean capture;
+        private long setup;
+        private long captured;
+        private volatile long download;
+        private CameraFileEntry file;
+        private volatile File saved;
+        private volatile IOException error;
+
+        Step(int index, Map<String, String> changes, boolean capture) {
+            this.index = index;
+            this.changes = Collections.unmodifiableMap(changes);
+            this.capture = capture;
+        }
+
+        /**
+         * @return Step number, starting at 0.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return Settings changed by this step, in the order they were
+         * given. The first step sets every setting the sequence uses; later
+         * steps leave out settings that already had the requested value.
+         */
+        public Map<String, String> getChanges() {
+            return changes;
+        }
+
+        /**
+         * @return True if this step takes a picture.
+         */
+        public boolean isCapture() {
+            return capture;
+        }
+
+        /**
+         * @return Time taken to change the settings.
+         */
+        public long getSetupTime() {
+            return setup;
+        }
+
+        /**
+         * @return Time taken to capture.
+         */
+        public long getCaptureTime() {
+            return captured;
+        }
+
+        /**
+         * @return Time taken to download and save the image, which overlaps
+         * the following steps.
+         */
+        public long getDownloadTime() {
+            return download;
+        }
+
+        /**
+         * @return The image on the camera, or null if this step doesn't
+         * capture.
+         */
+        public CameraFileEntry getFile() {
+            return file;
+        }
+
+        /**
+         * @return Where the image was saved, or null if it wasn't.
+         */
+        public File getSavedFile() {
+            return saved;
+        }
+
+        /**
+         * @return The reason the image couldn't be saved, or null.
+         */
+        public IOException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %s setup %.1f ms, capture %.1f ms, download %.1f ms", index, changes,
+                    setup / 1e6, captured / 1e6, download / 1e6);
+        }
+    }
+
+    /**
+     * A sequence compiled for one camera. A plan can be run more than once,
+     * as long as nothing else changes the camera's settings in between.
+     */
+    public static class Plan {
+
+        private final GPhoto2 camera;
+        private final GPhoto2Config config;
+        private final List<Map<String, String>> changes;
+        private final List<Boolean> captures;
+        private final Map<String, PreparedParameter> params;
+
+        Plan(GPhoto2 camera, GPhoto2Config config, List<Map<String, String>> changes, List<Boolean> captures,
+                Map<String, PreparedParameter> params) {
+            this.camera = camera;
+            this.config = config;
+            this.changes = changes;
+            this.captures = captures;
+            this.params = params;
+        }
+
+        /**
+         * @return Number of steps.
+         */
+        public int size() {
+            return changes.size();
+        }
+
+        /**
+         * @param step Step number.
+         * @return Settings the step changes.
+         */
+        public Map<String, String> getChanges(int step) {
+            return Collections.unmodifiableMap(changes.get(step));
+        }
+
+        /**
+         * Run every step. Images are saved to a directory by a background
+         * thread, which is waited for before returning.
+         *
+         * @param directory Directory to save images into, or null to leave
+         * them on the camera.
+         * @param delete True to delete each image from the camera once
+         * saved.
+         * @return One Step per step of the plan, with timings.
+         * @throws IOException If a setting can't be changed or a picture
+         * can't be taken. Later steps are not run.
+         */
+        public List<Step> run(final File directory, final boolean delete) throws IOException {
+            List<Step> steps = new ArrayList<>();
+            ExecutorService downloads = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "sequence-download-" + camera.getName());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            try {
+                for (int i = 0; i < changes.size(); i++) {
+                    final Step step = new Step(i, changes.get(i), captures.get(i));
+                    steps.add(step);
+                    long start = System.nanoTime();
+                    if (!step.changes.isEmpty()) {
+                        for (Map.Entry<String, String> e : step.changes.entrySet()) {
+                            params.get(e.getKey()).set(e.getValue());
+                        }
+                        config.writeConfig();
+                    }
+                    long configured = System.nanoTime();
+                    step.setup = configured - start;
+                    if (!step.capture) {
+                        continue;
+                    }
+                    step.file = camera.captureFile();
+                    step.captured = System.nanoTime() - configured;
+                    if (directory != null) {
+                        downloads.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                save(step, directory, delete);
+                            }
+                        });
+                    }
+                }
+            } finally {
+                downloads.shutdown();
+                try {
+                    downloads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return steps;
+        }
+
+        private void save(Step step, File directory, boolean delete) {
+            long start = System.nanoTime();
+            File out = new File(directory, step.file.getName());
+            try (FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                camera.download(step.file.getFolder(), step.file.getName(), channel);
+                step.saved = out;
+                if (delete) {
+                    channel.force(true);
+                    FileSync.forceDirectory(directory.toPath());
+                    camera.delete(step.file.getFolder(), step.file.getName());
+                }
+            } catch (IOException ex) {
+                step.error = ex;
+            }
+            step.download = System.nanoTime() - start;
+        }
+    }
+
+    private final List<Map<String, String>> frames = new ArrayList<>();
+    private final List<Boolean> captures = new ArrayList<>();
+    private Map<String, String> pending = new LinkedHashMap<>();
+
+    /**
+     * Change a setting before the next capture. Parameters are named as for
+     * {@link GPhoto2Config#setParameter(String, String)}.
+     *
+     * @param param Name of the parameter.
+     * @param value New value.
+     * @return This sequence.
+     */
+    public ShotSequence set(String param, String value) {
+        pending.put(param, value);
+        return this;
+    }
+
+    /**
+     * Take a picture with the settings made so far.
+     *
+     * @return This sequence.
+     */
+    public ShotSequence capture() {
+        frames.add(pending);
+        captures.add(true);
+        pending = new LinkedHashMap<>();
+        return this;
+    }
+
+    /**
+     * Compile the sequence for a camera. Settings made after the last
+     * capture become a final step that doesn't capture, for example to put
+     * the camera back how it was.
+     *
+     * @param camera An open camera.
+     * @return The plan.
+     * @throws IOException If the configuration can't be read, or a setting
+     * doesn't exist.
+     * @throws IllegalArgumentException If a value isn't one of a setting's
+     * choices.
+     */
+    public Plan compile(GPhoto2 camera) throws IOException {
+        List<Map<String, String>> steps = new ArrayList<>(frames);
+        List<Boolean> capture = new ArrayList<>(captures);
+        if (!pending.isEmpty()) {
+            steps.add(pending);
+            capture.add(false);
+        }
+
+        GPhoto2Config config = new GPhoto2Config(camera);
+        config.readConfig();
+        Map<String, PreparedParameter> params = new HashMap<>();
+        Map<String, String> current = new LinkedHashMap<>();
+        Set<String> ranges = new HashSet<>();
+        for (Map<String, String> step : steps) {
+            for (Map.Entry<String, String> e : step.entrySet()) {
+                String param = e.getKey();
+                if (!params.containsKey(param)) {
+                    PreparedParameter p = config.prepare(param);
+                    params.put(param, p);
+                    current.put(param, p.get());
+                    if (p.getType() == CameraWidgetType.GP_WIDGET_RANGE) {
+                        ranges.add(param);
+                    }
+                }
+                List<String> choices = params.get(param).getChoices();
+                if (!choices.isEmpty() && !choices.contains(e.getValue())) {
+                    throw new IllegalArgumentException(e.getValue() + " is not a choice for " + param);
+                }
+            }
+        }
+        return new Plan(camera, config, deltas(steps, current, ranges), capture, params);
+    }
+
+    /**
+     * Work out what each step has to change.
+     *
+     * @param steps Settings given for each step.
+     * @param current Value each parameter has before the first step. Values
+     * are updated as the steps change them.
+     * @param ranges Parameters that are range widgets.
+     * @return The changes made by each step.
+     */
+    static List<Map<String, String>> deltas(List<Map<String, String>> steps, Map<String, String> current,
+            Set<String> ranges) {
+        /*
+         * The first step sets every parameter the sequence uses, so a
+         * second run starts from the same settings as the first rather
+         * than from where the last run left the camera.
+         */
+        List<Map<String, String>> deltas = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            Map<String, String> delta = new LinkedHashMap<>();
+            if (i == 0) {
+                current.putAll(steps.get(0));
+                delta.putAll(current);
+            } else {
+                for (Map.Entry<String, String> e : steps.get(i).entrySet()) {
+                    if (!same(current.get(e.getKey()), e.getValue(), ranges.contains(e.getKey()))) {
+                        delta.put(e.getKey(), e.getValue());
+                        current.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            deltas.add(delta);
+        }
+        return deltas;
+    }
+
+    /**
+     * Compare two values. For a range widget, numbers that differ only in
+     * format (for example "100" and "100.0") are the same; any other widget
+     * compares the text.
+     */
+    static boolean same(String a, String b, boolean range) {
+        if (a.equals(b)) {
+            return true;
+        } else if (!range) {
+            return false;
+        }
+        try {
+            return Float.parseFloat(a) == Float.parseFloat(b);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * StorageInfo Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+/**
+ * Capacity and free space of one storage on the camera, such as a memory
+ * card. This is a plain copy of the information libgphoto2 reports, so it is
+ * safe to keep and share between threads.
+ */
+public class StorageInfo {
+
+    private final String baseDir;
+    private final String label;
+    private final String description;
+    private final long capacity;
+    private final long free;
+    private final long freeImages;
+
+    /**
+     * Constructor.
+     *
+     * @param baseDir Base folder of the storage, for example "/store_00010001".
+     * @param label Label of the storage, or an empty string.
+     * @param description Description of the storage, or an empty string.
+     * @param capacity Capacity in kilobytes, or -1 if unknown.
+     * @param free Free space in kilobytes, or -1 if unknown.
+     * @param freeImages Number of images that will still fit, as estimated by
+     * the camera, or -1 if unknown.
+     */
+    public StorageInfo(String baseDir, String label, String description, long capacity, long free,
+            long freeImages) {
+        this.baseDir = baseDir;
+        this.label = label;
+        this.description = description;
+        this.capacity = capacity;
+        this.free = free;
+        this.freeImages = freeImages;
+    }
+
+    /**
+     * @return Base folder of the storage.
+     */
+    public String getBaseDir() {
+        return baseDir;
+    }
+
+    /**
+     * @return Label of the storage, or an empty string.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return Description of the storage, or an empty string.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return Capacity in kilobytes, or -1 if unknown.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Free space in kilobytes, or -1 if unknown.
+     */
+    public long getFree() {
+        return free;
+    }
+
+    /**
+     * @return Number of images that will still fit, as estimated by the
+     * camera, or -1 if unknown.
+     */
+    public long getFreeImages() {
+        return freeImages;
+    }
+
+    @Override
+    public String toString() {
+        return baseDir + " " + free + "/" + capacity + " kB free, " + freeImages + " images";
+    }
+}
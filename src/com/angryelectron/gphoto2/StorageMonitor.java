@@ -0,0 +1,593 @@
+/**
+ * StorageMonitor Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Keeps a camera's memory card from filling up during a long, unattended
+ * shoot.
+ * </p>
+ * <pre>
+ * StorageMonitor monitor = new StorageMonitor(camera, new File("/mnt/ingest/cam1"));
+ * monitor.setOffloadThreshold(200);
+ * monitor.start();
+ * ... capture as usual ...
+ * monitor.stop();
+ * </pre>
+ * <p>
+ * The monitor predicts how many more shots will fit, from the free space
+ * the camera reports and the size of recent files. The camera is asked again
+ * every few captures; in between, each capture is assumed to use the average
+ * file size. When the prediction drops to the offload threshold, a
+ * background thread starts moving files taken since {@link #start()} to the
+ * directory, oldest first, deleting each from the camera once it is safely
+ * on disk. It keeps going until the offload target is reached, and steps
+ * aside between files if a capture is waiting for the camera.
+ * </p>
+ * <p>
+ * If the background thread can't keep up and the prediction drops to the
+ * reserve, each capture first offloads files itself until it is above the
+ * reserve again. Captures slow down, but don't fail. A capture is only
+ * refused, before the shutter fires, if the card is full and there is
+ * nothing left to offload.
+ * </p>
+ * <p>
+ * Files are saved under <code>directory/&lt;camera folder&gt;/</code>.
+ * </p>
+ */
+public class StorageMonitor {
+
+    /**
+     * Weight of the newest file size in the running average.
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Most new files whose size is read per capture.
+     */
+    private static final int SAMPLES = 2;
+
+    /**
+     * How long the offload thread waits for a queued capture before taking
+     * the camera again.
+     */
+    private static final long YIELD = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_YIELDS = 1000;
+
+    /**
+     * The camera calls used by the monitor.
+     */
+    interface Card {
+
+        String getName();
+
+        List<StorageInfo> getStorageInfo() throws IOException;
+
+        List<CameraFileEntry> getAllFiles() throws IOException;
+
+        long mark();
+
+        List<CameraFileEntry> getAddedSince(long mark);
+
+        long getSize(CameraFileEntry e) throws IOException;
+
+        long download(CameraFileEntry e, WritableByteChannel out) throws IOException;
+
+        void delete(CameraFileEntry e) throws IOException;
+
+        /**
+         * @return True if a capture is waiting for the camera.
+         */
+        boolean isBusy();
+    }
+
+    private final GPhoto2 owner;
+    private final Card camera;
+    private final File directory;
+
+    /*
+     * Settings and prediction state, guarded by this.  Free space is in
+     * bytes; -1 means unknown.
+     */
+    private long threshold = 100;
+    private long target = 200;
+    private long reserve = 10;
+    private int refreshEvery = 10;
+    private boolean offloadExisting = false;
+    private long freeBytes = -1;
+    private long freeImages = -1;
+    private double averageSize = 0;
+    private int sinceRefresh = 0;
+    private boolean offloading = false;
+    private long mark;
+    private long sampleMark;
+    private final List<CameraFileEntry> existing = new ArrayList<>();
+    private final Set<String> claimed = new HashSet<>();
+    private final Set<String> failed = new HashSet<>();
+
+    private final AtomicLong offloaded = new AtomicLong();
+    private final AtomicLong offloadedBytes = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final LatencyHistogram stallTime = new LatencyHistogram();
+    private final List<IOException> errors = new ArrayList<>();
+    private Thread thread;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor.
+     *
+     * @param camera An open camera.
+     * @param directory Where to save offloaded files.
+     */
+    public StorageMonitor(final GPhoto2 camera, File directory) {
+        this(camera, new Card() {
+            @Override
+            public String getName() {
+                return camera.getName();
+            }
+
+            @Override
+            public List<StorageInfo> getStorageInfo() throws IOException {
+                return camera.getStorageInfo();
+            }
+
+            @Override
+            public List<CameraFileEntry> getAllFiles() throws IOException {
+                return camera.getTree().getAllFiles();
+            }
+
+            @Override
+            public long mark() {
+                return camera.getTree().mark();
+            }
+
+            @Override
+            public List<CameraFileEntry> getAddedSince(long mark) {
+                return camera.getTree().getAddedSince(mark);
+            }
+
+            @Override
+            public long getSize(CameraFileEntry e) throws IOException {
+                return camera.getFileEntry(e.getFolder(), e.getName()).getSize();
+            }
+
+            @Override
+            public long download(CameraFileEntry e, WritableByteChannel out) throws IOException {
+                return camera.download(e.getFolder(), e.getName(), out);
+            }
+
+            @Override
+            public void delete(CameraFileEntry e) throws IOException {
+                camera.delete(e.getFolder(), e.getName());
+            }
+
+            @Override
+            public boolean isBusy() {
+                return camera.lock.hasQueuedThreads();
+            }
+        }, directory);
+    }
+
+    StorageMonitor(GPhoto2 owner, Card camera, File directory) {
+        this.owner = owner;
+        this.camera = camera;
+        this.directory = directory;
+    }
+
+    /**
+     * Start offloading in the background when this few shots are predicted
+     * to fit. Default is 100.
+     *
+     * @param shots Number of shots.
+     */
+    public synchronized void setOffloadThreshold(long shots) {
+        this.threshold = shots;
+        this.target = Math.max(target, shots);
+    }
+
+    /**
+     * Keep offloading until this many shots are predicted to fit. Default
+     * is 200.
+     *
+     * @param shots Number of shots.
+     */
+    public synchronized void setOffloadTarget(long shots) {
+        this.target = Math.max(shots, threshold);
+    }
+
+    /**
+     * Make captures offload files themselves when this few shots are
+     * predicted to fit. Default is 10.
+     *
+     * @param shots Number of shots.
+     */
+    public synchronized void setReserve(long shots) {
+        this.reserve = shots;
+    }
+
+    /**
+     * Ask the camera for its free space every this many captures. Default
+     * is 10.
+     *
+     * @param captures Number of captures.
+     */
+    public synchronized void setRefreshEvery(int captures) {
+        this.refreshEvery = Math.max(1, captures);
+    }
+
+    /**
+     * Also offload files that were on the camera before {@link #start()},
+     * after the new ones. Default is false.
+     *
+     * @param offloadExisting True to offload existing files.
+     */
+    public synchronized void setOffloadExisting(boolean offloadExisting) {
+        this.offloadExisting = offloadExisting;
+    }
+
+    /**
+     * Read the camera's free space and start watching its captures.
+     *
+     * @throws IOException If the camera can't be read.
+     * @throws IllegalStateException If already started.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Storage monitor already started.");
+        }
+        List<CameraFileEntry> files = camera.getAllFiles();
+        mark = camera.mark();
+        sampleMark = mark;
+        if (offloadExisting) {
+            existing.addAll(files);
+        }
+        refresh();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offload();
+            }
+        }, "storage-offload-" + camera.getName());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+        if (owner != null) {
+            owner.storageMonitor = this;
+        }
+    }
+
+    /**
+     * Stop watching captures. A file being offloaded is finished.
+     */
+    public synchronized void stop() {
+        if (owner != null && owner.storageMonitor == this) {
+            owner.storageMonitor = null;
+        }
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * @return Predicted number of shots that will still fit, or -1 if
+     * unknown.
+     */
+    public synchronized long getShotsRemaining() {
+        return predict();
+    }
+
+    /**
+     * @return Running average size of recent captures, in bytes, or 0 if
+     * none has been captured yet.
+     */
+    public synchronized long getAverageFileSize() {
+        return (long) averageSize;
+    }
+
+    /**
+     * @return Number of files offloaded and deleted from the camera.
+     */
+    public long getOffloaded() {
+        return offloaded.get();
+    }
+
+    /**
+     * @return Bytes offloaded.
+     */
+    public long getOffloadedBytes() {
+        return offloadedBytes.get();
+    }
+
+    /**
+     * @return Number of captures that had to offload files first.
+     */
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    /**
+     * @return Time captures spent offloading files first.
+     */
+    public LatencyHistogram getStallTime() {
+        return stallTime;
+    }
+
+    /**
+     * @return Files that couldn't be offloaded. They are left on the camera
+     * and not tried again.
+     */
+    public synchronized List<IOException> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * Shots that will fit: the camera's own estimate, or less if recent
+     * files are bigger than it thinks.
+     */
+    private long predict() {
+        long byBytes = freeBytes >= 0 && averageSize > 0 ? (long) (freeBytes / averageSize) : -1;
+        if (freeImages < 0) {
+            return byBytes;
+        }
+        return byBytes < 0 ? freeImages : Math.min(freeImages, byBytes);
+    }
+
+    /**
+     * Ask the camera for its free space, adding up every storage.
+     */
+    private void refresh() throws IOException {
+        long bytes = 0;
+        long images = 0;
+        for (StorageInfo s : camera.getStorageInfo()) {
+            bytes = bytes < 0 || s.getFree() < 0 ? -1 : bytes + s.getFree() * 1024;
+            images = images < 0 || s.getFreeImages() < 0 ? -1 : images + s.getFreeImages();
+        }
+        synchronized (this) {
+            freeBytes = bytes;
+            freeImages = images;
+            sinceRefresh = 0;
+        }
+    }
+
+    /**
+     * Called by the camera, with its lock held, before every capture.
+     * Offloads files first if the card is nearly full.
+     *
+     * @throws IOException If the card is full and nothing can be offloaded.
+     */
+    void admit() throws IOException {
+        sample();
+        boolean due;
+        long floor;
+        synchronized (this) {
+            floor = reserve;
+            due = sinceRefresh >= refreshEvery || predict() <= floor;
+        }
+        if (due) {
+            refresh();
+        }
+        long shots = shotsRemaining();
+        if (shots < 0 || shots > floor) {
+            return;
+        }
+        long start = System.nanoTime();
+        stalls.incrementAndGet();
+        try {
+            while (shots >= 0 && shots <= floor) {
+                try {
+                    if (!offloadOne()) {
+                        break;
+                    }
+                } catch (IOException ex) {
+                    // recorded, and not tried again
+                }
+                shots = shotsRemaining();
+            }
+            if (shots == 0) {
+                refresh();
+                if (shotsRemaining() == 0) {
+                    throw new IOException("Storage on " + camera.getName() + " is full.");
+                }
+            }
+        } finally {
+            stallTime.recordSince(start);
+        }
+    }
+
+    /**
+     * Called by the camera, with its lock held, after every capture.
+     */
+    void captured() {
+        sample();
+        synchronized (this) {
+            sinceRefresh++;
+            if (freeImages > 0) {
+                freeImages--;
+            }
+            if (freeBytes > 0) {
+                freeBytes = Math.max(0, freeBytes - (long) averageSize);
+            }
+        }
+        shotsRemaining();
+    }
+
+    /**
+     * Read the size of the newest files captured since the last sample, so
+     * the prediction follows recent file sizes from the first capture on.
+     * captureImage knows its file straight away; files from a trigger are
+     * sampled once their event has arrived, before the next capture.
+     */
+    private void sample() {
+        List<CameraFileEntry> added;
+        synchronized (this) {
+            added = camera.getAddedSince(sampleMark);
+            sampleMark = camera.mark();
+        }
+        for (int i = Math.max(0, added.size() - SAMPLES); i < added.size(); i++) {
+            CameraFileEntry e = added.get(i);
+            try {
+                long size = camera.getSize(e);
+                if (size > 0) {
+                    synchronized (this) {
+                        averageSize = averageSize == 0 ? size : ALPHA * size + (1 - ALPHA) * averageSize;
+                    }
+                }
+            } catch (IOException ex) {
+                // offloaded or deleted already; the next file will do
+            }
+        }
+    }
+
+    /**
+     * Current prediction, waking the offload thread if it is below the
+     * threshold.
+     */
+    private synchronized long shotsRemaining() {
+        long shots = predict();
+        if (shots >= 0 && shots <= threshold && !offloading) {
+            offloading = true;
+            notifyAll();
+        }
+        return shots;
+    }
+
+    /**
+     * Background thread: wait until the threshold is crossed, then offload
+     * until the target is reached or nothing is left.
+     */
+    private void offload() {
+        while (true) {
+            synchronized (this) {
+                while (!stopped && !offloading) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+            }
+            boolean more = true;
+            while (more && !stopped) {
+                for (int i = 0; i < MAX_YIELDS && camera.isBusy(); i++) {
+                    LockSupport.parkNanos(this, YIELD);
+                }
+                try {
+                    more = offloadOne();
+                } catch (IOException ex) {
+                    more = true;
+                }
+                synchronized (this) {
+                    long shots = predict();
+                    more = more && (shots < 0 || shots < target);
+                }
+            }
+            synchronized (this) {
+                offloading = false;
+            }
+            try {
+                refresh();
+            } catch (IOException ex) {
+                // tried again before the next capture
+            }
+        }
+    }
+
+    /**
+     * Take the oldest file nobody else is offloading.
+     */
+    private synchronized CameraFileEntry claim() {
+        List<CameraFileEntry> candidates = camera.getAddedSince(mark);
+        candidates.addAll(existing);
+        for (CameraFileEntry e : candidates) {
+            String path = e.getPath();
+            if (!claimed.contains(path) && !failed.contains(path)) {
+                claimed.add(path);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Move one file to disk and delete it from the camera. The file and
+     * its directory are forced to disk before it is deleted.
+     *
+     * @return False if there was nothing left to offload.
+     * @throws IOException If the file couldn't be offloaded.
+     */
+    private boolean offloadOne() throws IOException {
+        CameraFileEntry e = claim();
+        if (e == null) {
+            return false;
+        }
+        try {
+            Path out = directory.toPath().resolve(e.getPath().substring(1));
+            Files.createDirectories(out.getParent());
+            long size;
+            try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                size = camera.download(e, channel);
+                channel.force(true);
+            }
+            FileSync.forceDirectory(out.getParent());
+            camera.delete(e);
+            offloaded.incrementAndGet();
+            offloadedBytes.addAndGet(size);
+            synchronized (this) {
+                if (freeBytes >= 0) {
+                    freeBytes += size;
+                }
+                if (freeImages >= 0) {
+                    freeImages++;
+                }
+                existing.remove(e);
+            }
+            return true;
+        } catch (IOException ex) {
+            IOException error = new IOException("Can't offload " + e.getPath() + " from " + camera.getName(), ex);
+            synchronized (this) {
+                failed.add(e.getPath());
+                errors.add(error);
+            }
+            throw error;
+        } finally {
+            synchronized (this) {
+                claimed.remove(e.getPath());
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * SynchronizedTrigger Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * Fire several cameras at the same time, for example in a bullet-time rig.
+ * Each camera gets its own thread. Before firing, every thread takes its
+ * camera's lock, makes room on the card if a {@link StorageMonitor} asks for
+ * it, and is then parked on a shared gate, so that the capture calls are
+ * issued as close together as the operating system allows. Issue and
+ * completion times are recorded for each camera so the skew between them
+ * can be measured.
+ * </p>
+ * <pre>
+ * SynchronizedTrigger trigger = new SynchronizedTrigger(cameras);
+ * SynchronizedTrigger.Result result = trigger.fire();
+ * System.out.println(result.getIssueSpread());
+ * trigger.close();
+ * </pre>
+ * <p>
+ * All cameras must be opened first, and should not be used by other threads
+ * while firing.
+ * </p>
+ */
+public class SynchronizedTrigger {
+
+    /**
+     * Outcome of firing a single camera. Times are in nanoseconds, relative
+     * to the moment the gate was released.
+     */
+    public static class Shot {
+
+        private final GPhoto2 camera;
+        private final boolean fired;
+        private final long issued;
+        private final long completed;
+        private final String file;
+        private final PendingCapture pending;
+        private final IOException error;
+
+        Shot(GPhoto2 camera, boolean fired, long issued, long completed, String file,
+                PendingCapture pending, IOException error) {
+            this.camera = camera;
+            this.fired = fired;
+            this.issued = issued;
+            this.completed = completed;
+            this.file = file;
+            this.pending = pending;
+            this.error = error;
+        }
+
+        /**
+         * @return The camera that was fired.
+         */
+        public GPhoto2 getCamera() {
+            return camera;
+        }
+
+        /**
+         * @return False if the camera couldn't be made ready, so it was
+         * never told to fire. Its times are then left out of the spreads.
+         */
+        public boolean isFired() {
+            return fired;
+        }
+
+        /**
+         * @return Time from release until the capture call was issued.
+         */
+        public long getIssued() {
+            return issued;
+        }
+
+        /**
+         * @return Time from release until the capture call returned.
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return Name of the image on the camera, or null in trigger-only
+         * mode or if the capture failed.
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return The image being collected in the background in
+         * trigger-only mode, otherwise null.
+         */
+        public PendingCapture getPendingCapture() {
+            return pending;
+        }
+
+        /**
+         * @return The reason the capture failed, or null if it succeeded.
+         */
+        public IOException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Outcome of firing all cameras once.
+     */
+    public static class Result {
+
+        private final List<Shot> shots;
+
+        Result(List<Shot> shots) {
+            this.shots = Collections.unmodifiableList(shots);
+        }
+
+        /**
+         * @return One Shot per camera, in the order the cameras were given.
+         */
+        public List<Shot> getShots() {
+            return shots;
+        }
+
+        /**
+         * @return True if every camera fired successfully.
+         */
+        public boolean isSuccess() {
+            for (Shot s : shots) {
+                if (s.error != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return Nanoseconds between the first and last camera being told to
+         * fire.
+         */
+        public long getIssueSpread() {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (Shot s : shots) {
+                if (s.fired) {
+                    min = Math.min(min, s.issued);
+                    max = Math.max(max, s.issued);
+                }
+            }
+            return max < min ? 0 : max - min;
+        }
+
+        /**
+         * @return Nanoseconds between the first and last camera reporting
+         * that it had fired.
+         */
+        public long getCompletionSpread() {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (Shot s : shots) {
+                if (s.fired) {
+                    min = Math.min(min, s.completed);
+                    max = Math.max(max, s.completed);
+                }
+            }
+            return max < min ? 0 : max - min;
+        }
+    }
+
+    private final List<GPhoto2> cameras;
+    private final List<ExecutorService> threads = new ArrayList<>();
+    private final LatencyHistogram issueSpread = new LatencyHistogram();
+    private final LatencyHistogram completionSpread = new LatencyHistogram();
+    private boolean triggerOnly = false;
+
+    /**
+     * Constructor. Starts one thread per camera.
+     *
+     * @param cameras Open cameras to fire together.
+     */
+    public SynchronizedTrigger(List<GPhoto2> cameras) {
+        this.cameras = new ArrayList<>(cameras);
+        for (final GPhoto2 camera : this.cameras) {
+            threads.add(Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "trigger-" + camera.getName());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MAX_PRIORITY);
+                    return t;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Use gp_camera_trigger_capture instead of gp_camera_capture. Cameras
+     * return as soon as the shutter has fired, which keeps the completion
+     * spread small. Images are downloaded in the background by
+     * {@link GPhoto2#captureAsync(boolean)}; wait for them with
+     * {@link Shot#getPendingCapture()}. Default is false.
+     *
+     * @param triggerOnly True to fire without waiting for the images.
+     */
+    public void setTriggerOnly(boolean triggerOnly) {
+        this.triggerOnly = triggerOnly;
+    }
+
+    /**
+     * @return Histogram of {@link Result#getIssueSpread()} over every fire.
+     */
+    public LatencyHistogram getIssueSpread() {
+        return issueSpread;
+    }
+
+    /**
+     * @return Histogram of {@link Result#getCompletionSpread()} over every
+     * fire.
+     */
+    public LatencyHistogram getCompletionSpread() {
+        return completionSpread;
+    }
+
+    /**
+     * Fire every camera at once and wait for all of them to finish. A camera
+     * that fails does not stop the others; check {@link Result#isSuccess()}.
+     *
+     * @return Timing and outcome for each camera.
+     * @throws InterruptedException If interrupted while waiting. If that
+     * happens before the gate opens, no camera is fired.
+     */
+    public Result fire() throws InterruptedException {
+        final CountDownLatch armed = new CountDownLatch(cameras.size());
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final long[] release = new long[1];
+        final boolean trigger = triggerOnly;
+        List<Future<Shot>> futures = new ArrayList<>();
+
+        for (int i = 0; i < cameras.size(); i++) {
+            final GPhoto2 camera = cameras.get(i);
+            futures.add(threads.get(i).submit(new Callable<Shot>() {
+                @Override
+                public Shot call() throws Exception {
+                    IOException error = null;
+                    boolean locked = false;
+                    try {
+                        camera.arm();
+                        locked = true;
+                    } catch (IOException ex) {
+                        error = ex;
+                    }
+                    try {
+                        armed.countDown();
+                        gate.await();
+                        if (cancelled.get()) {
+                            return null;
+                        }
+                        long issued = System.nanoTime();
+                        String file = null;
+                        PendingCapture pending = null;
+                        if (error == null) {
+                            try {
+                                if (trigger) {
+                                    pending = camera.captureAsync(false);
+                                } else {
+                                    file = camera.capture();
+                                }
+                            } catch (IOException ex) {
+                                error = ex;
+                            }
+                        }
+                        long completed = System.nanoTime();
+                        return new Shot(camera, locked, issued - release[0], completed - release[0],
+                                file, pending, error);
+                    } finally {
+                        if (locked) {
+                            camera.disarm();
+                        }
+                    }
+                }
+            }));
+        }
+
+        /*
+         * Wait until every thread is parked on the gate, then open it.  The
+         * release time is written before countDown(), which makes it visible
+         * to the camera threads.  If interrupted, the gate is still opened,
+         * with the fire cancelled, so no camera thread is left parked.
+         */
+        boolean released = false;
+        try {
+            armed.await();
+            release[0] = System.nanoTime();
+            released = true;
+        } finally {
+            if (!released) {
+                cancelled.set(true);
+            }
+            gate.countDown();
+        }
+
+        List<Shot> shots = new ArrayList<>();
+        for (Future<Shot> f : futures) {
+            try {
+                shots.add(f.get());
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Trigger thread failed", ex.getCause());
+            }
+        }
+        Result result = new Result(shots);
+        issueSpread.record(result.getIssueSpread());
+        completionSpread.record(result.getCompletionSpread());
+        return result;
+    }
+
+    /**
+     * Stop the camera threads. Cameras are not closed.
+     */
+    public void close() {
+        for (ExecutorService t : threads) {
+            t.shutdown();
+        }
+    }
+}
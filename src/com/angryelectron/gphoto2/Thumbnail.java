@@ -0,0 +1,77 @@
+/**
+ * Thumbnail Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+/**
+ * A small piece of a camera file: its preview (thumbnail) image or its EXIF
+ * block. Downloading these is much faster than downloading the whole file.
+ */
+public class Thumbnail {
+
+    private final int type;
+    private final byte[] data;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructor.
+     *
+     * @param type CameraFileType of the data, GP_FILE_TYPE_PREVIEW or
+     * GP_FILE_TYPE_EXIF.
+     * @param data The preview image or EXIF block.
+     * @param width Width of the preview in pixels, or 0 if unknown.
+     * @param height Height of the preview in pixels, or 0 if unknown.
+     */
+    public Thumbnail(int type, byte[] data, int width, int height) {
+        this.type = type;
+        this.data = data;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return CameraFileType of the data.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return The preview image (usually a JPEG) or EXIF block. Do not
+     * modify; the array may be shared with a {@link ThumbnailCache}.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return Width of the preview in pixels, or 0 if unknown.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height of the preview in pixels, or 0 if unknown.
+     */
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,385 @@
+/**
+ * ThumbnailCache Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFileType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Size-bounded LRU cache of previews and EXIF blocks, kept on the heap and
+ * optionally on disk. Entries are keyed by camera serial number, file path,
+ * size and modification time, so a file that changes on the camera is fetched
+ * again, and a cache directory can be shared by many cameras and survives
+ * restarts.
+ * </p>
+ * <pre>
+ * ThumbnailCache cache = new ThumbnailCache(32 * 1024 * 1024, new File("thumbs"), 512 * 1024 * 1024);
+ * Thumbnail t = cache.getPreview(camera, entry);
+ * </pre>
+ */
+public class ThumbnailCache {
+
+    private static final int MAGIC = 0x47505448;
+
+    private final long heapLimit;
+    private final File directory;
+    private final long diskLimit;
+    private final LinkedHashMap<String, Thumbnail> heap = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(64, 0.75f, true);
+    private long heapBytes = 0;
+    private long diskBytes = 0;
+    private final AtomicLong heapHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a heap-only cache.
+     *
+     * @param heapLimit Maximum bytes of preview data kept in memory.
+     */
+    public ThumbnailCache(long heapLimit) {
+        this.heapLimit = heapLimit;
+        this.directory = null;
+        this.diskLimit = 0;
+    }
+
+    /**
+     * Create a cache backed by a directory. Entries already in the
+     * directory are reused.
+     *
+     * @param heapLimit Maximum bytes of preview data kept in memory.
+     * @param directory Directory to store cached entries in.
+     * @param diskLimit Maximum bytes kept in the directory.
+     * @throws IOException If the directory cannot be created.
+     */
+    public ThumbnailCache(long heapLimit, File directory, long diskLimit) throws IOException {
+        this.heapLimit = heapLimit;
+        this.directory = directory;
+        this.diskLimit = diskLimit;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create cache directory " + directory);
+        }
+        loadIndex();
+    }
+
+    /**
+     * Get the preview of a file, downloading it only if it isn't cached.
+     * Pass entries from a {@link FileInfoScan} where possible: their size
+     * and modification time are part of the key, and they also supply the
+     * preview's dimensions. An entry with neither is only cached in memory, since a
+     * later file may reuse its path.
+     *
+     * @param camera Open camera the file is on.
+     * @param entry The file, as listed from the camera.
+     * @return The preview.
+     * @throws IOException If the preview isn't cached and cannot be
+     * downloaded.
+     */
+    public Thumbnail getPreview(GPhoto2 camera, CameraFileEntry entry) throws IOException {
+        String key = key(camera.getSerialNumber(), entry, CameraFileType.GP_FILE_TYPE_PREVIEW);
+        Thumbnail t = lookup(key);
+        if (t == null) {
+            t = camera.downloadPreview(entry);
+            store(key, t, isIdentified(entry));
+        }
+        return t;
+    }
+
+    /**
+     * Get the EXIF block of a file, downloading it only if it isn't cached.
+     *
+     * @param camera Open camera the file is on.
+     * @param entry The file, as listed from the camera.
+     * @return The EXIF data.
+     * @throws IOException If the EXIF data isn't cached and cannot be
+     * downloaded.
+     */
+    public Thumbnail getExif(GPhoto2 camera, CameraFileEntry entry) throws IOException {
+        String key = key(camera.getSerialNumber(), entry, CameraFileType.GP_FILE_TYPE_EXIF);
+        Thumbnail t = lookup(key);
+        if (t == null) {
+            t = camera.downloadExif(entry.getFolder(), entry.getName());
+            store(key, t, isIdentified(entry));
+        }
+        return t;
+    }
+
+    /**
+     * @return Number of lookups answered from memory.
+     */
+    public long getHeapHits() {
+        return heapHits.get();
+    }
+
+    /**
+     * @return Number of lookups answered from disk.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return Number of lookups that had to go to the camera.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Remove every entry from memory and disk.
+     */
+    public void clear() {
+        List<String> names;
+        synchronized (this) {
+            heap.clear();
+            heapBytes = 0;
+            names = new ArrayList<>(disk.keySet());
+            disk.clear();
+            diskBytes = 0;
+        }
+        for (String name : names) {
+            new File(directory, name).delete();
+        }
+    }
+
+    static String key(String serial, CameraFileEntry entry, int type) {
+        return serial + "|" + type + "|" + entry.getPath() + "|" + entry.getSize() + "|" + entry.getMtime();
+    }
+
+    /**
+     * @return True if the entry's size or modification time is known, so a
+     * different file at the same path gets a different key.
+     */
+    private static boolean isIdentified(CameraFileEntry entry) {
+        return entry.getSize() >= 0 || entry.getMtime() != 0;
+    }
+
+    /**
+     * Name of the file holding a key on disk.
+     */
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.append(".thm").toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Find a cached entry. The cache is only locked to consult the indexes;
+     * the file is read without it, so a slow disk doesn't hold up lookups
+     * answered from memory.
+     *
+     * @return The entry, or null on a miss.
+     */
+    Thumbnail lookup(String key) {
+        String name = null;
+        synchronized (this) {
+            Thumbnail t = heap.get(key);
+            if (t != null) {
+                heapHits.incrementAndGet();
+                return t;
+            }
+            if (directory != null && disk.get(name = fileName(key)) == null) {
+                name = null;
+            }
+        }
+        if (name != null) {
+            File file = new File(directory, name);
+            Thumbnail t;
+            try {
+                t = read(file, key);
+            } catch (IOException ex) {
+                t = null;
+            }
+            if (t != null) {
+                diskHits.incrementAndGet();
+                file.setLastModified(System.currentTimeMillis());
+                synchronized (this) {
+                    putHeap(key, t);
+                }
+                return t;
+            }
+            boolean stale;
+            synchronized (this) {
+                Long size = disk.remove(name);
+                stale = size != null;
+                if (stale) {
+                    diskBytes -= size;
+                }
+            }
+            if (stale) {
+                file.delete();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Add an entry. It is written to a temporary file and renamed into
+     * place outside the lock; only the index update and the choice of
+     * entries to evict happen under it.
+     *
+     * @param persist False to keep the entry in memory only.
+     */
+    void store(String key, Thumbnail t, boolean persist) {
+        synchronized (this) {
+            putHeap(key, t);
+        }
+        if (directory == null || !persist) {
+            return;
+        }
+        String name = fileName(key);
+        File file = new File(directory, name);
+        File tmp = new File(directory, name + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            write(tmp, key, t);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            /*
+             * A full or read-only cache directory shouldn't stop anyone
+             * browsing; the entry is still cached in memory.
+             */
+            tmp.delete();
+            return;
+        }
+        long length = file.length();
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = disk.put(name, length);
+            diskBytes += length - (old == null ? 0 : old);
+            Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+            while (diskBytes > diskLimit && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                evicted.add(eldest.getKey());
+                diskBytes -= eldest.getValue();
+                it.remove();
+            }
+        }
+        for (String e : evicted) {
+            new File(directory, e).delete();
+        }
+    }
+
+    /**
+     * @return Bytes of preview data held in memory.
+     */
+    synchronized long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * @return Bytes of cached entries held on disk.
+     */
+    synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    private void putHeap(String key, Thumbnail t) {
+        Thumbnail old = heap.put(key, t);
+        heapBytes += t.getData().length - (old == null ? 0 : old.getData().length);
+        Iterator<Thumbnail> it = heap.values().iterator();
+        while (heapBytes > heapLimit && it.hasNext()) {
+            heapBytes -= it.next().getData().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Index the cache directory, least recently used first.
+     */
+    private void loadIndex() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> list = new ArrayList<>(Arrays.asList(files));
+        Collections.sort(list, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File f : list) {
+            if (f.isFile() && f.getName().endsWith(".thm")) {
+                disk.put(f.getName(), f.length());
+                diskBytes += f.length();
+            }
+        }
+    }
+
+    private static void write(File file, String key, Thumbnail t) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(key);
+            out.writeInt(t.getType());
+            out.writeInt(t.getWidth());
+            out.writeInt(t.getHeight());
+            out.writeInt(t.getData().length);
+            out.write(t.getData());
+        }
+    }
+
+    /**
+     * @return The cached entry, or null if the file belongs to another key.
+     */
+    private static Thumbnail read(File file, String key) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || !key.equals(in.readUTF())) {
+                return null;
+            }
+            int type = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Thumbnail(type, data, width, height);
+        }
+    }
+}
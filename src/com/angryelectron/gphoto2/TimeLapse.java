@@ -0,0 +1,654 @@
+/**
+ * TimeLapse Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Take pictures at a fixed rate. Frame n is due exactly n intervals after
+ * the start, measured with {@link System#nanoTime()}, so the time a capture
+ * takes doesn't add up as drift the way it does in a sleep loop. Images are
+ * downloaded on a separate thread, which only starts a download when it
+ * expects to finish before the next frame is due.
+ * </p>
+ * <pre>
+ * TimeLapse lapse = new TimeLapse(camera, 10, TimeUnit.SECONDS);
+ * lapse.setDownload(new File("frames"), true);
+ * lapse.setOverrun(TimeLapse.Overrun.SKIP);
+ * lapse.start();
+ * ...
+ * lapse.stop();
+ * lapse.awaitTermination(1, TimeUnit.MINUTES);
+ * System.out.println(lapse.getLateness());
+ * </pre>
+ * <p>
+ * Every frame records when it was meant to fire and when it did. Only the
+ * most recent frames are kept (see {@link #setHistory(int)}); to keep a
+ * record of a run lasting days, log each frame from a {@link Listener}.
+ * </p>
+ */
+public class TimeLapse {
+
+    /**
+     * What to do when a capture takes longer than the interval, so the next
+     * frame is already late.
+     */
+    public enum Overrun {
+
+        /**
+         * Drop the frames that are already late and wait for the next one
+         * that is still to come. Dropped frames are recorded as skipped.
+         */
+        SKIP,
+        /**
+         * Fire the late frames straight away, one after another, until the
+         * schedule is caught up.
+         */
+        CATCH_UP,
+        /**
+         * Fire the next frame straight away and move every later frame back
+         * by the same amount, so frames are never closer together than the
+         * interval.
+         */
+        STRETCH
+    }
+
+    /**
+     * One frame of the time-lapse. Times are in nanoseconds, relative to
+     * the moment the time-lapse started.
+     */
+    public static class Frame {
+
+        private final long index;
+        private final long intended;
+        private final long scheduled;
+        private final long fired;
+        private final long completed;
+        private final CameraFileEntry file;
+        private final IOException error;
+
+        Frame(long index, long intended, long scheduled, long fired, long completed,
+                CameraFileEntry file, IOException error) {
+            this.index = index;
+            this.intended = intended;
+            this.scheduled = scheduled;
+            this.fired = fired;
+            this.completed = completed;
+            this.file = file;
+            this.error = error;
+        }
+
+        /**
+         * @return Frame number, starting at 0. Skipped frames are numbered
+         * too.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * @return Time the frame was due on the original schedule: the
+         * frame number times the interval.
+         */
+        public long getIntended() {
+            return intended;
+        }
+
+        /**
+         * @return Time the frame was due, after any stretching by
+         * {@link Overrun#STRETCH}.
+         */
+        public long getScheduled() {
+            return scheduled;
+        }
+
+        /**
+         * @return Time the capture was issued, or -1 if the frame was
+         * skipped.
+         */
+        public long getFired() {
+            return fired;
+        }
+
+        /**
+         * @return Time the capture returned, or -1 if the frame was skipped.
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return True if the frame was dropped by {@link Overrun#SKIP}.
+         */
+        public boolean isSkipped() {
+            return fired < 0;
+        }
+
+        /**
+         * @return How late the capture was issued compared with when it was
+         * scheduled. This is the jitter of the scheduler.
+         */
+        public long getLateness() {
+            return isSkipped() ? 0 : fired - scheduled;
+        }
+
+        /**
+         * @return How late the capture was issued compared with the original
+         * schedule. Only grows over time with {@link Overrun#STRETCH}.
+         */
+        public long getDrift() {
+            return isSkipped() ? 0 : fired - intended;
+        }
+
+        /**
+         * @return The new file on the camera, or null if the frame was
+         * skipped or the capture failed.
+         */
+        public CameraFileEntry getFile() {
+            return file;
+        }
+
+        /**
+         * @return The reason the capture failed, or null.
+         */
+        public IOException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return index + " " + intended + " " + scheduled + " " + fired + " " + completed
+                    + " " + (file == null ? "-" : file.getPath());
+        }
+    }
+
+    /**
+     * Notified of each frame, for example to log it.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the scheduling thread after each capture, and for each
+         * skipped frame. It must return quickly, or later frames will be
+         * late.
+         *
+         * @param frame The frame.
+         */
+        void frameTaken(Frame frame);
+
+        /**
+         * Called on the download thread after a frame has been saved.
+         *
+         * @param frame The frame.
+         * @param file Where it was saved.
+         * @param error The reason it couldn't be saved or deleted from the
+         * camera, or null.
+         */
+        void frameSaved(Frame frame, File file, IOException error);
+    }
+
+    /**
+     * The camera calls used by the time-lapse.
+     */
+    interface Source {
+
+        String getName();
+
+        CameraFileEntry captureFile() throws IOException;
+
+        long download(CameraFileEntry e, WritableByteChannel out) throws IOException;
+
+        void delete(CameraFileEntry e) throws IOException;
+    }
+
+    private final Source camera;
+    private final long period;
+    private long frames = 0;
+    private Overrun overrun = Overrun.SKIP;
+    private File directory;
+    private boolean delete;
+    private Listener listener;
+    private int history = 10000;
+
+    private final ArrayDeque<Frame> recent = new ArrayDeque<>();
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong saveFailed = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private volatile long drift;
+    private volatile long stretch;
+
+    private Thread thread;
+    private ExecutorService downloads;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean stopped = false;
+    /*
+     * The download thread waits on this for a window between frames.  fires
+     * counts captures; nextDue is the System.nanoTime() the next frame is
+     * due at.
+     */
+    private final Object window = new Object();
+    private long fires = 0;
+    private volatile long nextDue = Long.MAX_VALUE;
+    private long downloadEstimate = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param camera An open camera.
+     * @param interval Time between frames.
+     * @param unit Unit of the interval.
+     */
+    public TimeLapse(final GPhoto2 camera, long interval, TimeUnit unit) {
+        this(new Source() {
+            @Override
+            public String getName() {
+                return camera.getName();
+            }
+
+            @Override
+            public CameraFileEntry captureFile() throws IOException {
+                return camera.captureFile();
+            }
+
+            @Override
+            public long download(CameraFileEntry e, WritableByteChannel out) throws IOException {
+                return camera.download(e.getFolder(), e.getName(), out);
+            }
+
+            @Override
+            public void delete(CameraFileEntry e) throws IOException {
+                camera.delete(e.getFolder(), e.getName());
+            }
+        }, interval, unit);
+    }
+
+    TimeLapse(Source camera, long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        }
+        this.camera = camera;
+        this.period = unit.toNanos(interval);
+    }
+
+    /**
+     * @param frames Number of frames to take, including skipped ones, or 0
+     * to run until stopped. Default is 0.
+     */
+    public void setFrames(long frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * @param overrun What to do when a frame is late. Default is
+     * {@link Overrun#SKIP}.
+     */
+    public void setOverrun(Overrun overrun) {
+        this.overrun = overrun;
+    }
+
+    /**
+     * Download each frame in the background. By default frames are left on
+     * the camera.
+     *
+     * @param directory Directory to save frames into, under their folders on
+     * the camera, or null to leave them on the camera.
+     * @param delete True to delete each frame from the camera once saved.
+     */
+    public void setDownload(File directory, boolean delete) {
+        this.directory = directory;
+        this.delete = delete;
+    }
+
+    /**
+     * @param listener Notified of every frame, or null.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param history Number of recent frames kept for {@link #getFrames()}.
+     * Default is 10000.
+     */
+    public void setHistory(int history) {
+        this.history = history;
+    }
+
+    /**
+     * Start taking pictures. The first frame fires straight away.
+     *
+     * @throws IllegalStateException If already started.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Time-lapse already started.");
+        }
+        final String name = camera.getName();
+        downloads = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "timelapse-download-" + name);
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                schedule();
+            }
+        }, "timelapse-" + name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stop taking pictures. A capture in progress is finished, and frames
+     * already taken are still downloaded.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Wait for the last frame to be taken and downloaded.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit Unit of the timeout.
+     * @return True if everything finished, false if the timeout expired.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!finished.await(timeout, unit)) {
+            return false;
+        }
+        return downloads.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The most recent frames, oldest first.
+     */
+    public List<Frame> getFrames() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    /**
+     * @return Histogram of {@link Frame#getLateness()} over every frame
+     * fired.
+     */
+    public LatencyHistogram getLateness() {
+        return lateness;
+    }
+
+    /**
+     * @return {@link Frame#getDrift()} of the last frame fired, in
+     * nanoseconds.
+     */
+    public long getDrift() {
+        return drift;
+    }
+
+    /**
+     * @return Total nanoseconds the schedule has been moved back by
+     * {@link Overrun#STRETCH}.
+     */
+    public long getStretch() {
+        return stretch;
+    }
+
+    /**
+     * @return Number of captures issued, including failed ones.
+     */
+    public long getFired() {
+        return fired.get();
+    }
+
+    /**
+     * @return Number of frames dropped by {@link Overrun#SKIP}.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return Number of captures that failed.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Number of frames saved.
+     */
+    public long getSaved() {
+        return saved.get();
+    }
+
+    /**
+     * @return Number of frames that couldn't be saved or deleted.
+     */
+    public long getSaveFailed() {
+        return saveFailed.get();
+    }
+
+    /**
+     * @return Number of frames waiting to be downloaded.
+     */
+    public long getPendingDownloads() {
+        return pending.get();
+    }
+
+    private void schedule() {
+        long start = System.nanoTime();
+        long index = 0;
+        long shift = 0;
+        try {
+            while (!stopped && (frames == 0 || index < frames)) {
+                long intended = index * period;
+                long scheduled = intended + shift;
+                if (!sleepUntil(start + scheduled)) {
+                    break;
+                }
+                long issued = System.nanoTime();
+                CameraFileEntry file = null;
+                IOException error = null;
+                try {
+                    file = camera.captureFile();
+                } catch (IOException ex) {
+                    error = ex;
+                }
+                long completed = System.nanoTime();
+                Frame frame = new Frame(index, intended, scheduled, issued - start, completed - start, file, error);
+                index++;
+
+                long now = completed - start;
+                long next = index * period + shift;
+                List<Frame> dropped = new ArrayList<>();
+                if (now > next) {
+                    switch (overrun) {
+                        case SKIP:
+                            long resume = (now - shift + period - 1) / period;
+                            while (index < resume && (frames == 0 || index < frames)) {
+                                dropped.add(new Frame(index, index * period, index * period + shift, -1, -1, null, null));
+                                index++;
+                            }
+                            break;
+                        case STRETCH:
+                            shift += now - next;
+                            stretch = shift;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                synchronized (window) {
+                    nextDue = start + index * period + shift;
+                    fires++;
+                    window.notifyAll();
+                }
+                taken(frame);
+                for (Frame d : dropped) {
+                    taken(d);
+                }
+                if (file != null && directory != null) {
+                    save(frame);
+                }
+            }
+        } finally {
+            synchronized (window) {
+                nextDue = Long.MAX_VALUE;
+                window.notifyAll();
+            }
+            downloads.shutdown();
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Park until a System.nanoTime() deadline.
+     *
+     * @return False if stopped first.
+     */
+    private boolean sleepUntil(long deadline) {
+        long remaining;
+        while (!stopped && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                stopped = true;
+            }
+        }
+        return !stopped;
+    }
+
+    private void taken(Frame frame) {
+        if (frame.isSkipped()) {
+            skipped.incrementAndGet();
+        } else {
+            fired.incrementAndGet();
+            lateness.record(frame.getLateness());
+            drift = frame.getDrift();
+            if (frame.getError() != null) {
+                failed.incrementAndGet();
+            }
+        }
+        synchronized (recent) {
+            recent.addLast(frame);
+            while (recent.size() > history) {
+                recent.removeFirst();
+            }
+        }
+        Listener l = listener;
+        if (l != null) {
+            l.frameTaken(frame);
+        }
+    }
+
+    private void save(final Frame frame) {
+        pending.incrementAndGet();
+        downloads.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    awaitWindow();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                CameraFileEntry entry = frame.getFile();
+                /*
+                 * Keep the camera's folders, so frames from different
+                 * folders with the same name don't overwrite each other.
+                 */
+                Path out = directory.toPath().resolve(entry.getPath().substring(1));
+                long start = System.nanoTime();
+                IOException error = null;
+                try {
+                    Files.createDirectories(out.getParent());
+                    try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        camera.download(entry, channel);
+                        if (delete) {
+                            channel.force(true);
+                            FileSync.forceDirectory(out.getParent());
+                            camera.delete(entry);
+                        }
+                    }
+                } catch (IOException ex) {
+                    error = ex;
+                }
+                long elapsed = System.nanoTime() - start;
+                downloadEstimate = downloadEstimate == 0 ? elapsed : (downloadEstimate * 7 + elapsed) / 8;
+                pending.decrementAndGet();
+                if (error == null) {
+                    saved.incrementAndGet();
+                } else {
+                    saveFailed.incrementAndGet();
+                }
+                Listener l = listener;
+                if (l != null) {
+                    l.frameSaved(frame, out.toFile(), error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait until a download is expected to finish before the next frame is
+     * due, so it doesn't hold the camera when the frame fires. If it won't
+     * fit, wait until the next frame has fired and start then, which is the
+     * most time a download can get.
+     */
+    private void awaitWindow() throws InterruptedException {
+        synchronized (window) {
+            long seen = fires;
+            while (fires == seen && nextDue - System.nanoTime() < downloadEstimate) {
+                window.wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.libgphoto2;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+import java.io.IOException;
+
+/*
+ * Copies a whole CameraList into Java arrays in one pass. The calls go
+ * through direct-mapped methods with a single reused out-parameter, so each
+ * entry costs one native call and one String, rather than a proxy dispatch
+ * and a new PointerByReference or String[]. libgphoto2 doesn't declare the
+ * layout of CameraList, so it is read through the API rather than walked.
+ */
+public final class CameraListReader {
+
+	/*
+	 * Registered on first use, against the "libgphoto2.so" NativeLibrary
+	 * that the high-level package's ContextPool and direct backend also use.
+	 * Gphoto2Library loads "gphoto2", which is a separate NativeLibrary
+	 * instance of the same shared object.
+	 */
+	private static class Direct {
+		static {
+			Native.register(Direct.class, NativeLibrary.getInstance("libgphoto2.so"));
+		}
+		static native int gp_list_count(Pointer list);
+		static native int gp_list_get_name(Pointer list, int index, Pointer name);
+		static native int gp_list_get_value(Pointer list, int index, Pointer value);
+	}
+
+	private CameraListReader() {
+	}
+
+	/**
+	 * @return The name of every entry.
+	 * @throws IOException if libgphoto2 returns an error.
+	 */
+	public static String[] names(Gphoto2Library.CameraList list) throws IOException {
+		return read(list, false);
+	}
+
+	/**
+	 * @return The value of every entry, in the same order as {@link #names}.
+	 * @throws IOException if libgphoto2 returns an error.
+	 */
+	public static String[] values(Gphoto2Library.CameraList list) throws IOException {
+		return read(list, true);
+	}
+
+	private static String[] read(Gphoto2Library.CameraList list, boolean values) throws IOException {
+		Pointer p = list.getPointer();
+		int count = Direct.gp_list_count(p);
+		if (count < 0) {
+			throw new IOException("gp_list_count failed with code " + count);
+		}
+		String[] out = new String[count];
+		Memory ref = new Memory(Pointer.SIZE);
+		for (int i = 0; i < count; i++) {
+			int rc = values ? Direct.gp_list_get_value(p, i, ref) : Direct.gp_list_get_name(p, i, ref);
+			if (rc != Gphoto2Library.GP_OK) {
+				throw new IOException((values ? "gp_list_get_value" : "gp_list_get_name")
+						+ " failed with code " + rc);
+			}
+			Pointer s = ref.getPointer(0);
+			out[i] = s == null ? null : s.getString(0);
+		}
+		return out;
+	}
+}
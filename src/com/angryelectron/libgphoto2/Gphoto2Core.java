@@ -0,0 +1,469 @@
+/**
+ * Copyright 2012 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.libgphoto2;
+import com.sun.jna.Callback;
+import com.sun.jna.Library;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import java.nio.IntBuffer;
+/**
+ * The part of {@link Gphoto2Library} used by com.angryelectron.gphoto2.<br>
+ * Generated from Gphoto2Library.java by jnaerator/GenerateBinding.java; run
+ * <code>ant generate-binding</code> instead of editing it.
+ */
+public interface Gphoto2Core extends Library {
+	/**
+	 * Original signature : <code>int gp_abilities_list_detect(CameraAbilitiesList*, GPPortInfoList*, CameraList*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:690</i>
+	 */
+	int gp_abilities_list_detect(Gphoto2Library.CameraAbilitiesList list, Gphoto2Library.GPPortInfoList info_list, Gphoto2Library.CameraList l, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_abilities_list_get_abilities(CameraAbilitiesList*, int, CameraAbilities*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:698</i>
+	 */
+	int gp_abilities_list_get_abilities(Gphoto2Library.CameraAbilitiesList list, int index, CameraAbilities abilities);
+	/**
+	 * Original signature : <code>int gp_abilities_list_load(CameraAbilitiesList*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:686</i>
+	 */
+	int gp_abilities_list_load(Gphoto2Library.CameraAbilitiesList list, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_abilities_list_lookup_model(CameraAbilitiesList*, const char*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:696</i><br>
+	 * @deprecated use the safer methods {@link #gp_abilities_list_lookup_model(com.angryelectron.libgphoto2.Gphoto2Library.CameraAbilitiesList, java.lang.String)} and {@link #gp_abilities_list_lookup_model(com.angryelectron.libgphoto2.Gphoto2Library.CameraAbilitiesList, com.sun.jna.Pointer)} instead
+	 */
+	@Deprecated 
+	int gp_abilities_list_lookup_model(Gphoto2Library.CameraAbilitiesList list, Pointer model);
+	/**
+	 * Original signature : <code>int gp_abilities_list_lookup_model(CameraAbilitiesList*, const char*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:696</i>
+	 */
+	int gp_abilities_list_lookup_model(Gphoto2Library.CameraAbilitiesList list, String model);
+	/**
+	 * Original signature : <code>int gp_abilities_list_new(CameraAbilitiesList**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:682</i><br>
+	 * @deprecated use the safer method {@link #gp_abilities_list_new(com.angryelectron.libgphoto2.Gphoto2Library.CameraAbilitiesList[])} instead
+	 */
+	@Deprecated 
+	int gp_abilities_list_new(PointerByReference list);
+	/**
+	 * Original signature : <code>int gp_abilities_list_new(CameraAbilitiesList**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-abilities-list.h:682</i>
+	 */
+	int gp_abilities_list_new(Gphoto2Library.CameraAbilitiesList list[]);
+	/**
+	 * Original signature : <code>int gp_camera_capture(Camera*, CameraCaptureType, CameraFilePath*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1292</i>
+	 */
+	int gp_camera_capture(Camera camera, int type, CameraFilePath path, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_capture(Camera*, CameraCaptureType, CameraFilePath*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1292</i><br>
+	 * Fills caller-owned memory, to be read with {@link NativeField}.
+	 */
+	int gp_camera_capture(Camera camera, int type, Pointer path, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_exit(Camera*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1270</i>
+	 */
+	int gp_camera_exit(Camera camera, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_file_delete(Camera*, const char*, const char*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1326</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_file_delete(com.angryelectron.libgphoto2.Camera, java.lang.String, java.lang.String, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_file_delete(com.angryelectron.libgphoto2.Camera, com.sun.jna.Pointer, com.sun.jna.Pointer, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_file_delete(Camera camera, Pointer folder, Pointer file, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_file_delete(Camera*, const char*, const char*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1326</i>
+	 */
+	int gp_camera_file_delete(Camera camera, String folder, String file, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_file_get(Camera*, const char*, const char*, CameraFileType, CameraFile*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1324</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_file_get(com.angryelectron.libgphoto2.Camera, java.lang.String, java.lang.String, int, com.angryelectron.libgphoto2.Gphoto2Library.CameraFile, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_file_get(com.angryelectron.libgphoto2.Camera, com.sun.jna.Pointer, com.sun.jna.Pointer, int, com.angryelectron.libgphoto2.Gphoto2Library.CameraFile, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_file_get(Camera camera, Pointer folder, Pointer file, int type, Gphoto2Library.CameraFile camera_file, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_file_get(Camera*, const char*, const char*, CameraFileType, CameraFile*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1324</i>
+	 */
+	int gp_camera_file_get(Camera camera, String folder, String file, int type, Gphoto2Library.CameraFile camera_file, Gphoto2Library.GPContext context);
+	/**
+	 * \name Operations on files <br>
+	 * @{<br>
+	 * Original signature : <code>int gp_camera_file_get_info(Camera*, const char*, const char*, CameraFileInfo*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1320</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_file_get_info(com.angryelectron.libgphoto2.Camera, java.lang.String, java.lang.String, com.angryelectron.libgphoto2.CameraFileInfo, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_file_get_info(com.angryelectron.libgphoto2.Camera, com.sun.jna.Pointer, com.sun.jna.Pointer, com.angryelectron.libgphoto2.CameraFileInfo, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_file_get_info(Camera camera, Pointer folder, Pointer file, CameraFileInfo info, Gphoto2Library.GPContext context);
+	/**
+	 * \name Operations on files <br>
+	 * @{<br>
+	 * Original signature : <code>int gp_camera_file_get_info(Camera*, const char*, const char*, CameraFileInfo*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1320</i>
+	 */
+	int gp_camera_file_get_info(Camera camera, String folder, String file, CameraFileInfo info, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_file_get_info(Camera*, const char*, const char*, CameraFileInfo*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1320</i><br>
+	 * Fills caller-owned memory, to be read with {@link NativeField}.
+	 */
+	int gp_camera_file_get_info(Camera camera, String folder, String file, Pointer info, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_folder_delete_all(Camera*, const char*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1308</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_folder_delete_all(com.angryelectron.libgphoto2.Camera, java.lang.String, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_folder_delete_all(com.angryelectron.libgphoto2.Camera, com.sun.jna.Pointer, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_folder_delete_all(Camera camera, Pointer folder, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_folder_delete_all(Camera*, const char*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1308</i>
+	 */
+	int gp_camera_folder_delete_all(Camera camera, String folder, Gphoto2Library.GPContext context);
+	/**
+	 * \name Operations on folders <br>
+	 * @{<br>
+	 * Original signature : <code>int gp_camera_folder_list_files(Camera*, const char*, CameraList*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1304</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_folder_list_files(com.angryelectron.libgphoto2.Camera, java.lang.String, com.angryelectron.libgphoto2.Gphoto2Library.CameraList, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_folder_list_files(com.angryelectron.libgphoto2.Camera, com.sun.jna.Pointer, com.angryelectron.libgphoto2.Gphoto2Library.CameraList, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_folder_list_files(Camera camera, Pointer folder, Gphoto2Library.CameraList list, Gphoto2Library.GPContext context);
+	/**
+	 * \name Operations on folders <br>
+	 * @{<br>
+	 * Original signature : <code>int gp_camera_folder_list_files(Camera*, const char*, CameraList*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1304</i>
+	 */
+	int gp_camera_folder_list_files(Camera camera, String folder, Gphoto2Library.CameraList list, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_folder_list_folders(Camera*, const char*, CameraList*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1306</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_folder_list_folders(com.angryelectron.libgphoto2.Camera, java.lang.String, com.angryelectron.libgphoto2.Gphoto2Library.CameraList, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_folder_list_folders(com.angryelectron.libgphoto2.Camera, com.sun.jna.Pointer, com.angryelectron.libgphoto2.Gphoto2Library.CameraList, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_folder_list_folders(Camera camera, Pointer folder, Gphoto2Library.CameraList list, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_folder_list_folders(Camera*, const char*, CameraList*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1306</i>
+	 */
+	int gp_camera_folder_list_folders(Camera camera, String folder, Gphoto2Library.CameraList list, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_get_config(Camera*, CameraWidget**, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1282</i><br>
+	 * @deprecated use the safer method {@link #gp_camera_get_config(com.angryelectron.libgphoto2.Camera, com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget[], com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_get_config(Camera camera, PointerByReference window, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_get_config(Camera*, CameraWidget**, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1282</i>
+	 */
+	int gp_camera_get_config(Camera camera, Gphoto2Library.CameraWidget window[], Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_get_storageinfo(Camera*, CameraStorageInformation**, int*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1298</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_get_storageinfo(com.angryelectron.libgphoto2.Camera, com.sun.jna.ptr.PointerByReference, java.nio.IntBuffer, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_get_storageinfo(com.angryelectron.libgphoto2.Camera, com.sun.jna.ptr.PointerByReference, com.sun.jna.ptr.IntByReference, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_get_storageinfo(Camera camera, PointerByReference CameraStorageInformationPtrPtr1, IntByReference intPtr1, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_get_storageinfo(Camera*, CameraStorageInformation**, int*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1298</i>
+	 */
+	int gp_camera_get_storageinfo(Camera camera, PointerByReference CameraStorageInformationPtrPtr1, IntBuffer intPtr1, Gphoto2Library.GPContext context);
+	/**
+	 * \name Initialization <br>
+	 * @{<br>
+	 * Original signature : <code>int gp_camera_init(Camera*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1268</i>
+	 */
+	int gp_camera_init(Camera camera, Gphoto2Library.GPContext context);
+	/**
+	 * Create a new camera device.<br>
+	 * Original signature : <code>int gp_camera_new(Camera**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1240</i>
+	 */
+	int gp_camera_new(PointerByReference camera);
+	/**
+	 * \name Preparing initialization <br>
+	 * @{<br>
+	 * Original signature : <code>int gp_camera_set_abilities(Camera*, CameraAbilities)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1246</i>
+	 */
+	int gp_camera_set_abilities(Camera camera, CameraAbilities.ByValue abilities);
+	/**
+	 * Original signature : <code>int gp_camera_set_config(Camera*, CameraWidget*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1284</i>
+	 */
+	int gp_camera_set_config(Camera camera, Gphoto2Library.CameraWidget window, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_set_port_info(Camera*, GPPortInfo)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1250</i>
+	 */
+	int gp_camera_set_port_info(Camera camera, GPPortInfo.ByValue info);
+	/**
+	 * Original signature : <code>int gp_camera_trigger_capture(Camera*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1293</i>
+	 */
+	int gp_camera_trigger_capture(Camera camera, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_unref(Camera*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1278</i>
+	 */
+	int gp_camera_unref(Camera camera);
+	/**
+	 * Original signature : <code>int gp_camera_wait_for_event(Camera*, int, CameraEventType*, void**, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1296</i><br>
+	 * @deprecated use the safer methods {@link #gp_camera_wait_for_event(com.angryelectron.libgphoto2.Camera, int, java.nio.IntBuffer, com.sun.jna.ptr.PointerByReference, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} and {@link #gp_camera_wait_for_event(com.angryelectron.libgphoto2.Camera, int, com.sun.jna.ptr.IntByReference, com.sun.jna.ptr.PointerByReference, com.angryelectron.libgphoto2.Gphoto2Library.GPContext)} instead
+	 */
+	@Deprecated 
+	int gp_camera_wait_for_event(Camera camera, int timeout, IntByReference eventtype, PointerByReference eventdata, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_wait_for_event(Camera*, int, CameraEventType*, void**, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1296</i>
+	 */
+	int gp_camera_wait_for_event(Camera camera, int timeout, IntBuffer eventtype, PointerByReference eventdata, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>GPContext* gp_context_new()</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:468</i>
+	 */
+	Gphoto2Library.GPContext gp_context_new();
+	/**
+	 * Original signature : <code>void gp_context_set_error_func(GPContext*, GPContextErrorFunc, void*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:501</i>
+	 */
+	void gp_context_set_error_func(Gphoto2Library.GPContext context, Gphoto2Core.GPContextErrorFunc func, Pointer data);
+	/**
+	 * Original signature : <code>void gp_context_set_message_func(GPContext*, GPContextMessageFunc, void*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:509</i>
+	 */
+	void gp_context_set_message_func(Gphoto2Library.GPContext context, Gphoto2Core.GPContextMessageFunc func, Pointer data);
+	/**
+	 * Original signature : <code>void gp_context_unref(GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:472</i>
+	 */
+	void gp_context_unref(Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_file_free(CameraFile*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:398</i>
+	 */
+	int gp_file_free(Gphoto2Library.CameraFile file);
+	/**
+	 * Original signature : <code>int gp_file_get_data_and_size(CameraFile*, const char**, unsigned long*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:457</i><br>
+	 * @deprecated use the safer methods {@link #gp_file_get_data_and_size(com.angryelectron.libgphoto2.Gphoto2Library.CameraFile, java.lang.String[], com.sun.jna.ptr.NativeLongByReference)} and {@link #gp_file_get_data_and_size(com.angryelectron.libgphoto2.Gphoto2Library.CameraFile, com.sun.jna.ptr.PointerByReference, com.sun.jna.ptr.NativeLongByReference)} instead
+	 */
+	@Deprecated 
+	int gp_file_get_data_and_size(Gphoto2Library.CameraFile CameraFilePtr1, PointerByReference data, NativeLongByReference size);
+	/**
+	 * Original signature : <code>int gp_file_get_data_and_size(CameraFile*, const char**, unsigned long*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:457</i>
+	 */
+	int gp_file_get_data_and_size(Gphoto2Library.CameraFile CameraFilePtr1, String data[], NativeLongByReference size);
+	/**
+	 * Original signature : <code>int gp_file_new(CameraFile**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:390</i><br>
+	 * @deprecated use the safer method {@link #gp_file_new(com.angryelectron.libgphoto2.Gphoto2Library.CameraFile[])} instead
+	 */
+	@Deprecated 
+	int gp_file_new(PointerByReference file);
+	/**
+	 * Original signature : <code>int gp_file_new(CameraFile**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:390</i>
+	 */
+	int gp_file_new(Gphoto2Library.CameraFile file[]);
+	/**
+	 * Original signature : <code>int gp_file_save(CameraFile*, const char*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:425</i><br>
+	 * @deprecated use the safer methods {@link #gp_file_save(com.angryelectron.libgphoto2.Gphoto2Library.CameraFile, java.lang.String)} and {@link #gp_file_save(com.angryelectron.libgphoto2.Gphoto2Library.CameraFile, com.sun.jna.Pointer)} instead
+	 */
+	@Deprecated 
+	int gp_file_save(Gphoto2Library.CameraFile file, Pointer filename);
+	/**
+	 * Original signature : <code>int gp_file_save(CameraFile*, const char*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-file.h:425</i>
+	 */
+	int gp_file_save(Gphoto2Library.CameraFile file, String filename);
+	/**
+	 * Original signature : <code>int gp_list_free(CameraList*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-list.h:572</i>
+	 */
+	int gp_list_free(Gphoto2Library.CameraList list);
+	/**
+	 * Original signature : <code>int gp_list_new(CameraList**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-list.h:566</i><br>
+	 * @deprecated use the safer method {@link #gp_list_new(com.angryelectron.libgphoto2.Gphoto2Library.CameraList[])} instead
+	 */
+	@Deprecated 
+	int gp_list_new(PointerByReference list);
+	/**
+	 * Original signature : <code>int gp_list_new(CameraList**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-list.h:566</i>
+	 */
+	int gp_list_new(Gphoto2Library.CameraList list[]);
+	/**
+	 * Original signature : <code>int gp_port_info_list_get_info(GPPortInfoList*, int, GPPortInfo*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-port-info-list.h:48</i>
+	 */
+	int gp_port_info_list_get_info(Gphoto2Library.GPPortInfoList list, int n, GPPortInfo info);
+	/**
+	 * Original signature : <code>int gp_port_info_list_load(GPPortInfoList*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-port-info-list.h:40</i>
+	 */
+	int gp_port_info_list_load(Gphoto2Library.GPPortInfoList list);
+	/**
+	 * Original signature : <code>int gp_port_info_list_lookup_path(GPPortInfoList*, const char*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-port-info-list.h:44</i><br>
+	 * @deprecated use the safer methods {@link #gp_port_info_list_lookup_path(com.angryelectron.libgphoto2.Gphoto2Library.GPPortInfoList, java.lang.String)} and {@link #gp_port_info_list_lookup_path(com.angryelectron.libgphoto2.Gphoto2Library.GPPortInfoList, com.sun.jna.Pointer)} instead
+	 */
+	@Deprecated 
+	int gp_port_info_list_lookup_path(Gphoto2Library.GPPortInfoList list, Pointer path);
+	/**
+	 * Original signature : <code>int gp_port_info_list_lookup_path(GPPortInfoList*, const char*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-port-info-list.h:44</i>
+	 */
+	int gp_port_info_list_lookup_path(Gphoto2Library.GPPortInfoList list, String path);
+	/**
+	 * Original signature : <code>int gp_port_info_list_new(GPPortInfoList**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-port-info-list.h:34</i><br>
+	 * @deprecated use the safer method {@link #gp_port_info_list_new(com.angryelectron.libgphoto2.Gphoto2Library.GPPortInfoList[])} instead
+	 */
+	@Deprecated 
+	int gp_port_info_list_new(PointerByReference list);
+	/**
+	 * Original signature : <code>int gp_port_info_list_new(GPPortInfoList**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-port-info-list.h:34</i>
+	 */
+	int gp_port_info_list_new(Gphoto2Library.GPPortInfoList list[]);
+	/**
+	 * Original signature : <code>int gp_widget_count_children(CameraWidget*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:758</i>
+	 */
+	int gp_widget_count_children(Gphoto2Library.CameraWidget widget);
+	/**
+	 * Original signature : <code>int gp_widget_count_choices(CameraWidget*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:799</i>
+	 */
+	int gp_widget_count_choices(Gphoto2Library.CameraWidget widget);
+	/**
+	 * Original signature : <code>int gp_widget_free(CameraWidget*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:748</i>
+	 */
+	int gp_widget_free(Gphoto2Library.CameraWidget widget);
+	/**
+	 * Original signature : <code>int gp_widget_get_child(CameraWidget*, int, CameraWidget**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:760</i><br>
+	 * @deprecated use the safer method {@link #gp_widget_get_child(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, int, com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget[])} instead
+	 */
+	@Deprecated 
+	int gp_widget_get_child(Gphoto2Library.CameraWidget widget, int child_number, PointerByReference child);
+	/**
+	 * Original signature : <code>int gp_widget_get_child(CameraWidget*, int, CameraWidget**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:760</i>
+	 */
+	int gp_widget_get_child(Gphoto2Library.CameraWidget widget, int child_number, Gphoto2Library.CameraWidget child[]);
+	/**
+	 * Original signature : <code>int gp_widget_get_child_by_name(CameraWidget*, const char*, CameraWidget**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:769</i><br>
+	 * @deprecated use the safer methods {@link #gp_widget_get_child_by_name(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, java.lang.String, com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget[])} and {@link #gp_widget_get_child_by_name(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, com.sun.jna.Pointer, com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget[])} instead
+	 */
+	@Deprecated 
+	int gp_widget_get_child_by_name(Gphoto2Library.CameraWidget widget, Pointer name, PointerByReference child);
+	/**
+	 * Original signature : <code>int gp_widget_get_child_by_name(CameraWidget*, const char*, CameraWidget**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:769</i>
+	 */
+	int gp_widget_get_child_by_name(Gphoto2Library.CameraWidget widget, String name, Gphoto2Library.CameraWidget child[]);
+	/**
+	 * Original signature : <code>int gp_widget_get_child_by_name(CameraWidget*, const char*, CameraWidget**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:769</i>
+	 */
+	int gp_widget_get_child_by_name(Gphoto2Library.CameraWidget widget, Pointer name, Gphoto2Library.CameraWidget child[]);
+	/**
+	 * Original signature : <code>int gp_widget_get_choice(CameraWidget*, int, const char**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:801</i><br>
+	 * @deprecated use the safer methods {@link #gp_widget_get_choice(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, int, java.lang.String[])} and {@link #gp_widget_get_choice(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, int, com.sun.jna.ptr.PointerByReference)} instead
+	 */
+	@Deprecated 
+	int gp_widget_get_choice(Gphoto2Library.CameraWidget widget, int choice_number, PointerByReference choice);
+	/**
+	 * Original signature : <code>int gp_widget_get_choice(CameraWidget*, int, const char**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:801</i>
+	 */
+	int gp_widget_get_choice(Gphoto2Library.CameraWidget widget, int choice_number, String choice[]);
+	/**
+	 * Original signature : <code>int gp_widget_get_name(CameraWidget*, const char**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:781</i><br>
+	 * @deprecated use the safer methods {@link #gp_widget_get_name(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, java.lang.String[])} and {@link #gp_widget_get_name(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, com.sun.jna.ptr.PointerByReference)} instead
+	 */
+	@Deprecated 
+	int gp_widget_get_name(Gphoto2Library.CameraWidget widget, PointerByReference name);
+	/**
+	 * Original signature : <code>int gp_widget_get_name(CameraWidget*, const char**)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:781</i>
+	 */
+	int gp_widget_get_name(Gphoto2Library.CameraWidget widget, String name[]);
+	/**
+	 * Original signature : <code>int gp_widget_get_readonly(CameraWidget*, int*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:809</i><br>
+	 * @deprecated use the safer methods {@link #gp_widget_get_readonly(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, java.nio.IntBuffer)} and {@link #gp_widget_get_readonly(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, com.sun.jna.ptr.IntByReference)} instead
+	 */
+	@Deprecated 
+	int gp_widget_get_readonly(Gphoto2Library.CameraWidget widget, IntByReference readonly);
+	/**
+	 * Original signature : <code>int gp_widget_get_readonly(CameraWidget*, int*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:809</i>
+	 */
+	int gp_widget_get_readonly(Gphoto2Library.CameraWidget widget, IntBuffer readonly);
+	/**
+	 * Original signature : <code>int gp_widget_get_type(CameraWidget*, CameraWidgetType*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:789</i><br>
+	 * @deprecated use the safer methods {@link #gp_widget_get_type(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, java.nio.IntBuffer)} and {@link #gp_widget_get_type(com.angryelectron.libgphoto2.Gphoto2Library.CameraWidget, com.sun.jna.ptr.IntByReference)} instead
+	 */
+	@Deprecated 
+	int gp_widget_get_type(Gphoto2Library.CameraWidget widget, IntByReference type);
+	/**
+	 * Original signature : <code>int gp_widget_get_type(CameraWidget*, CameraWidgetType*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:789</i>
+	 */
+	int gp_widget_get_type(Gphoto2Library.CameraWidget widget, IntBuffer type);
+	int gp_widget_get_value(Gphoto2Library.CameraWidget widget, Pointer value);
+	/**
+	 * Original signature : <code>int gp_widget_set_value(CameraWidget*, const void*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-widget.h:775</i>
+	 */
+	int gp_widget_set_value(Gphoto2Library.CameraWidget widget, Pointer value);
+	/// <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:485</i>
+	/// <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:485</i>
+	public interface GPContextErrorFunc extends Callback {
+		void apply(Gphoto2Library.GPContext context, Pointer format, Gphoto2Library.va_list args, Pointer data);
+	};
+	/// <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:487</i>
+	/// <i>native declaration : /usr/include/gphoto2/gphoto2-context.h:487</i>
+	public interface GPContextMessageFunc extends Callback {
+		void apply(Gphoto2Library.GPContext context, Pointer format, Gphoto2Library.va_list args, Pointer data);
+	};
+}
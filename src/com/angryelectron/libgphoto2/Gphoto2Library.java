@@ -3019,6 +3019,17 @@ public interface Gphoto2Library extends Library {
 	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1292</i>
 	 */
 	int gp_camera_capture(Camera camera, int type, CameraFilePath path, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_capture(Camera*, CameraCaptureType, CameraFilePath*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1292</i><br>
+	 * Fills caller-owned memory, to be read with {@link NativeField}.
+	 */
+	int gp_camera_capture(Camera camera, int type, Pointer path, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_trigger_capture(Camera*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1293</i>
+	 */
+	int gp_camera_trigger_capture(Camera camera, Gphoto2Library.GPContext context);
 	/**
 	 * Original signature : <code>int gp_camera_capture_preview(Camera*, CameraFile*, GPContext*)</code><br>
 	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1294</i>
@@ -3140,6 +3151,12 @@ public interface Gphoto2Library extends Library {
 	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1320</i>
 	 */
 	int gp_camera_file_get_info(Camera camera, String folder, String file, CameraFileInfo info, Gphoto2Library.GPContext context);
+	/**
+	 * Original signature : <code>int gp_camera_file_get_info(Camera*, const char*, const char*, CameraFileInfo*, GPContext*)</code><br>
+	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1320</i><br>
+	 * Fills caller-owned memory, to be read with {@link NativeField}.
+	 */
+	int gp_camera_file_get_info(Camera camera, String folder, String file, Pointer info, Gphoto2Library.GPContext context);
 	/**
 	 * Original signature : <code>int gp_camera_file_set_info(Camera*, const char*, const char*, CameraFileInfo, GPContext*)</code><br>
 	 * <i>native declaration : /usr/include/gphoto2/gphoto2-camera.h:1322</i><br>
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.libgphoto2;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/*
+ * The few C library functions needed to manage memory handed back by 
+ * libgphoto2, such as event data from gp_camera_wait_for_event().
+ */
+public interface LibC extends Library {
+	public static final LibC INSTANCE = (LibC)Native.loadLibrary("c", LibC.class);
+	/**
+	 * Original signature : <code>void free(void*)</code>
+	 */
+	void free(Pointer ptr);
+}
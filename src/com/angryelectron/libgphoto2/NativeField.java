@@ -0,0 +1,156 @@
+/**
+ * Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.angryelectron.libgphoto2;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.PointerType;
+import com.sun.jna.Structure;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+
+/*
+ * One field of a libgphoto2 structure, read straight from native memory.
+ * Structure.read() copies every field by reflection, including the large
+ * char arrays, every time; a NativeField reads just the field asked for,
+ * and strings stop at the first NUL. The offset is worked out once, from
+ * the same layout JNA uses for the Structure class, so keep instances in
+ * static fields.
+ *
+ *   static final NativeField NAME = NativeField.of(CameraFilePath.class, "name");
+ *   String name = NAME.getString(pointer);
+ */
+public final class NativeField {
+
+	private final long offset;
+	private final int size;
+	private final Class<?> type;
+
+	private NativeField(long offset, int size, Class<?> type) {
+		this.offset = offset;
+		this.size = size;
+		this.type = type;
+	}
+
+	/**
+	 * @param struct Structure class, which must have a public no-argument constructor.
+	 * @param path Field name, preceded by the names of any nested structures,
+	 * for example ("file", "size") in CameraFileInfo.
+	 * @throws IllegalArgumentException if a field doesn't exist.
+	 */
+	public static NativeField of(Class<? extends Structure> struct, String... path) {
+		try {
+			Structure s = struct.getDeclaredConstructor().newInstance();
+			long base = Pointer.nativeValue(s.getPointer());
+			for (int i = 0; i < path.length - 1; i++) {
+				s = (Structure) struct.getField(path[i]).get(s);
+				struct = s.getClass();
+			}
+			String name = path[path.length - 1];
+			Field f = struct.getField(name);
+			long offset = Pointer.nativeValue(s.getPointer()) - base + find(s, name);
+			Class<?> type = f.getType();
+			int size;
+			if (type == byte[].class) {
+				size = Array.getLength(f.get(s));
+			} else if (type == int.class) {
+				size = 4;
+			} else if (type == NativeLong.class) {
+				size = NativeLong.SIZE;
+			} else if (PointerType.class.isAssignableFrom(type)) {
+				size = Pointer.SIZE;
+			} else {
+				throw new IllegalArgumentException("Unsupported field type " + type);
+			}
+			return new NativeField(offset, size, type);
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalArgumentException("No field " + Arrays.toString(path) + " in " + struct, ex);
+		}
+	}
+
+	/*
+	 * Offset of a field within a structure, taken from the layout JNA worked
+	 * out for it. The layout isn't public in this JNA version, so it is read
+	 * reflectively, once per field.
+	 */
+	private static int find(Structure s, String name) throws ReflectiveOperationException {
+		Method fields = Structure.class.getDeclaredMethod("fields");
+		fields.setAccessible(true);
+		Object field = ((Map<?, ?>) fields.invoke(s)).get(name);
+		if (field == null) {
+			throw new NoSuchFieldException(name);
+		}
+		Field offset = field.getClass().getField("offset");
+		offset.setAccessible(true);
+		return offset.getInt(field);
+	}
+
+	/**
+	 * @return Offset of the field from the start of the outermost structure.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Size of the field in bytes.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Read an int field.
+	 */
+	public int getInt(Pointer p) {
+		return p.getInt(offset);
+	}
+
+	/**
+	 * Read an int, long or time_t field, widened to a Java long.
+	 */
+	public long getLong(Pointer p) {
+		return size == 8 ? p.getLong(offset) : p.getInt(offset);
+	}
+
+	/**
+	 * Read a char[] field, up to the first NUL.
+	 */
+	public String getString(Pointer p) {
+		long end = p.indexOf(offset, (byte) 0);
+		if (end >= 0 && end < size) {
+			return p.getString(offset);
+		}
+		return Native.toString(p.getByteArray(offset, size));
+	}
+
+	/**
+	 * @return Memory big enough for a structure, to be reused between calls.
+	 */
+	public static Memory allocate(Class<? extends Structure> struct) {
+		try {
+			return new Memory(struct.getDeclaredConstructor().newInstance().size());
+		} catch (ReflectiveOperationException ex) {
+			throw new IllegalArgumentException(ex);
+		}
+	}
+}
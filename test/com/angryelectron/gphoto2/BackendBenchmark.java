@@ -0,0 +1,128 @@
+/**
+ * BackendBenchmark Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFile;
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFileType;
+import com.angryelectron.libgphoto2.LibC;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Compares the proxy and direct-mapped backends. Not a unit test: run it
+ * by hand after <code>ant compile-test</code>:
+ * <pre>
+ * java -cp build/classes:build/test/classes:lib/jna.jar com.angryelectron.gphoto2.BackendBenchmark
+ * </pre>
+ * Call overhead is measured without a camera. If a camera is attached,
+ * event polling and downloads of the first file on the card are measured
+ * too, downloading both into a byte[] and straight into a channel.
+ */
+public class BackendBenchmark {
+
+    private static final int CALLS = 1000000;
+    private static final int EVENTS = 2000;
+    private static final int DOWNLOADS = 20;
+
+    public static void main(String[] args) throws IOException {
+        Backend[] backends = {Backend.proxy(), Backend.direct()};
+        System.out.println("gp_file_new + gp_file_free, ns per pair:");
+        for (int round = 0; round < 3; round++) {
+            for (Backend b : backends) {
+                System.out.printf("  %-6s %8.1f%n", b.getName(), fileNewFree(b));
+            }
+        }
+
+        GPhoto2 camera = new GPhoto2();
+        try {
+            camera.open();
+        } catch (IOException ex) {
+            System.out.println("No camera: " + ex.getMessage());
+            return;
+        }
+        try {
+            List<CameraFileEntry> files = camera.getTree().getAllFiles();
+            System.out.println("gp_camera_wait_for_event(0), us per call:");
+            for (Backend b : backends) {
+                camera.backend = b;
+                System.out.printf("  %-6s %8.1f%n", b.getName(), pollEvents(camera));
+            }
+            if (files.isEmpty()) {
+                System.out.println("No files on the camera to download.");
+                return;
+            }
+            CameraFileEntry f = files.get(0);
+            System.out.println("Download " + f + ", ms per file (byte[] / channel):");
+            for (Backend b : backends) {
+                camera.backend = b;
+                System.out.printf("  %-6s %8.2f %8.2f%n", b.getName(), downloadArray(camera, f),
+                        downloadChannel(camera, f));
+            }
+        } finally {
+            camera.close();
+        }
+    }
+
+    private static double fileNewFree(Backend b) {
+        PointerByReference ref = new PointerByReference();
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            b.gp_file_new(ref);
+            b.gp_file_free(new CameraFile(ref.getValue()));
+        }
+        return (System.nanoTime() - start) / (double) CALLS;
+    }
+
+    private static double pollEvents(GPhoto2 camera) {
+        IntByReference type = new IntByReference();
+        PointerByReference data = new PointerByReference();
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            camera.backend.gp_camera_wait_for_event(camera.camera, 0, type, data, camera.context);
+            if (data.getValue() != null) {
+                LibC.INSTANCE.free(data.getValue());
+                data.setValue(null);
+            }
+        }
+        return (System.nanoTime() - start) / 1e3 / EVENTS;
+    }
+
+    private static double downloadArray(GPhoto2 camera, CameraFileEntry f) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < DOWNLOADS; i++) {
+            camera.download(f.getFolder(), f.getName(), CameraFileType.GP_FILE_TYPE_NORMAL);
+        }
+        return (System.nanoTime() - start) / 1e6 / DOWNLOADS;
+    }
+
+    private static double downloadChannel(GPhoto2 camera, CameraFileEntry f) throws IOException {
+        try (FileChannel out = new FileOutputStream("/dev/null").getChannel()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < DOWNLOADS; i++) {
+                camera.download(f.getFolder(), f.getName(), out);
+            }
+            return (System.nanoTime() - start) / 1e6 / DOWNLOADS;
+        }
+    }
+}
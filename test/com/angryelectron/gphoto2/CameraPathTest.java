@@ -0,0 +1,75 @@
+/**
+ * CameraPath Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.net.URI;
+import java.nio.file.Path;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Path handling doesn't touch the camera, so these tests can always run.
+ */
+public class CameraPathTest {
+
+    private final CameraFileSystem fs = new CameraFileSystem(new CameraFileSystemProvider(), "test", null);
+
+    @Test
+    public void testNames() {
+        Path p = fs.getPath("/store_00010001//DCIM/100CANON/", "IMG_0001.JPG");
+        assertEquals("/store_00010001/DCIM/100CANON/IMG_0001.JPG", p.toString());
+        assertEquals(4, p.getNameCount());
+        assertEquals("IMG_0001.JPG", p.getFileName().toString());
+        assertEquals("/store_00010001/DCIM/100CANON", p.getParent().toString());
+        assertEquals("/store_00010001/DCIM/100CANON", ((CameraPath) p).getFolder());
+        assertEquals("DCIM/100CANON", p.subpath(1, 3).toString());
+        assertEquals("/", p.getRoot().toString());
+        assertNull(fs.getPath("/").getFileName());
+        assertNull(fs.getPath("/").getParent());
+    }
+
+    @Test
+    public void testResolve() {
+        Path dir = fs.getPath("/store_00010001/DCIM");
+        Path file = dir.resolve("100CANON/IMG_0001.JPG");
+        assertEquals("/store_00010001/DCIM/100CANON/IMG_0001.JPG", file.toString());
+        assertEquals(fs.getPath("100CANON/IMG_0001.JPG"), dir.relativize(file));
+        assertEquals(dir, dir.resolve("100CANON/../.").normalize());
+        assertEquals("/IMG_0001.JPG", fs.getPath("/").resolve("IMG_0001.JPG").toString());
+        assertTrue(file.startsWith(dir));
+        assertTrue(file.endsWith("100CANON/IMG_0001.JPG"));
+        assertFalse(file.startsWith("DCIM"));
+    }
+
+    @Test
+    public void testUri() {
+        URI uri = fs.getPath("/DCIM/IMG_0001.JPG").toUri();
+        assertEquals("gphoto2://test/DCIM/IMG_0001.JPG", uri.toString());
+    }
+
+    @Test
+    public void testMatcher() {
+        assertTrue(fs.getPathMatcher("glob:**.JPG").matches(fs.getPath("/DCIM/IMG_0001.JPG")));
+        assertFalse(fs.getPathMatcher("glob:**.CR2").matches(fs.getPath("/DCIM/IMG_0001.JPG")));
+    }
+}
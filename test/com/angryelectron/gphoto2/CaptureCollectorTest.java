@@ -0,0 +1,131 @@
+/**
+ * CaptureCollectorTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Events come from a queue instead of a camera, so these tests run without
+ * hardware.
+ */
+public class CaptureCollectorTest {
+
+    private static class FakeCamera implements CaptureCollector.Source {
+
+        final BlockingQueue<CameraFileEntry> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public String getName() {
+            return "fake";
+        }
+
+        @Override
+        public int getCaptureTimeout() {
+            return 2000;
+        }
+
+        @Override
+        public CameraFileEntry waitForFile(int timeout) throws IOException {
+            try {
+                return events.poll(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        @Override
+        public File saveImage(CameraFileEntry path, boolean delete) throws IOException {
+            return new File(path.getName());
+        }
+
+        @Override
+        public void captured(long latency) {
+        }
+    }
+
+    private static void await(PendingCapture capture, int files) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (capture.getFiles().size() < files && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testRawPlusJpeg() throws Exception {
+        FakeCamera camera = new FakeCamera();
+        CaptureCollector collector = new CaptureCollector(camera);
+        PendingCapture capture = new PendingCapture(1, false);
+        collector.add(capture);
+        camera.events.add(new CameraFileEntry("/store_00010001/DCIM/100CANON", "IMG_0001.JPG", 0, 0));
+        assertEquals("IMG_0001.JPG", capture.get(2, TimeUnit.SECONDS).getName());
+        assertEquals(0, collector.size());
+
+        /*
+         * The second file arrives after nothing is pending any more.
+         */
+        Thread.sleep(300);
+        camera.events.add(new CameraFileEntry("/store_00010001/DCIM/100CANON", "IMG_0001.CR2", 0, 0));
+        await(capture, 2);
+        assertEquals(2, capture.getFiles().size());
+        assertEquals("IMG_0001.CR2", capture.getFiles().get(1).getName());
+    }
+
+    @Test
+    public void testUnrelatedFile() throws Exception {
+        FakeCamera camera = new FakeCamera();
+        CaptureCollector collector = new CaptureCollector(camera);
+        PendingCapture first = new PendingCapture(1, false);
+        PendingCapture second = new PendingCapture(2, false);
+        collector.add(first);
+        collector.add(second);
+        camera.events.add(new CameraFileEntry("/DCIM/100CANON", "IMG_0001.JPG", 0, 0));
+        camera.events.add(new CameraFileEntry("/DCIM/100CANON", "IMG_0002.JPG", 0, 0));
+        assertEquals("IMG_0001.JPG", first.get(2, TimeUnit.SECONDS).getName());
+        assertEquals("IMG_0002.JPG", second.get(2, TimeUnit.SECONDS).getName());
+        assertEquals(1, first.getFiles().size());
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        FakeCamera camera = new FakeCamera() {
+            @Override
+            public int getCaptureTimeout() {
+                return 200;
+            }
+        };
+        CaptureCollector collector = new CaptureCollector(camera);
+        PendingCapture capture = new PendingCapture(1, false);
+        collector.add(capture);
+        try {
+            capture.get(2, TimeUnit.SECONDS);
+            throw new AssertionError("Expected IOException.");
+        } catch (IOException ex) {
+            assertEquals(0, collector.size());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * ConfigSnapshotTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraWidgetType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Snapshots are built directly here, so these tests don't need a camera.
+ */
+public class ConfigSnapshotTest {
+
+    private static ConfigSnapshot camera(String serial, String iso, float zoom) {
+        // add out of path order, as a widget walk would
+        return new ConfigSnapshot.Builder(1000)
+                .add("/main/status/serialnumber", CameraWidgetType.GP_WIDGET_TEXT, true, 0, serial)
+                .add("/main/imgsettings/iso", CameraWidgetType.GP_WIDGET_RADIO, false, 0, iso)
+                .add("/main/capturesettings/zoom", CameraWidgetType.GP_WIDGET_RANGE, false, zoom, null)
+                .add("/main/settings/datetime", CameraWidgetType.GP_WIDGET_DATE, false, 1420070400, null)
+                .add("/main/settings/capture", CameraWidgetType.GP_WIDGET_TOGGLE, false, 1, null)
+                .build();
+    }
+
+    @Test
+    public void testValues() {
+        ConfigSnapshot s = camera("A1", "400", 2.5f);
+        assertEquals(5, s.size());
+        assertEquals("400", s.getValue("iso"));
+        assertEquals("400", s.getValue("/main/imgsettings/iso"));
+        assertEquals("2.5", s.getValue("zoom"));
+        assertEquals("1420070400000", s.getValue("datetime"));
+        assertEquals("1", s.getValue("capture"));
+        assertNull(s.getValue("shutterspeed"));
+        assertEquals(1000, s.getTime());
+    }
+
+    @Test
+    public void testDiff() {
+        ConfigSnapshot a = camera("A1", "400", 2.5f);
+        ConfigSnapshot b = camera("B2", "800", 2.5f);
+        assertTrue(a.diff(camera("A1", "400", 2.5f)).isEmpty());
+        ConfigSnapshot.Diff d = a.diff(b);
+        assertEquals(2, d.size());
+        d = d.without("serialnumber");
+        assertEquals(1, d.size());
+        assertEquals("/main/imgsettings/iso", d.getPath(0));
+        assertEquals("400", d.getFrom(0));
+        assertEquals("800", d.getTo(0));
+
+        ConfigSnapshot c = new ConfigSnapshot.Builder(0)
+                .add("/main/imgsettings/iso", CameraWidgetType.GP_WIDGET_RADIO, false, 0, "400")
+                .build();
+        d = a.diff(c);
+        assertEquals(4, d.size());
+        for (int i = 0; i < d.size(); i++) {
+            assertNull(d.getTo(i));
+        }
+        assertEquals(4, c.diff(a).size());
+    }
+
+    @Test
+    public void testSerialize() throws IOException {
+        ConfigSnapshot a = camera("A1", "400", 2.5f);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        a.write(new DataOutputStream(bytes));
+        ConfigSnapshot b = ConfigSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertTrue(a.diff(b).isEmpty());
+        assertEquals(a.getTime(), b.getTime());
+        assertTrue(b.isReadOnly(indexOf(b, "/main/status/serialnumber")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws IOException {
+        ConfigSnapshot.read(new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadReference() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x47504353);
+        out.writeByte(1);
+        out.writeLong(0);
+        out.writeByte(1); // one string
+        out.writeUTF("/main/imgsettings/iso");
+        out.writeByte(1); // one setting
+        out.writeByte(5); // path reference past the table
+        ConfigSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNegativeCount() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x47504353);
+        out.writeByte(1);
+        out.writeLong(0);
+        out.write(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}); // -1
+        ConfigSnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static int indexOf(ConfigSnapshot s, String path) {
+        for (int i = 0; i < s.size(); i++) {
+            if (s.getPath(i).equals(path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * DownloadSinkTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Buffers are written directly here, so these tests don't need a camera.
+ */
+public class DownloadSinkTest {
+
+    private static File directory() throws IOException {
+        File dir = Files.createTempDirectory("sink").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static long write(DownloadSink sink, File dir, int i) throws IOException {
+        File f = new File(dir, "IMG_" + i + ".JPG");
+        f.deleteOnExit();
+        return sink.write(ByteBuffer.wrap(new byte[]{(byte) i, 1, 2, 3}), f);
+    }
+
+    @Test
+    public void testPerFile() throws IOException {
+        File dir = directory();
+        DownloadSink sink = new DownloadSink(DownloadSink.Durability.PER_FILE);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(4, write(sink, dir, i));
+        }
+        assertEquals(3, sink.getFlushes());
+        assertEquals(3, sink.getFlushTime().getCount());
+        assertEquals(0, sink.getPending());
+        assertArrayEquals(new byte[]{2, 1, 2, 3}, Files.readAllBytes(new File(dir, "IMG_2.JPG").toPath()));
+        sink.close();
+    }
+
+    @Test
+    public void testGroupByCount() throws IOException {
+        File dir = directory();
+        DownloadSink sink = new DownloadSink(DownloadSink.Durability.GROUP);
+        sink.setGroupCommit(4, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 10; i++) {
+            write(sink, dir, i);
+        }
+        assertEquals(2, sink.getFlushes());
+        assertEquals(2, sink.getPending());
+        sink.close();
+        assertEquals(3, sink.getFlushes());
+        assertEquals(0, sink.getPending());
+        assertEquals(10, sink.getFiles());
+        assertEquals(40, sink.getBytes());
+    }
+
+    @Test
+    public void testGroupByTime() throws IOException, InterruptedException {
+        File dir = directory();
+        DownloadSink sink = new DownloadSink(DownloadSink.Durability.GROUP);
+        sink.setGroupCommit(100, 20, TimeUnit.MILLISECONDS);
+        write(sink, dir, 0);
+        write(sink, dir, 1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sink.getFlushes() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, sink.getPending());
+        assertTrue(sink.getFlushes() >= 1);
+        sink.close();
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        File dir = directory();
+        DownloadSink sink = new DownloadSink(DownloadSink.Durability.NONE);
+        write(sink, dir, 0);
+        sink.close();
+        assertEquals(0, sink.getFlushes());
+        assertEquals(1, sink.getFiles());
+    }
+
+    @Test
+    public void testSyncBeforeDelete() throws IOException {
+        File dir = directory();
+        DownloadSink none = new DownloadSink(DownloadSink.Durability.NONE);
+        write(none, dir, 0);
+        none.sync(new File(dir, "IMG_0.JPG"));
+        assertEquals(1, none.getFlushes());
+
+        DownloadSink group = new DownloadSink(DownloadSink.Durability.GROUP);
+        group.setGroupCommit(100, 1, TimeUnit.HOURS);
+        write(group, dir, 1);
+        write(group, dir, 2);
+        group.sync(new File(dir, "IMG_2.JPG"));
+        assertEquals(0, group.getPending());
+        assertEquals(1, group.getFlushes());
+        group.close();
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * IngestJournalTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Journals are written to temporary files, so these tests don't need a
+ * camera.
+ */
+public class IngestJournalTest {
+
+    private static final CameraFileEntry A = new CameraFileEntry("/DCIM/100", "IMG_0001.JPG", 100, 1);
+    private static final CameraFileEntry B = new CameraFileEntry("/DCIM/100", "IMG_0002.JPG", 200, 2);
+    private static final CameraFileEntry C = new CameraFileEntry("/DCIM/101", "IMG_0003.JPG", 300, 3);
+
+    private static File journalFile() throws IOException {
+        File f = File.createTempFile("ingest", ".journal");
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        File f = journalFile();
+        IngestJournal journal = IngestJournal.open(f);
+        journal.listed(A);
+        journal.listed(B);
+        journal.listed(C);
+        journal.listed(A);
+        journal.listingComplete();
+        journal.downloading(A, new File("/tmp/a.jpg"));
+        journal.durable(A, new File("/tmp/a.jpg"), 100);
+        journal.deleted(A);
+        journal.downloading(B, new File("/tmp/b.jpg"));
+        journal.close();
+
+        journal = IngestJournal.open(f);
+        assertTrue(journal.isListingComplete());
+        assertEquals(3, journal.getEntries().size());
+        assertEquals(IngestJournal.State.DELETED, journal.get(A).getState());
+        assertEquals(IngestJournal.State.DOWNLOADING, journal.get(B).getState());
+        assertEquals(new File("/tmp/b.jpg"), journal.get(B).getLocal());
+        assertEquals(IngestJournal.State.LISTED, journal.get(C).getState());
+        assertNull(journal.get(new CameraFileEntry("/", "missing", 0, 0)));
+        List<IngestJournal.Entry> pending = journal.getPending();
+        assertEquals(2, pending.size());
+        assertEquals(B, pending.get(0).getFile());
+        journal.close();
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        File f = journalFile();
+        IngestJournal journal = IngestJournal.open(f);
+        journal.sync(journal.listed(A));
+        long good = f.length();
+        journal.sync(journal.durable(A, new File("/tmp/a.jpg"), 100));
+        journal.close();
+
+        // lose the end of the last frame, as a crash during a write would
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(f.length() - 3);
+        }
+        journal = IngestJournal.open(f);
+        assertEquals(good, f.length());
+        assertEquals(IngestJournal.State.LISTED, journal.get(A).getState());
+        assertFalse(journal.isListingComplete());
+
+        // the journal carries on from the last good frame
+        journal.sync(journal.listed(B));
+        journal.close();
+        journal = IngestJournal.open(f);
+        assertEquals(2, journal.getEntries().size());
+        journal.close();
+    }
+
+    @Test
+    public void testGroupCommit() throws IOException {
+        IngestJournal journal = IngestJournal.open(journalFile());
+        long sequence = 0;
+        for (int i = 0; i < 100; i++) {
+            sequence = journal.listed(new CameraFileEntry("/", "IMG_" + i, i, i));
+        }
+        journal.sync(sequence);
+        journal.sync(sequence);
+        assertTrue(journal.getCommits() <= 2);
+        journal.close();
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        File f = journalFile();
+        IngestJournal journal = IngestJournal.open(f);
+        journal.listed(A);
+        journal.listed(B);
+        journal.listed(C);
+        journal.listingComplete();
+        journal.durable(A, new File("/tmp/a.jpg"), 100);
+        journal.deleted(A);
+        journal.durable(B, new File("/tmp/b.jpg"), 200);
+        journal.compact();
+        journal.deleted(B);
+        journal.close();
+
+        journal = IngestJournal.open(f);
+        assertTrue(journal.isListingComplete());
+        assertEquals(2, journal.getEntries().size());
+        assertEquals(IngestJournal.State.DELETED, journal.get(B).getState());
+        IngestJournal.Entry c = journal.get(C);
+        assertEquals(IngestJournal.State.LISTED, c.getState());
+        assertEquals(300, c.getFile().getSize());
+        journal.close();
+    }
+
+    @Test
+    public void testRunComplete() throws IOException {
+        File f = journalFile();
+        IngestJournal journal = IngestJournal.open(f);
+        journal.listed(A);
+        journal.listingComplete();
+        journal.close();
+
+        // interrupted: carry on without listing
+        journal = IngestJournal.open(f);
+        assertTrue(journal.isListingComplete());
+        journal.runComplete();
+        journal.compact();
+        journal.close();
+
+        // finished: list again
+        journal = IngestJournal.open(f);
+        assertFalse(journal.isListingComplete());
+        assertEquals(1, journal.getEntries().size());
+        journal.close();
+    }
+
+    @Test
+    public void testReusedName() throws IOException {
+        File f = journalFile();
+        IngestJournal journal = IngestJournal.open(f);
+        journal.listed(A);
+        journal.durable(A, new File("/tmp/a.jpg"), 100);
+        journal.deleted(A);
+        CameraFileEntry again = new CameraFileEntry(A.getFolder(), A.getName(), 150, 9);
+        journal.listed(again);
+        journal.close();
+
+        journal = IngestJournal.open(f);
+        assertEquals(2, journal.getEntries().size());
+        assertEquals(IngestJournal.State.DELETED, journal.get(A).getState());
+        assertEquals(IngestJournal.State.LISTED, journal.get(again).getState());
+        assertEquals(1, journal.getPending().size());
+        journal.close();
+    }
+}
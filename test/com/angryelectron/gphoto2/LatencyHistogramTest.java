@@ -0,0 +1,83 @@
+/**
+ * GPhoto2 Copyright 2012 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * LatencyHistogram doesn't need a camera, so these tests can always run.
+ */
+public class LatencyHistogramTest {
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMin(), 0);
+        assertEquals(0, h.getPercentile(99), 0);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(ms(i));
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(1.0, h.getMin(), 0);
+        assertEquals(100.0, h.getMax(), 0);
+        assertEquals(50.5, h.getMean(), 0.001);
+        /* buckets are within ~6% of the recorded value */
+        assertEquals(50, h.getPercentile(50), 50 * 0.07);
+        assertEquals(99, h.getPercentile(99), 99 * 0.07);
+        assertTrue(h.getPercentile(99) >= 99);
+        assertEquals(100, h.getPercentile(100), 0);
+    }
+
+    @Test
+    public void testAddAndReset() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(ms(10));
+        b.record(ms(1000));
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(10.0, a.getMin(), 0);
+        assertEquals(1000.0, a.getMax(), 0);
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getMax(), 0);
+    }
+
+    @Test
+    public void testHugeValue() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(TimeUnit.DAYS.toNanos(365));
+        assertEquals(1, h.getCount());
+        assertEquals(h.getMax(), h.getPercentile(50), 0);
+    }
+}
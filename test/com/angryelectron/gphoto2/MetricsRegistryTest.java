@@ -0,0 +1,85 @@
+/**
+ * GPhoto2 Copyright 2012 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.gphoto2.CameraMetrics.Operation;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * MetricsRegistry doesn't need a camera, so these tests can always run.
+ */
+public class MetricsRegistryTest {
+
+    @After
+    public void tearDown() {
+        MetricsRegistry.setEnabled(false);
+        MetricsRegistry.remove("a");
+        MetricsRegistry.remove("b");
+    }
+
+    @Test
+    public void testDisabled() {
+        MetricsRegistry.setEnabled(false);
+        CameraMetrics m = MetricsRegistry.forCamera("a");
+        long start = m.start();
+        assertEquals(0, start);
+        m.stop(Operation.CAPTURE, start);
+        m.addBytes(100);
+        m.error(-7);
+        assertEquals(0, m.getLatency(Operation.CAPTURE).getCount());
+        assertEquals(0, m.getBytesTransferred());
+        assertEquals(0, m.getErrorCount());
+    }
+
+    @Test
+    public void testEnabled() {
+        MetricsRegistry.setEnabled(true);
+        CameraMetrics m = MetricsRegistry.forCamera("a");
+        assertSame(m, MetricsRegistry.forCamera("a"));
+        m.stop(Operation.DOWNLOAD, m.start());
+        m.addBytes(100);
+        m.error(-7);
+        m.error(-7);
+        m.error(-10);
+        m.eventsDrained(3);
+        m.eventsDrained(1);
+        assertEquals(1, m.getLatency(Operation.DOWNLOAD).getCount());
+        assertEquals(100, m.getBytesTransferred());
+        assertEquals(3, m.getErrorCount());
+        assertEquals(Long.valueOf(2), m.getErrorCounts().get(-7));
+        assertEquals(1, m.getEventQueueDepth());
+        assertEquals(3, m.getMaxEventQueueDepth());
+    }
+
+    @Test
+    public void testSlowest() {
+        MetricsRegistry.setEnabled(true);
+        MetricsRegistry.forCamera("a").getLatency(Operation.CAPTURE).record(TimeUnit.MILLISECONDS.toNanos(10));
+        MetricsRegistry.forCamera("b").getLatency(Operation.CAPTURE).record(TimeUnit.MILLISECONDS.toNanos(500));
+        List<CameraMetrics> slowest = MetricsRegistry.getSlowest(Operation.CAPTURE, 99);
+        assertEquals(2, slowest.size());
+        assertEquals("b", slowest.get(0).getName());
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * PreparedParameterTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Choice parsing and matching don't touch the camera, so these tests can
+ * always run.
+ */
+public class PreparedParameterTest {
+
+    private static double[] values(String... choices) {
+        double[] v = new double[choices.length];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = PreparedParameter.numeric(choices[i]);
+        }
+        return v;
+    }
+
+    @Test
+    public void testNumeric() {
+        assertEquals(0.004, PreparedParameter.numeric("1/250"), 1e-9);
+        assertEquals(5.6, PreparedParameter.numeric("f/5.6"), 1e-9);
+        assertEquals(30, PreparedParameter.numeric("30s"), 1e-9);
+        assertEquals(0.3, PreparedParameter.numeric("0.3\""), 1e-9);
+        assertEquals(400, PreparedParameter.numeric("400"), 1e-9);
+        assertTrue(Double.isNaN(PreparedParameter.numeric("Auto")));
+        assertTrue(Double.isNaN(PreparedParameter.numeric("bulb")));
+    }
+
+    @Test
+    public void testLadder() {
+        // Nikon lists shutter speeds fastest first, with Bulb at the end
+        double[] v = values("1/4000", "1/1000", "1/250", "1", "30", "Bulb");
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, PreparedParameter.ladder(v));
+        v = values("Auto", "800", "100", "200");
+        assertArrayEquals(new int[]{2, 3, 1}, PreparedParameter.ladder(v));
+    }
+
+    @Test
+    public void testNearest() {
+        double[] iso = values("Auto", "100", "200", "400", "800", "1600");
+        assertEquals(4, PreparedParameter.nearest(iso, 640));
+        assertEquals(1, PreparedParameter.nearest(iso, 50));
+        double[] shutter = values("1/60", "1/125", "1/250");
+        assertEquals(1, PreparedParameter.nearest(shutter, 1.0 / 100));
+        assertEquals(-1, PreparedParameter.nearest(values("Auto", "Manual"), 1));
+    }
+
+    @Test
+    public void testExposureCompensation() {
+        double[] ev = values("-1", "-0.7", "-0.3", "0", "0.3", "0.7", "1");
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6}, PreparedParameter.ladder(ev));
+        assertEquals(3, PreparedParameter.nearest(ev, 0));
+        assertEquals(2, PreparedParameter.nearest(ev, -0.4));
+        assertEquals(6, PreparedParameter.nearest(ev, 2));
+        ev = values("+1", "0", "-1/3");
+        assertArrayEquals(new int[]{2, 1, 0}, PreparedParameter.ladder(ev));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * RigTelemetryTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Scheduling is tested on its own, so these tests don't need a camera.
+ */
+public class RigTelemetryTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static RigTelemetry telemetry() {
+        return new RigTelemetry(Collections.<GPhoto2>emptyList(), 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBackOff() {
+        RigTelemetry telemetry = telemetry();
+        assertEquals(2 * SECOND, telemetry.backOff(SECOND));
+        assertEquals(8 * SECOND, telemetry.backOff(4 * SECOND));
+        assertEquals(8 * SECOND, telemetry.backOff(8 * SECOND));
+        telemetry.setMaxInterval(20, TimeUnit.SECONDS);
+        assertEquals(16 * SECOND, telemetry.backOff(8 * SECOND));
+        telemetry.setMaxInterval(1, TimeUnit.MILLISECONDS);
+        assertEquals(SECOND, telemetry.backOff(SECOND));
+    }
+
+    @Test
+    public void testSettle() {
+        RigTelemetry telemetry = telemetry();
+        long fast = TimeUnit.MILLISECONDS.toNanos(10);
+        assertEquals(4 * SECOND, telemetry.settle(8 * SECOND, fast));
+        assertEquals(SECOND, telemetry.settle(SECOND, fast));
+
+        // a slow poll keeps the camera's interval at 20 times its cost
+        long slow = TimeUnit.MILLISECONDS.toNanos(200);
+        assertEquals(4 * SECOND, telemetry.settle(SECOND, slow));
+        assertEquals(8 * SECOND, telemetry.settle(SECOND, SECOND));
+    }
+
+    @Test
+    public void testNext() {
+        List<RigTelemetry.Target> targets = new ArrayList<>();
+        assertNull(RigTelemetry.next(targets, 0));
+        RigTelemetry.Target a = new RigTelemetry.Target(null, SECOND);
+        RigTelemetry.Target b = new RigTelemetry.Target(null, SECOND);
+        targets.add(a);
+        targets.add(b);
+        long now = System.nanoTime();
+        a.due = now + 2 * SECOND;
+        b.due = now + SECOND;
+        assertSame(b, RigTelemetry.next(targets, now));
+
+        // a refresh makes a camera due straight away
+        a.refresh = true;
+        assertSame(a, RigTelemetry.next(targets, now));
+        assertEquals(now, a.due);
+    }
+}
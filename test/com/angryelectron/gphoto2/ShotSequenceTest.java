@@ -0,0 +1,89 @@
+/**
+ * ShotSequenceTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Deltas are worked out from plain maps here, so these tests don't need a
+ * camera.
+ */
+public class ShotSequenceTest {
+
+    private static Map<String, String> map(String... pairs) {
+        Map<String, String> m = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            m.put(pairs[i], pairs[i + 1]);
+        }
+        return m;
+    }
+
+    @Test
+    public void testFirstStepSetsEverything() {
+        List<Map<String, String>> steps = new ArrayList<>();
+        steps.add(map("shutterspeed", "1/15"));
+        steps.add(map("iso", "400"));
+        Map<String, String> current = map("shutterspeed", "1/60", "iso", "100");
+        List<Map<String, String>> deltas = ShotSequence.deltas(steps, current, Collections.<String>emptySet());
+        assertEquals(map("shutterspeed", "1/15", "iso", "100"), deltas.get(0));
+        assertEquals(map("iso", "400"), deltas.get(1));
+    }
+
+    @Test
+    public void testDeltas() {
+        List<Map<String, String>> steps = new ArrayList<>();
+        steps.add(map("shutterspeed", "1/15", "iso", "100"));
+        steps.add(map("shutterspeed", "1/15", "iso", "200"));
+        steps.add(map("shutterspeed", "1/60", "iso", "200"));
+        steps.add(map("shutterspeed", "1/60", "iso", "200"));
+        Map<String, String> current = map("shutterspeed", "1/15", "iso", "100");
+        List<Map<String, String>> deltas = ShotSequence.deltas(steps, current, Collections.<String>emptySet());
+        assertEquals(4, deltas.size());
+        assertEquals(map("shutterspeed", "1/15", "iso", "100"), deltas.get(0));
+        assertEquals(map("iso", "200"), deltas.get(1));
+        assertEquals(map("shutterspeed", "1/60"), deltas.get(2));
+        assertTrue(deltas.get(3).isEmpty());
+        assertEquals(map("shutterspeed", "1/60", "iso", "200"), current);
+    }
+
+    @Test
+    public void testRangeValues() {
+        Set<String> ranges = new HashSet<>(Arrays.asList("focus"));
+        List<Map<String, String>> steps = new ArrayList<>();
+        steps.add(map("focus", "100", "label", "100"));
+        steps.add(map("focus", "100.0", "label", "100.0"));
+        List<Map<String, String>> deltas = ShotSequence.deltas(steps, map("focus", "0", "label", "0"), ranges);
+        assertEquals(map("label", "100.0"), deltas.get(1));
+        assertTrue(ShotSequence.same("100", "100.0", true));
+        assertFalse(ShotSequence.same("100", "100.0", false));
+        assertFalse(ShotSequence.same("Auto", "100", true));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * StartupBenchmark Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Core;
+import com.angryelectron.libgphoto2.Gphoto2Library;
+import com.sun.jna.Native;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures cold start: how long a fresh JVM takes to load the binding,
+ * create a GPhoto2 and finish its first open(). Not a unit test, and only
+ * meaningful as the first thing a JVM does, so run it by hand after
+ * <code>ant compile-test</code>:
+ * <pre>
+ * java -cp build/classes:build/test/classes:lib/jna.jar com.angryelectron.gphoto2.StartupBenchmark [full] [max-ms]
+ * </pre>
+ * With <code>full</code>, the whole Gphoto2Library is loaded first, for
+ * comparison with the trimmed Gphoto2Core the API uses. If a maximum is
+ * given, the exit status is 1 when the first open() finishes later than
+ * that many milliseconds after the JVM started, so a script can catch
+ * regressions.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) {
+        boolean full = false;
+        long max = -1;
+        for (String arg : args) {
+            if (arg.equals("full")) {
+                full = true;
+            } else {
+                max = Long.parseLong(arg);
+            }
+        }
+
+        long start = System.nanoTime();
+        if (full) {
+            Native.loadLibrary("libgphoto2.so", Gphoto2Library.class);
+            System.out.printf("Gphoto2Library (%d methods): %8.1f ms%n",
+                    Gphoto2Library.class.getMethods().length, ms(start));
+        }
+
+        long t = System.nanoTime();
+        ContextPool.library();
+        System.out.printf("Gphoto2Core (%d methods):     %8.1f ms%n",
+                Gphoto2Core.class.getMethods().length, ms(t));
+
+        t = System.nanoTime();
+        GPhoto2 camera = new GPhoto2();
+        System.out.printf("new GPhoto2():                %8.1f ms%n", ms(t));
+
+        t = System.nanoTime();
+        boolean opened = false;
+        try {
+            camera.open();
+            opened = true;
+            System.out.printf("open():                       %8.1f ms%n", ms(t));
+        } catch (IOException ex) {
+            System.out.println("No camera: " + ex.getMessage());
+        }
+        long sinceJvm = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("In this JVM:                  %8.1f ms%n", ms(start));
+        System.out.printf("Since JVM start:              %8d ms%n", sinceJvm);
+        if (opened) {
+            camera.close();
+        }
+        if (max >= 0 && sinceJvm > max) {
+            System.out.println("Slower than " + max + " ms.");
+            System.exit(1);
+        }
+    }
+
+    private static double ms(long since) {
+        return (System.nanoTime() - since) / 1e6;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * StorageMonitorTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * The card is simulated, so these tests don't need a camera.
+ */
+public class StorageMonitorTest {
+
+    private static final long SIZE = 1024 * 1024;
+
+    private static class FakeCard implements StorageMonitor.Card {
+
+        final List<CameraFileEntry> files = new ArrayList<>();
+        long free;
+        long freeImages = -1;
+
+        FakeCard(long freeKilobytes) {
+            this.free = freeKilobytes;
+        }
+
+        synchronized void capture(String name) {
+            files.add(new CameraFileEntry("/DCIM/100CANON", name, SIZE, 0));
+            free -= SIZE / 1024;
+        }
+
+        @Override
+        public String getName() {
+            return "fake";
+        }
+
+        @Override
+        public synchronized List<StorageInfo> getStorageInfo() {
+            return Collections.singletonList(new StorageInfo("/store_00010001", "", "", -1, free, freeImages));
+        }
+
+        @Override
+        public synchronized List<CameraFileEntry> getAllFiles() {
+            return new ArrayList<>(files);
+        }
+
+        @Override
+        public synchronized long mark() {
+            return files.size();
+        }
+
+        @Override
+        public synchronized List<CameraFileEntry> getAddedSince(long mark) {
+            return new ArrayList<>(files.subList((int) Math.min(mark, files.size()), files.size()));
+        }
+
+        @Override
+        public long getSize(CameraFileEntry e) {
+            return e.getSize();
+        }
+
+        @Override
+        public long download(CameraFileEntry e, WritableByteChannel out) throws IOException {
+            ByteBuffer data = ByteBuffer.allocate((int) e.getSize());
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            return e.getSize();
+        }
+
+        @Override
+        public synchronized void delete(CameraFileEntry e) {
+            /* keep the list, so marks stay valid; the file is just gone */
+            free += e.getSize() / 1024;
+        }
+
+        @Override
+        public boolean isBusy() {
+            return false;
+        }
+    }
+
+    private static File directory() throws IOException {
+        File dir = Files.createTempDirectory("monitor").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void testPredict() throws IOException {
+        FakeCard card = new FakeCard(10 * SIZE / 1024);
+        StorageMonitor monitor = new StorageMonitor(null, card, directory());
+        monitor.setReserve(1);
+        monitor.admit();
+        assertEquals(-1, monitor.getShotsRemaining());
+
+        // the first capture gives the file size
+        card.capture("IMG_0001.JPG");
+        monitor.captured();
+        assertEquals(SIZE, monitor.getAverageFileSize());
+        assertEquals(9, monitor.getShotsRemaining());
+
+        // the camera's own estimate wins when it is lower
+        card.freeImages = 3;
+        monitor.setRefreshEvery(1);
+        monitor.admit();
+        assertEquals(3, monitor.getShotsRemaining());
+        assertEquals(0, monitor.getStalls());
+    }
+
+    @Test
+    public void testAdmitOffloads() throws IOException {
+        File dir = directory();
+        FakeCard card = new FakeCard(2 * SIZE / 1024);
+        StorageMonitor monitor = new StorageMonitor(null, card, dir);
+        monitor.setReserve(1);
+        monitor.admit();
+        card.capture("IMG_0001.JPG");
+        monitor.captured();
+        assertEquals(1, monitor.getShotsRemaining());
+
+        // at the reserve, the capture moves a file off the card first
+        monitor.admit();
+        assertEquals(1, monitor.getStalls());
+        assertEquals(1, monitor.getOffloaded());
+        assertEquals(SIZE, monitor.getOffloadedBytes());
+        assertEquals(2, monitor.getShotsRemaining());
+        File saved = new File(dir, "DCIM/100CANON/IMG_0001.JPG");
+        saved.deleteOnExit();
+        assertTrue(saved.isFile());
+        assertEquals(SIZE, saved.length());
+        assertTrue(monitor.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testFull() throws IOException {
+        FakeCard card = new FakeCard(0);
+        card.freeImages = 0;
+        StorageMonitor monitor = new StorageMonitor(null, card, directory());
+        try {
+            monitor.admit();
+            fail("Expected IOException.");
+        } catch (IOException ex) {
+            assertEquals(1, monitor.getStalls());
+            assertFalse(monitor.getShotsRemaining() > 0);
+        }
+    }
+}
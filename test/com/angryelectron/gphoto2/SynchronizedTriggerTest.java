@@ -0,0 +1,121 @@
+/**
+ * SynchronizedTriggerTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * testEmptyRig and testSpreadSkipsUnarmed run without a camera; the others
+ * need one attached, like GPhoto2Test.
+ */
+public class SynchronizedTriggerTest {
+
+    @Test
+    public void testEmptyRig() throws InterruptedException {
+        SynchronizedTrigger trigger = new SynchronizedTrigger(new ArrayList<GPhoto2>());
+        try {
+            SynchronizedTrigger.Result result = trigger.fire();
+            assertTrue(result.isSuccess());
+            assertTrue(result.getShots().isEmpty());
+            assertEquals(0, result.getIssueSpread());
+        } finally {
+            trigger.close();
+        }
+    }
+
+    @Test
+    public void testSpreadSkipsUnarmed() {
+        SynchronizedTrigger.Result result = new SynchronizedTrigger.Result(Arrays.asList(
+                new SynchronizedTrigger.Shot(null, true, 100, 5000, "a.jpg", null, null),
+                new SynchronizedTrigger.Shot(null, true, 300, 6000, "b.jpg", null, null),
+                new SynchronizedTrigger.Shot(null, false, 0, 0, null, null, new IOException("arm failed"))));
+        assertFalse(result.isSuccess());
+        assertEquals(200, result.getIssueSpread());
+        assertEquals(1000, result.getCompletionSpread());
+    }
+
+    @Test
+    public void testFire() throws IOException, InterruptedException {
+        GPhoto2 camera = new GPhoto2();
+        SynchronizedTrigger trigger = new SynchronizedTrigger(Collections.singletonList(camera));
+        try {
+            camera.open();
+            SynchronizedTrigger.Result result = trigger.fire();
+            assertTrue(result.isSuccess());
+            assertNotNull(result.getShots().get(0).getFile());
+            assertEquals(1, trigger.getIssueSpread().getCount());
+        } finally {
+            trigger.close();
+            camera.close();
+        }
+    }
+
+    @Test
+    public void testTriggerOnly() throws IOException, InterruptedException, TimeoutException {
+        GPhoto2 camera = new GPhoto2();
+        SynchronizedTrigger trigger = new SynchronizedTrigger(Collections.singletonList(camera));
+        trigger.setTriggerOnly(true);
+        try {
+            camera.open();
+            SynchronizedTrigger.Result result = trigger.fire();
+            assertTrue(result.isSuccess());
+            PendingCapture pending = result.getShots().get(0).getPendingCapture();
+            assertNotNull(pending.get(10, TimeUnit.SECONDS));
+        } finally {
+            trigger.close();
+            camera.close();
+        }
+    }
+
+    /**
+     * An interrupted fire must not leave the camera threads parked: the next
+     * fire still works.
+     */
+    @Test
+    public void testInterrupted() throws IOException, InterruptedException {
+        GPhoto2 camera = new GPhoto2();
+        SynchronizedTrigger trigger = new SynchronizedTrigger(Collections.singletonList(camera));
+        try {
+            camera.open();
+            Thread.currentThread().interrupt();
+            try {
+                trigger.fire();
+                fail("Fire should have been interrupted.");
+            } catch (InterruptedException ex) {
+                // expected
+            }
+            assertTrue(trigger.fire().isSuccess());
+        } finally {
+            trigger.close();
+            camera.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * ThumbnailCacheTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import com.angryelectron.libgphoto2.Gphoto2Library.CameraFileType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Entries are stored and looked up by key here, so these tests don't need a
+ * camera.
+ */
+public class ThumbnailCacheTest {
+
+    private static File directory() throws IOException {
+        File dir = Files.createTempDirectory("thumbs").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static String key(int i) {
+        CameraFileEntry e = new CameraFileEntry("/DCIM/100CANON", "IMG_" + i + ".JPG", 1000 + i, 1);
+        return ThumbnailCache.key("SERIAL", e, CameraFileType.GP_FILE_TYPE_PREVIEW);
+    }
+
+    private static Thumbnail thumbnail(int i) {
+        return new Thumbnail(CameraFileType.GP_FILE_TYPE_PREVIEW, new byte[]{(byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9}, 160, 120);
+    }
+
+    @Test
+    public void testHeapLru() {
+        ThumbnailCache cache = new ThumbnailCache(30);
+        for (int i = 0; i < 3; i++) {
+            cache.store(key(i), thumbnail(i), true);
+        }
+        assertNotNull(cache.lookup(key(0)));
+        cache.store(key(3), thumbnail(3), true);
+        assertEquals(30, cache.getHeapBytes());
+        assertNull(cache.lookup(key(1)));
+        assertEquals(0, cache.lookup(key(0)).getData()[0]);
+        assertNotNull(cache.lookup(key(2)));
+        assertNotNull(cache.lookup(key(3)));
+        assertEquals(4, cache.getHeapHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testDiskEviction() throws IOException {
+        File dir = directory();
+        ThumbnailCache cache = new ThumbnailCache(0, dir, Long.MAX_VALUE);
+        cache.store(key(0), thumbnail(0), true);
+        long size = cache.getDiskBytes();
+        cache.clear();
+        cache = new ThumbnailCache(0, dir, 2 * size);
+        cache.store(key(0), thumbnail(0), true);
+        cache.store(key(1), thumbnail(1), true);
+        assertEquals(0, cache.getHeapBytes());
+        assertNotNull(cache.lookup(key(0)));
+        cache.store(key(2), thumbnail(2), true);
+        assertEquals(2 * size, cache.getDiskBytes());
+        assertNull(cache.lookup(key(1)));
+        assertEquals(2, dir.list().length);
+
+        /* A new cache over the same directory finds the surviving entries. */
+        ThumbnailCache reopened = new ThumbnailCache(0, dir, 2 * size);
+        assertEquals(2 * size, reopened.getDiskBytes());
+        Thumbnail t = reopened.lookup(key(2));
+        assertEquals(2, t.getData()[0]);
+        assertEquals(160, t.getWidth());
+        assertEquals(1, reopened.getDiskHits());
+        reopened.clear();
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void testUnidentified() throws IOException {
+        File dir = directory();
+        ThumbnailCache cache = new ThumbnailCache(1024, dir, Long.MAX_VALUE);
+        CameraFileEntry listed = new CameraFileEntry("/DCIM/100CANON", "IMG_0.JPG", 1000, 1);
+        CameraFileEntry bare = new CameraFileEntry("/DCIM/100CANON", "IMG_0.JPG", -1, 0);
+        String key = ThumbnailCache.key("SERIAL", bare, CameraFileType.GP_FILE_TYPE_PREVIEW);
+        assertFalse(key.equals(ThumbnailCache.key("SERIAL", listed, CameraFileType.GP_FILE_TYPE_PREVIEW)));
+        cache.store(key, thumbnail(0), false);
+        assertNotNull(cache.lookup(key));
+        assertEquals(0, cache.getDiskBytes());
+        assertEquals(0, dir.list().length);
+        cache.clear();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * TimeLapseTest Copyright 2015 Andrew Bythell, abythell@ieee.org
+ *
+ * This file is part of libgphoto2-jna.
+ *
+ * libgphoto2-jna is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * libgphoto2-jna is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * libphoto2-jna. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.angryelectron.gphoto2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * A fake camera takes the pictures here, so these tests don't need one. The
+ * first capture overruns a 200ms interval by taking 500ms; the margins
+ * below are 100ms either way.
+ */
+public class TimeLapseTest {
+
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long MARGIN = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FIRST = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static class FakeCamera implements TimeLapse.Source {
+
+        private final long firstCapture;
+        private int captures = 0;
+
+        FakeCamera(long firstCapture) {
+            this.firstCapture = firstCapture;
+        }
+
+        @Override
+        public String getName() {
+            return "fake";
+        }
+
+        @Override
+        public CameraFileEntry captureFile() throws IOException {
+            if (captures == 0) {
+                try {
+                    Thread.sleep(firstCapture);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+            String folder = "/store_00010001/DCIM/" + (100 + captures++);
+            return new CameraFileEntry(folder, "IMG_0001.JPG", 4, 0);
+        }
+
+        @Override
+        public long download(CameraFileEntry e, WritableByteChannel out) throws IOException {
+            return out.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}));
+        }
+
+        @Override
+        public void delete(CameraFileEntry e) {
+        }
+    }
+
+    private static List<TimeLapse.Frame> run(TimeLapse.Overrun overrun, long frames, File directory)
+            throws InterruptedException {
+        TimeLapse lapse = new TimeLapse(new FakeCamera(TimeUnit.NANOSECONDS.toMillis(FIRST)), 200, TimeUnit.MILLISECONDS);
+        lapse.setFrames(frames);
+        lapse.setOverrun(overrun);
+        if (directory != null) {
+            lapse.setDownload(directory, true);
+        }
+        lapse.start();
+        assertTrue(lapse.awaitTermination(10, TimeUnit.SECONDS));
+        return lapse.getFrames();
+    }
+
+    @Test
+    public void testSkip() throws InterruptedException {
+        List<TimeLapse.Frame> frames = run(TimeLapse.Overrun.SKIP, 4, null);
+        assertEquals(4, frames.size());
+        assertFalse(frames.get(0).isSkipped());
+        assertTrue(frames.get(1).isSkipped());
+        assertTrue(frames.get(2).isSkipped());
+        TimeLapse.Frame last = frames.get(3);
+        assertFalse(last.isSkipped());
+        assertEquals(3 * PERIOD, last.getScheduled());
+        assertTrue(last.getLateness() < MARGIN);
+    }
+
+    @Test
+    public void testCatchUp() throws InterruptedException {
+        List<TimeLapse.Frame> frames = run(TimeLapse.Overrun.CATCH_UP, 4, null);
+        assertEquals(4, frames.size());
+        for (TimeLapse.Frame f : frames) {
+            assertFalse(f.isSkipped());
+            assertEquals(f.getIntended(), f.getScheduled());
+        }
+        /* Frames 1 and 2 fire straight after frame 0, well before frame 3 is due. */
+        assertTrue(frames.get(1).getLateness() > MARGIN);
+        assertTrue(frames.get(2).getFired() < 3 * PERIOD);
+        assertTrue(frames.get(3).getFired() >= 3 * PERIOD);
+    }
+
+    @Test
+    public void testStretch() throws InterruptedException {
+        List<TimeLapse.Frame> frames = run(TimeLapse.Overrun.STRETCH, 3, null);
+        assertEquals(3, frames.size());
+        long shift = frames.get(1).getScheduled() - PERIOD;
+        assertTrue(shift >= FIRST - PERIOD);
+        assertEquals(2 * PERIOD + shift, frames.get(2).getScheduled());
+        assertTrue(frames.get(2).getFired() - frames.get(1).getFired() >= PERIOD);
+        assertTrue(frames.get(2).getDrift() >= shift);
+    }
+
+    @Test
+    public void testSameNameInFolders() throws IOException, InterruptedException {
+        File dir = Files.createTempDirectory("lapse").toFile();
+        List<TimeLapse.Frame> frames = run(TimeLapse.Overrun.CATCH_UP, 2, dir);
+        for (TimeLapse.Frame f : frames) {
+            File saved = new File(dir, f.getFile().getPath().substring(1));
+            assertEquals(4, saved.length());
+            saved.delete();
+        }
+        assertFalse(frames.get(0).getFile().getFolder().equals(frames.get(1).getFile().getFolder()));
+    }
+}